@@ -0,0 +1,54 @@
+package com.codesharing.platform.security;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * JwtUtil Benchmark
+ * Validation of a well-formed token and rejection of one with a bad signature
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JwtUtilBenchmark {
+
+  private JwtUtil jwtUtil;
+  private String validToken;
+  private String tamperedToken;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    jwtUtil = new JwtUtil();
+    ReflectionTestUtils.setField(jwtUtil, "secret",
+      "benchmark-secret-key-that-is-at-least-64-bytes-long-for-the-hs512-signature-algorithm");
+    ReflectionTestUtils.setField(jwtUtil, "expiration", 86400000L);
+    validToken = jwtUtil.generateToken("admin", "ADMIN");
+    // Flip the last signature character so parsing fails signature verification
+    char last = validToken.charAt(validToken.length() - 1);
+    tamperedToken = validToken.substring(0, validToken.length() - 1) + (last == 'A' ? 'B' : 'A');
+  }
+
+  @Benchmark
+  public boolean validateToken() {
+    return jwtUtil.validateToken(validToken);
+  }
+
+  @Benchmark
+  public boolean rejectTamperedToken() {
+    return jwtUtil.validateToken(tamperedToken);
+  }
+}
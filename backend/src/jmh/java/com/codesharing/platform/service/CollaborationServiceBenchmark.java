@@ -0,0 +1,100 @@
+package com.codesharing.platform.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * CollaborationService Benchmark
+ * Join/leave churn and active user reads on shared rooms, alone and under contention
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CollaborationServiceBenchmark {
+
+  @Param({"16"})
+  private int rooms;
+
+  @Param({"8"})
+  private int usersPerRoom;
+
+  private CollaborationService collaborationService;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    collaborationService = new CollaborationService(new ObjectMapper());
+    for (int room = 0; room < rooms; room++) {
+      for (int user = 0; user < usersPerRoom; user++) {
+        collaborationService.joinSession("snippet-" + room, "user-" + user, "User " + user);
+      }
+    }
+  }
+
+  /**
+   * A churning user of its own, so joins and leaves never cancel out another thread's
+   */
+  @State(Scope.Thread)
+  public static class Churner {
+    private static int nextId;
+    String userId;
+    long operations;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+      synchronized (Churner.class) {
+        userId = "churn-" + nextId++;
+      }
+    }
+
+    String room(int rooms) {
+      return "snippet-" + (operations++ % rooms);
+    }
+  }
+
+  @Benchmark
+  public void joinLeave(Churner churner) {
+    String snippetId = churner.room(rooms);
+    collaborationService.joinSession(snippetId, churner.userId, churner.userId);
+    collaborationService.leaveSession(snippetId, churner.userId);
+  }
+
+  @Benchmark
+  public List<CollaborationService.ActiveUser> getActiveUsers(Churner churner) {
+    return collaborationService.getActiveUsers(churner.room(rooms));
+  }
+
+  /**
+   * Readers of the active user list while other threads join and leave the same rooms
+   */
+  @Benchmark
+  @Group("contended")
+  @GroupThreads(2)
+  public void contendedJoinLeave(Churner churner) {
+    joinLeave(churner);
+  }
+
+  @Benchmark
+  @Group("contended")
+  @GroupThreads(6)
+  public List<CollaborationService.ActiveUser> contendedGetActiveUsers(Churner churner) {
+    return getActiveUsers(churner);
+  }
+}
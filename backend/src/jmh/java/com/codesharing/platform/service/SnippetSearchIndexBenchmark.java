@@ -0,0 +1,89 @@
+package com.codesharing.platform.service;
+
+import com.codesharing.platform.entity.CodeSnippet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * SnippetSearchIndex Benchmark
+ * Candidate lookup (first 20, as for a search page) for a rare and a common substring, and BM25 top-20
+ * ranking for a rare and a common term, over a synthetic corpus
+ * Full-size corpus: -Djmh.args="SnippetSearchIndex -p documents=1000000 -jvmArgs -Xmx8g"
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SnippetSearchIndexBenchmark {
+
+  private static final String[] WORDS = {
+    "public", "static", "void", "main", "return", "final", "class", "import", "string", "list",
+    "map", "count", "index", "value", "result", "buffer", "stream", "filter", "reduce", "async"
+  };
+
+  @Param({"100000"})
+  private int documents;
+
+  private SnippetSearchIndex index;
+  private String rareQuery;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    index = new SnippetSearchIndex(null, new CollaborationMetrics());
+    Random random = new Random(42);
+    for (int i = 0; i < documents; i++) {
+      StringBuilder code = new StringBuilder();
+      for (int word = 0; word < 80; word++) {
+        code.append(WORDS[random.nextInt(WORDS.length)]).append(word % 8 == 7 ? '\n' : ' ');
+      }
+      // A unique identifier per document, so some queries match exactly one snippet
+      code.append("token").append(Integer.toString(i, 36));
+      index.index(CodeSnippet.builder()
+        .id("snippet-" + i)
+        .title("Snippet " + i)
+        .description("Synthetic benchmark snippet")
+        .code(code.toString())
+        .language("java")
+        .tags(List.of(WORDS[i % WORDS.length]))
+        .build());
+    }
+    ReflectionTestUtils.setField(index, "ready", true);
+    rareQuery = "token" + Integer.toString(documents / 2, 36);
+  }
+
+  @Benchmark
+  public List<String> rareSubstring() {
+    return index.candidates(rareQuery, 20);
+  }
+
+  @Benchmark
+  public List<String> commonSubstring() {
+    return index.candidates("static void", 20);
+  }
+
+  @Benchmark
+  public List<String> rankRareTerm() {
+    return index.rank(rareQuery, null, 20);
+  }
+
+  @Benchmark
+  public List<String> rankCommonTerms() {
+    return index.rank("buffer stream filter", "java", 20);
+  }
+}
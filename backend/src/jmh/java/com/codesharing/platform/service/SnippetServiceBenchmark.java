@@ -0,0 +1,63 @@
+package com.codesharing.platform.service;
+
+import com.codesharing.platform.dto.SnippetDTO;
+import com.codesharing.platform.entity.CodeSnippet;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * SnippetService Benchmark
+ * DTO conversion and tiny-code generation
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SnippetServiceBenchmark {
+
+  private SnippetService snippetService;
+  private CodeSnippet snippet;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    snippetService = new SnippetService(null, null, null, null, null, null);
+
+    snippet = CodeSnippet.builder()
+      .id("snippet-1")
+      .title("Benchmark snippet")
+      .description("Snippet used by the JMH benchmarks")
+      .code("public class Main {\n  public static void main(String[] args) {}\n}\n".repeat(40))
+      .language("java")
+      .authorId("author-1")
+      .tags(List.of("java", "benchmark"))
+      .isPublic(true)
+      .createdAt(LocalDateTime.now())
+      .updatedAt(LocalDateTime.now())
+      .views(42)
+      .build();
+  }
+
+  @Benchmark
+  public SnippetDTO convertToDTO() {
+    return snippetService.convertToDTO(snippet);
+  }
+
+  @Benchmark
+  public String generateTinyCode() {
+    return snippetService.generateRandomTinyCode();
+  }
+}
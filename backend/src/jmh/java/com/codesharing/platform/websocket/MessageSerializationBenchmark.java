@@ -0,0 +1,91 @@
+package com.codesharing.platform.websocket;
+
+import com.codesharing.platform.service.CollaborationService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Message Serialization Benchmark
+ * Jackson encoding of the presence and full-text code frames broadcast to every room member,
+ * as JSON and as the CBOR sent to sessions that negotiated it
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MessageSerializationBenchmark {
+
+  @Param({"8"})
+  private int activeUsers;
+
+  @Param({"2048"})
+  private int codeSize;
+
+  private ObjectMapper objectMapper;
+  private ObjectMapper cborMapper;
+  private CollaborationController.PresenceMessage presenceMessage;
+  private CollaborationController.CodeChangeMessage codeChangeMessage;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    objectMapper = new ObjectMapper();
+    cborMapper = objectMapper.copyWith(new CBORFactory());
+
+    List<CollaborationService.ActiveUser> users = new ArrayList<>();
+    long now = System.currentTimeMillis();
+    for (int i = 0; i < activeUsers; i++) {
+      users.add(new CollaborationService.ActiveUser("user-" + i, "User " + i, now, i % 3 == 0, i == 0));
+    }
+    presenceMessage = new CollaborationController.PresenceMessage(
+      "user_joined", "user-1", "User 1", List.copyOf(users), "Benchmark snippet"
+    );
+    presenceMessage.joinedUserIds.add("user-1");
+
+    codeChangeMessage = new CollaborationController.CodeChangeMessage();
+    codeChangeMessage.userId = "user-1";
+    codeChangeMessage.username = "User 1";
+    codeChangeMessage.language = "java";
+    codeChangeMessage.code = "x".repeat(codeSize);
+    codeChangeMessage.timestamp = now;
+    codeChangeMessage.revision = 42;
+    codeChangeMessage.epoch = "5f3c2a1b";
+    codeChangeMessage.sequence = 42;
+  }
+
+  @Benchmark
+  public byte[] serializePresence() throws Exception {
+    return objectMapper.writeValueAsBytes(presenceMessage);
+  }
+
+  @Benchmark
+  public byte[] serializeCodeChange() throws Exception {
+    return objectMapper.writeValueAsBytes(codeChangeMessage);
+  }
+
+  @Benchmark
+  public byte[] serializePresenceCbor() throws Exception {
+    return cborMapper.writeValueAsBytes(presenceMessage);
+  }
+
+  @Benchmark
+  public byte[] serializeCodeChangeCbor() throws Exception {
+    return cborMapper.writeValueAsBytes(codeChangeMessage);
+  }
+}
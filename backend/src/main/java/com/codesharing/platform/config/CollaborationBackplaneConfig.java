@@ -0,0 +1,63 @@
+package com.codesharing.platform.config;
+
+import com.codesharing.platform.service.CollaborationMetrics;
+import com.codesharing.platform.websocket.CollaborationBackplane;
+import com.codesharing.platform.websocket.InProcessBackplane;
+import com.codesharing.platform.websocket.PostgresBackplane;
+import com.codesharing.platform.websocket.StompRelayBackplane;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.broker.AbstractBrokerMessageHandler;
+
+/**
+ * Collaboration Backplane Configuration
+ * Selects how collaboration rooms are shared between backend nodes
+ * app.collaboration.backplane.type:
+ *   in-process - single node (default); nodes in one JVM can share a cluster name
+ *   postgres   - LISTEN/NOTIFY on the application database
+ *   relay      - external STOMP broker (see WebSocketConfig)
+ */
+@Configuration
+public class CollaborationBackplaneConfig {
+
+  @Bean
+  public CollaborationBackplane collaborationBackplane(
+    ObjectMapper objectMapper,
+    CollaborationMetrics metrics,
+    @Value("${app.collaboration.backplane.type:in-process}") String type,
+    @Value("${app.collaboration.backplane.in-process.cluster:}") String cluster,
+    @Value("${app.collaboration.backplane.postgres.channel:collaboration_backplane}") String channel,
+    @Value("${app.collaboration.backplane.postgres.queue-capacity:10000}") int queueCapacity,
+    @Value("${app.collaboration.backplane.relay.destination:/topic/collaboration.backplane}") String relayDestination,
+    @Value("${spring.datasource.url}") String datasourceUrl,
+    @Value("${spring.datasource.username}") String datasourceUsername,
+    @Value("${spring.datasource.password}") String datasourcePassword,
+    @Qualifier("brokerMessagingTemplate") ObjectProvider<SimpMessagingTemplate> brokerMessagingTemplate,
+    @Qualifier("stompBrokerRelayMessageHandler") ObjectProvider<AbstractBrokerMessageHandler> brokerHandler
+  ) {
+    switch (type.trim().toLowerCase()) {
+      case "in-process":
+        return new InProcessBackplane(objectMapper, metrics, cluster);
+      case "postgres":
+        if (!channel.matches("[a-z_][a-z0-9_]*")) {
+          throw new IllegalStateException("Invalid backplane channel name: " + channel);
+        }
+        PostgresBackplane postgres = new PostgresBackplane(
+          objectMapper, metrics, datasourceUrl, datasourceUsername, datasourcePassword, channel, queueCapacity
+        );
+        postgres.start();
+        return postgres;
+      case "relay":
+        return new StompRelayBackplane(
+          objectMapper, metrics, brokerMessagingTemplate.getObject(), brokerHandler.getObject(), relayDestination
+        );
+      default:
+        throw new IllegalStateException("Unknown collaboration backplane type: " + type);
+    }
+  }
+}
@@ -0,0 +1,52 @@
+package com.codesharing.platform.config;
+
+import com.codesharing.platform.service.CollaborationMetrics;
+import com.codesharing.platform.websocket.SlowConsumerSessionDecorator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.support.AbstractSubscribableChannel;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.config.annotation.DelegatingWebSocketMessageBrokerConfiguration;
+import org.springframework.web.socket.messaging.SubProtocolWebSocketHandler;
+
+/**
+ * WebSocket Broker Configuration
+ * Replaces @EnableWebSocketMessageBroker so every STOMP session is wrapped in a
+ * SlowConsumerSessionDecorator instead of Spring's ConcurrentWebSocketSessionDecorator.
+ * Send time and buffer size limits come from WebSocketConfig#configureWebSocketTransport.
+ * app.collaboration.outbound.slow-consumer-policy:
+ *   drop-stale - drop superseded code and typing frames, disconnect if still over the limit (default)
+ *   disconnect - disconnect as soon as the buffer limit is exceeded
+ */
+@Configuration
+public class WebSocketBrokerConfig extends DelegatingWebSocketMessageBrokerConfiguration {
+
+  private final CollaborationMetrics metrics;
+  private final SlowConsumerSessionDecorator.Policy slowConsumerPolicy;
+
+  public WebSocketBrokerConfig(
+    CollaborationMetrics metrics,
+    @Value("${app.collaboration.outbound.slow-consumer-policy:drop-stale}") String slowConsumerPolicy
+  ) {
+    this.metrics = metrics;
+    this.slowConsumerPolicy = SlowConsumerSessionDecorator.Policy.valueOf(
+      slowConsumerPolicy.trim().replace('-', '_').toUpperCase()
+    );
+  }
+
+  @Bean
+  @Override
+  public WebSocketHandler subProtocolWebSocketHandler(AbstractSubscribableChannel clientInboundChannel,
+                                                      AbstractSubscribableChannel clientOutboundChannel) {
+    return new SubProtocolWebSocketHandler(clientInboundChannel, clientOutboundChannel) {
+      @Override
+      protected WebSocketSession decorateSession(WebSocketSession session) {
+        return new SlowConsumerSessionDecorator(
+          session, getSendTimeLimit(), getSendBufferSizeLimit(), slowConsumerPolicy, metrics
+        );
+      }
+    };
+  }
+}
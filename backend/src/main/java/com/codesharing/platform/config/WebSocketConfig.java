@@ -1,23 +1,71 @@
 package com.codesharing.platform.config;
 
+import com.codesharing.platform.websocket.InboundRateLimiter;
+import com.codesharing.platform.websocket.SnippetLaneExecutor;
+import com.codesharing.platform.websocket.WireFormatNegotiator;
+import java.util.List;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
-import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
 
 /**
  * WebSocket Configuration
  * Configures STOMP (Simple Text Oriented Messaging Protocol) over WebSocket
  * Enables real-time bidirectional communication between clients and server
+ * The broker infrastructure itself is set up by WebSocketBrokerConfig
  */
 @Configuration
-@EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+  private final SnippetLaneExecutor snippetLaneExecutor;
+  private final WireFormatNegotiator wireFormatNegotiator;
+  private final InboundRateLimiter inboundRateLimiter;
+
+  /**
+   * "relay" replaces the simple broker with an external STOMP broker shared by all nodes
+   */
+  @Value("${app.collaboration.backplane.type:in-process}")
+  private String backplaneType = "in-process";
+
+  @Value("${spring.websocket.message-broker.relay-host:localhost}")
+  private String relayHost = "localhost";
+
+  @Value("${spring.websocket.message-broker.relay-port:61613}")
+  private int relayPort = 61613;
+
+  @Value("${spring.websocket.message-broker.relay-login:guest}")
+  private String relayLogin = "guest";
+
+  @Value("${spring.websocket.message-broker.relay-passcode:guest}")
+  private String relayPasscode = "guest";
+
+  /**
+   * Outbound limits per session; a client that falls further behind is a slow consumer
+   */
+  @Value("${app.collaboration.outbound.send-time-limit-ms:10000}")
+  private int sendTimeLimitMillis = 10000;
+
+  @Value("${app.collaboration.outbound.buffer-size-limit:524288}")
+  private int sendBufferSizeLimit = 524288;
+
+  public WebSocketConfig(
+    SnippetLaneExecutor snippetLaneExecutor,
+    WireFormatNegotiator wireFormatNegotiator,
+    InboundRateLimiter inboundRateLimiter
+  ) {
+    this.snippetLaneExecutor = snippetLaneExecutor;
+    this.wireFormatNegotiator = wireFormatNegotiator;
+    this.inboundRateLimiter = inboundRateLimiter;
+  }
+
   /**
    * Configure the WebSocket endpoint and enable STOMP
    */
@@ -32,25 +80,89 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
   }
 
   /**
-   * Configure message broker for routing messages between clients
+   * Task scheduler shared by broker heartbeats and collaboration broadcast ticks
    */
-  @Override
-  public void configureMessageBroker(MessageBrokerRegistry config) {
-    // Create and configure the task scheduler
+  @Bean
+  public ThreadPoolTaskScheduler webSocketTaskScheduler() {
     ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
     scheduler.setPoolSize(Runtime.getRuntime().availableProcessors());
     scheduler.setThreadNamePrefix("ws-heartbeat-");
     scheduler.setWaitForTasksToCompleteOnShutdown(true);
     scheduler.setAwaitTerminationSeconds(60);
-    scheduler.initialize();
-
-    // Enable a simple in-memory message broker
-    // Messages to destinations starting with /topic will be broadcast to subscribers
-    // For production, consider using RabbitMQ or ActiveMQ
-    config
-      .enableSimpleBroker("/topic", "/queue")
-      .setHeartbeatValue(new long[]{25000, 25000})
-      .setTaskScheduler(scheduler);
+    return scheduler;
+  }
+
+  /**
+   * Handle inbound client messages on per-snippet lanes
+   * Messages for one snippet are processed in order by one thread at a time;
+   * frames over a session's rate limit or for a backed-up lane are dropped before queuing
+   */
+  @Override
+  public void configureClientInboundChannel(ChannelRegistration registration) {
+    registration.taskExecutor(snippetLaneExecutor.asChannelExecutor());
+    registration.interceptors(inboundRateLimiter, wireFormatNegotiator);
+  }
+
+  /**
+   * Encode high-frequency frames as CBOR for sessions that negotiated it
+   */
+  @Override
+  public void configureClientOutboundChannel(ChannelRegistration registration) {
+    registration.interceptors(wireFormatNegotiator);
+  }
+
+  /**
+   * Track which sessions use a transport that can carry binary frames,
+   * and bound how long and how much a session may lag behind on outbound frames
+   */
+  @Override
+  public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+    registration.addDecoratorFactory(wireFormatNegotiator);
+    registration.setSendTimeLimit(sendTimeLimitMillis);
+    registration.setSendBufferSizeLimit(sendBufferSizeLimit);
+  }
+
+  /**
+   * Accept application/cbor frames from clients in addition to the default JSON,
+   * and keep sent message objects for CBOR sessions
+   */
+  @Override
+  public boolean configureMessageConverters(List<MessageConverter> messageConverters) {
+    messageConverters.add(wireFormatNegotiator.broadcastMessageConverter());
+    messageConverters.add(wireFormatNegotiator.cborMessageConverter());
+    return true;
+  }
+
+  /**
+   * Configure message broker for routing messages between clients
+   */
+  @Override
+  public void configureMessageBroker(MessageBrokerRegistry config) {
+    ThreadPoolTaskScheduler scheduler = webSocketTaskScheduler();
+
+    if ("relay".equalsIgnoreCase(backplaneType.trim())) {
+      // Relay to an external STOMP broker (RabbitMQ, ActiveMQ) so every node sees every broadcast
+      // User destinations of sessions connected to other nodes are resolved through the broker too
+      config
+        .enableStompBrokerRelay("/topic", "/queue")
+        .setRelayHost(relayHost)
+        .setRelayPort(relayPort)
+        .setClientLogin(relayLogin)
+        .setClientPasscode(relayPasscode)
+        .setSystemLogin(relayLogin)
+        .setSystemPasscode(relayPasscode)
+        .setUserDestinationBroadcast("/topic/unresolved-user-destination")
+        .setUserRegistryBroadcast("/topic/simp-user-registry")
+        .setTaskScheduler(scheduler);
+    } else {
+      // Enable a simple in-memory message broker
+      // Messages to destinations starting with /topic will be broadcast to subscribers
+      // Other nodes receive them through the collaboration backplane
+      config
+        .enableSimpleBroker("/topic", "/queue")
+        .setHeartbeatValue(new long[]{25000, 25000})
+        .setTaskScheduler(scheduler);
+    }
 
     // Set the prefix for messages sent from clients
     // Clients send to: /app/snippet/{id}/presence, /app/snippet/{id}/code, etc.
@@ -3,6 +3,7 @@ package com.codesharing.platform.controller;
 import com.codesharing.platform.dto.SessionDetailsDTO;
 import com.codesharing.platform.dto.SessionListDTO;
 import com.codesharing.platform.service.AdminDashboardService;
+import com.codesharing.platform.service.CollaborationMetrics;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
@@ -28,6 +29,7 @@ import jakarta.servlet.http.HttpServletRequest;
 public class AdminController {
     
     private final AdminDashboardService adminDashboardService;
+    private final CollaborationMetrics collaborationMetrics;
     
     /**
      * Get all sessions with pagination
@@ -109,6 +111,24 @@ public class AdminController {
         }
     }
     
+    /**
+     * Get real-time collaboration counters and gauges
+     * GET /api/admin/collaboration/metrics
+     * 
+     * Requires: ADMIN or OWNER role
+     */
+    @GetMapping("/collaboration/metrics")
+    public ResponseEntity<?> getCollaborationMetrics(HttpServletRequest request) {
+        String role = (String) request.getAttribute("role");
+        
+        if (role == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(new ErrorResponse("Authentication required"));
+        }
+        
+        return ResponseEntity.ok(collaborationMetrics.snapshot());
+    }
+    
     /**
      * Health check for admin API
      * GET /api/admin/health
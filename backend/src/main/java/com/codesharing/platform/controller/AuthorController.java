@@ -0,0 +1,55 @@
+package com.codesharing.platform.controller;
+
+import com.codesharing.platform.dto.CommentDTO;
+import com.codesharing.platform.dto.SnippetDTO;
+import com.codesharing.platform.dto.UserDTO;
+import com.codesharing.platform.service.AuthorCache;
+import org.dataloader.DataLoader;
+import org.springframework.graphql.data.method.annotation.SchemaMapping;
+import org.springframework.graphql.execution.BatchLoaderRegistry;
+import org.springframework.stereotype.Controller;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Resolves the author fields of snippets and comments through a per-request DataLoader,
+ * so a page of snippets or comments looks up all of its authors with one batched query
+ * instead of one per row
+ */
+@Controller
+public class AuthorController {
+
+    public AuthorController(BatchLoaderRegistry batchLoaderRegistry, AuthorCache authorCache) {
+        batchLoaderRegistry.forTypePair(String.class, UserDTO.class)
+                .registerMappedBatchLoader((authorIds, environment) ->
+                        Mono.fromCallable(() -> authorCache.getAuthors(authorIds)));
+    }
+
+    @SchemaMapping(typeName = "Snippet", field = "author")
+    public CompletableFuture<UserDTO> snippetAuthor(SnippetDTO snippet, DataLoader<String, UserDTO> authors) {
+        return load(authors, snippet.getAuthorId());
+    }
+
+    @SchemaMapping(typeName = "Snippet", field = "authorUsername")
+    public CompletableFuture<String> snippetAuthorUsername(SnippetDTO snippet, DataLoader<String, UserDTO> authors) {
+        return load(authors, snippet.getAuthorId()).thenApply(UserDTO::getUsername);
+    }
+
+    @SchemaMapping(typeName = "Comment", field = "author")
+    public CompletableFuture<UserDTO> commentAuthor(CommentDTO comment, DataLoader<String, UserDTO> authors) {
+        return load(authors, comment.getAuthorId());
+    }
+
+    @SchemaMapping(typeName = "Comment", field = "authorUsername")
+    public CompletableFuture<String> commentAuthorUsername(CommentDTO comment, DataLoader<String, UserDTO> authors) {
+        return load(authors, comment.getAuthorId()).thenApply(UserDTO::getUsername);
+    }
+
+    private CompletableFuture<UserDTO> load(DataLoader<String, UserDTO> authors, String authorId) {
+        if (authorId == null) {
+            return CompletableFuture.completedFuture(AuthorCache.anonymous(""));
+        }
+        return authors.load(authorId);
+    }
+}
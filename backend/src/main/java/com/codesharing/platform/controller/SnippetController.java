@@ -1,5 +1,6 @@
 package com.codesharing.platform.controller;
 
+import com.codesharing.platform.dto.SnippetConnection;
 import com.codesharing.platform.dto.SnippetDTO;
 import com.codesharing.platform.service.SnippetService;
 import com.codesharing.platform.service.AdminDashboardService;
@@ -42,11 +43,20 @@ public class SnippetController {
         return snippetService.getAllSnippets(lim, off);
     }
 
+    @QueryMapping
+    public SnippetConnection snippetsConnection(@Argument Integer first,
+                                                @Argument String after) {
+        int size = first != null ? first : 20;
+        return snippetService.getSnippetsPage(null, size, after);
+    }
+
     @QueryMapping
     public List<SnippetDTO> searchSnippets(@Argument String query,
-                                          @Argument Integer limit) {
+                                          @Argument Integer limit,
+                                          @Argument String language,
+                                          @Argument Boolean regex) {
         int lim = limit != null ? limit : 10;
-        return snippetService.searchSnippets(query, lim);
+        return snippetService.searchSnippets(query, lim, language, Boolean.TRUE.equals(regex));
     }
 
     @QueryMapping
@@ -56,6 +66,14 @@ public class SnippetController {
         return snippetService.getSnippetsByLanguage(language, lim);
     }
 
+    @QueryMapping
+    public SnippetConnection snippetsByLanguageConnection(@Argument String language,
+                                                          @Argument Integer first,
+                                                          @Argument String after) {
+        int size = first != null ? first : 10;
+        return snippetService.getSnippetsPage(language, size, after);
+    }
+
     @MutationMapping
     public SnippetDTO createSnippet(@Argument String authorId,
                                     @Argument String title,
@@ -0,0 +1,49 @@
+package com.codesharing.platform.controller;
+
+import com.codesharing.platform.service.OperationLog;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import java.util.Map;
+
+/**
+ * REST API Controller for the collaborative edit history of snippets
+ */
+@RestController
+@RequestMapping("/snippets")
+@CrossOrigin(origins = "*", allowedHeaders = "*")
+public class SnippetHistoryController {
+
+    private static final int MAX_HISTORY_LIMIT = 500;
+
+    private final OperationLog operationLog;
+
+    public SnippetHistoryController(OperationLog operationLog) {
+        this.operationLog = operationLog;
+    }
+
+    /**
+     * List the newest log positions of a snippet
+     * GET /api/snippets/{snippetId}/history?limit=50
+     */
+    @GetMapping("/{snippetId}/history")
+    public ResponseEntity<?> getHistory(@PathVariable String snippetId,
+                                        @RequestParam(defaultValue = "50") int limit) {
+        if (limit <= 0) {
+            return ResponseEntity.badRequest().body(Map.of("error", "limit must be positive"));
+        }
+        return ResponseEntity.ok(operationLog.getHistory(snippetId, Math.min(limit, MAX_HISTORY_LIMIT)));
+    }
+
+    /**
+     * Get the code of a snippet as of a log position
+     * GET /api/snippets/{snippetId}/history/{seq}
+     */
+    @GetMapping("/{snippetId}/history/{seq}")
+    public ResponseEntity<?> getCodeAt(@PathVariable String snippetId, @PathVariable long seq) {
+        OperationLog.HistoryPoint point = operationLog.getCodeAt(snippetId, seq);
+        if (point == null) {
+            return ResponseEntity.status(404).body(Map.of("error", "Position not in the retained history"));
+        }
+        return ResponseEntity.ok(point);
+    }
+}
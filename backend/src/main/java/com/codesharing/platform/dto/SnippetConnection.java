@@ -0,0 +1,36 @@
+package com.codesharing.platform.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * DTO for one page of a cursor-paginated snippet listing
+ * Edges carry an opaque cursor; pass pageInfo.endCursor as "after" to get the next page
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SnippetConnection {
+
+    private List<Edge> edges;
+    private PageInfo pageInfo;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Edge {
+        private String cursor;
+        private SnippetDTO node;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class PageInfo {
+        private boolean hasNextPage;
+        private String endCursor;
+    }
+}
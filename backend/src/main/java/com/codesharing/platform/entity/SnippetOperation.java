@@ -0,0 +1,38 @@
+package com.codesharing.platform.entity;
+
+import com.codesharing.platform.service.TextOperation;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * SnippetOperation Entity
+ * One accepted delta edit of a snippet in the append-only operation log
+ * Keyed by (snippetId, seq); the id is "snippetId:seq"
+ */
+@Document(collection = "snippet_operations")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SnippetOperation {
+    
+    @Id
+    private String id;
+    
+    private String snippetId;
+    
+    private long seq;
+    
+    private String userId;
+    
+    private List<TextOperation.Edit> edits;
+    
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,36 @@
+package com.codesharing.platform.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * SnippetSnapshot Entity
+ * Full code of a snippet as of operation log position seq
+ * The code at any seq is the latest snapshot at or before it plus the operations after that snapshot
+ */
+@Document(collection = "snippet_snapshots")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SnippetSnapshot {
+    
+    @Id
+    private String id;
+    
+    private String snippetId;
+    
+    private long seq;
+    
+    private String code;
+    
+    private String userId;
+    
+    private LocalDateTime createdAt;
+}
@@ -4,9 +4,11 @@ import com.codesharing.platform.entity.SessionHistory;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -76,4 +78,24 @@ public interface SessionHistoryRepository extends JpaRepository<SessionHistory,
      */
     @Query("SELECT s FROM SessionHistory s ORDER BY s.securityEventCount DESC LIMIT :limit")
     List<SessionHistory> findMostSecurityIssues(@Param("limit") int limit);
+    
+    /**
+     * Update the snippet metadata of a snippet's sessions in one statement
+     * Null arguments leave the column unchanged
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE SessionHistory s SET " +
+           "s.snippetTitle = COALESCE(:title, s.snippetTitle), " +
+           "s.snippetDescription = COALESCE(:description, s.snippetDescription), " +
+           "s.snippetLanguage = COALESCE(:language, s.snippetLanguage), " +
+           "s.snippetTags = COALESCE(:tags, s.snippetTags), " +
+           "s.updatedAt = :updatedAt " +
+           "WHERE s.snippetId = :snippetId")
+    int updateSnippetMetadata(@Param("snippetId") String snippetId,
+                              @Param("title") String title,
+                              @Param("description") String description,
+                              @Param("language") String language,
+                              @Param("tags") String tags,
+                              @Param("updatedAt") LocalDateTime updatedAt);
 }
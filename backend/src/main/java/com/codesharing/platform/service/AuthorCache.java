@@ -0,0 +1,121 @@
+package com.codesharing.platform.service;
+
+import com.codesharing.platform.dto.UserDTO;
+import com.codesharing.platform.entity.User;
+import com.codesharing.platform.repository.UserRepository;
+import jakarta.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Author Cache
+ * Bounded, short-lived cache of snippet and comment authors, loaded in batches
+ * Authors missing from the users table (anonymous sessions, deleted accounts) resolve to an
+ * "Anonymous" placeholder, which is cached too so they are not looked up on every request.
+ * Author entries carry no email: they are shown to everyone who can read the snippet.
+ */
+@Component
+public class AuthorCache {
+
+  public static final String ANONYMOUS = "Anonymous";
+
+  private final UserRepository userRepository;
+  private final CollaborationMetrics metrics;
+  private final long ttlMillis;
+  private final Map<String, Entry> entries;
+
+  public AuthorCache(
+    UserRepository userRepository,
+    CollaborationMetrics metrics,
+    @Value("${app.author-cache.max-size:10000}") int maxSize,
+    @Value("${app.author-cache.ttl-ms:30000}") long ttlMillis
+  ) {
+    this.userRepository = userRepository;
+    this.metrics = metrics;
+    this.ttlMillis = ttlMillis;
+    // Access-ordered so the least recently used author is evicted first
+    this.entries = new LinkedHashMap<>(256, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+        return size() > maxSize;
+      }
+    };
+  }
+
+  private static class Entry {
+    final UserDTO author;
+    final long expiresAtMillis;
+
+    Entry(UserDTO author, long expiresAtMillis) {
+      this.author = author;
+      this.expiresAtMillis = expiresAtMillis;
+    }
+  }
+
+  @PostConstruct
+  public void registerMetrics() {
+    metrics.gauge("author-cache.size", this::size);
+  }
+
+  /**
+   * Authors by user id, with cache misses loaded in a single query
+   *
+   * @return An author for every given id, the placeholder for unknown ones
+   */
+  public Map<String, UserDTO> getAuthors(Collection<String> authorIds) {
+    Map<String, UserDTO> authors = new HashMap<>();
+    List<String> misses = new ArrayList<>();
+    long now = System.currentTimeMillis();
+    synchronized (entries) {
+      for (String authorId : authorIds) {
+        if (authorId == null) {
+          continue;
+        }
+        Entry entry = entries.get(authorId);
+        if (entry != null && entry.expiresAtMillis > now) {
+          authors.put(authorId, entry.author);
+        } else {
+          misses.add(authorId);
+        }
+      }
+    }
+    metrics.add("author-cache.hits", authors.size());
+    if (misses.isEmpty()) {
+      return authors;
+    }
+    metrics.add("author-cache.misses", misses.size());
+
+    Map<String, UserDTO> loaded = new HashMap<>();
+    for (String authorId : misses) {
+      loaded.put(authorId, anonymous(authorId));
+    }
+    for (User user : userRepository.findAllById(misses)) {
+      String role = user.getRole() != null ? user.getRole().name() : "USER";
+      loaded.put(user.getId(), new UserDTO(user.getId(), user.getUsername(), "", role));
+    }
+    synchronized (entries) {
+      loaded.forEach((authorId, author) -> entries.put(authorId, new Entry(author, now + ttlMillis)));
+    }
+    authors.putAll(loaded);
+    return authors;
+  }
+
+  public int size() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  /**
+   * Placeholder for an author without a user account
+   */
+  public static UserDTO anonymous(String authorId) {
+    return new UserDTO(authorId, ANONYMOUS, "", "USER");
+  }
+}
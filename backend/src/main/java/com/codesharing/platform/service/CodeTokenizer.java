@@ -0,0 +1,136 @@
+package com.codesharing.platform.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Code Tokenizer
+ * Splits snippet text into lowercase search terms
+ * An identifier yields itself and its camelCase / snake_case parts, so getUserName
+ * is found by "getusername", "user" or "name". In code, the keywords of the snippet's
+ * language are dropped: they are in nearly every snippet and only inflate the index.
+ */
+public final class CodeTokenizer {
+
+  private static final int MIN_TERM_LENGTH = 2;
+  private static final int MAX_TERM_LENGTH = 64;
+
+  private static final Set<String> C_FAMILY = Set.of(
+    "if", "else", "for", "while", "do", "return", "break", "continue", "switch", "case", "default",
+    "int", "long", "char", "void", "const", "static", "struct", "unsigned", "include", "define"
+  );
+
+  private static final Map<String, Set<String>> KEYWORDS = Map.of(
+    "java", Set.of("public", "private", "protected", "static", "final", "void", "class", "import", "package",
+                   "return", "new", "if", "else", "for", "while", "int", "long", "boolean", "this", "null"),
+    "javascript", Set.of("const", "let", "var", "function", "return", "if", "else", "for", "while", "new",
+                         "this", "null", "undefined", "import", "export", "from", "async", "await"),
+    "typescript", Set.of("const", "let", "var", "function", "return", "if", "else", "for", "while", "new",
+                         "this", "null", "undefined", "import", "export", "from", "async", "await",
+                         "interface", "type", "string", "number", "boolean"),
+    "python", Set.of("def", "class", "return", "if", "elif", "else", "for", "while", "in", "import", "from",
+                     "self", "none", "true", "false", "and", "or", "not", "pass", "with", "as"),
+    "go", Set.of("func", "package", "import", "return", "if", "else", "for", "range", "var", "const", "type",
+                 "struct", "nil", "err", "string", "int"),
+    "c", C_FAMILY,
+    "cpp", C_FAMILY,
+    "csharp", Set.of("public", "private", "protected", "static", "void", "class", "using", "namespace",
+                     "return", "new", "if", "else", "for", "while", "int", "string", "var", "this", "null")
+  );
+
+  private CodeTokenizer() {}
+
+  /**
+   * Terms of free text (title, description, tags, queries)
+   */
+  public static List<String> tokenize(String text) {
+    return tokenize(text, Set.of());
+  }
+
+  /**
+   * Terms of code written in the given language
+   */
+  public static List<String> tokenizeCode(String code, String language) {
+    Set<String> keywords = language != null
+      ? KEYWORDS.getOrDefault(language.toLowerCase(Locale.ROOT), Set.of())
+      : Set.of();
+    return tokenize(code, keywords);
+  }
+
+  private static List<String> tokenize(String text, Set<String> stopTerms) {
+    List<String> terms = new ArrayList<>();
+    if (text == null) {
+      return terms;
+    }
+    int length = text.length();
+    int start = -1;
+    for (int i = 0; i <= length; i++) {
+      boolean identifierChar = i < length && isIdentifierChar(text.charAt(i));
+      if (identifierChar && start < 0) {
+        start = i;
+      } else if (!identifierChar && start >= 0) {
+        addIdentifier(text, start, i, stopTerms, terms);
+        start = -1;
+      }
+    }
+    return terms;
+  }
+
+  /**
+   * Add an identifier and, if it is compound, its parts
+   */
+  private static void addIdentifier(String text, int start, int end, Set<String> stopTerms, List<String> terms) {
+    String whole = text.substring(start, end).toLowerCase(Locale.ROOT);
+    if (stopTerms.contains(whole)) {
+      return;
+    }
+    addTerm(whole, stopTerms, terms);
+    int partStart = start;
+    for (int i = start + 1; i <= end; i++) {
+      if (i == end || isBoundary(text, i)) {
+        String part = text.substring(partStart, i).replace("_", "").toLowerCase(Locale.ROOT);
+        // A plain word is its own only part, don't count it twice
+        if (!part.isEmpty() && !part.equals(whole)) {
+          addTerm(part, stopTerms, terms);
+        }
+        partStart = i;
+      }
+    }
+  }
+
+  /**
+   * Word boundary inside an identifier: snake_case underscore, camelCase hump,
+   * the last capital of an acronym (HTTPServer) or a letter/digit change
+   */
+  private static boolean isBoundary(String text, int i) {
+    char previous = text.charAt(i - 1);
+    char current = text.charAt(i);
+    if (current == '_') {
+      return true;
+    }
+    if (previous == '_') {
+      return false;
+    }
+    if (Character.isLowerCase(previous) && Character.isUpperCase(current)) {
+      return true;
+    }
+    if (Character.isUpperCase(previous) && Character.isUpperCase(current)
+      && i + 1 < text.length() && Character.isLowerCase(text.charAt(i + 1))) {
+      return true;
+    }
+    return Character.isDigit(previous) != Character.isDigit(current);
+  }
+
+  private static void addTerm(String term, Set<String> stopTerms, List<String> terms) {
+    if (term.length() >= MIN_TERM_LENGTH && term.length() <= MAX_TERM_LENGTH && !stopTerms.contains(term)) {
+      terms.add(term);
+    }
+  }
+
+  private static boolean isIdentifierChar(char c) {
+    return Character.isLetterOrDigit(c) || c == '_';
+  }
+}
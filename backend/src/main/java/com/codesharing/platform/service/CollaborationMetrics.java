@@ -0,0 +1,98 @@
+package com.codesharing.platform.service;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import org.springframework.stereotype.Component;
+
+/**
+ * Collaboration Metrics
+ * In-process counters and gauges for the real-time collaboration path
+ * Exposed to admins via GET /api/admin/collaboration/metrics
+ */
+@Component
+public class CollaborationMetrics {
+
+  /**
+   * Most keys of one keyed counter family; increments for further keys go to family.overflow
+   */
+  static final int MAX_KEYS_PER_FAMILY = 1000;
+
+  private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+  /**
+   * Structure: counter family -> (key, e.g. snippetId -> counter)
+   * Per-room counters, removed with the room so they do not grow with every snippet ever seen
+   */
+  private final Map<String, Map<String, LongAdder>> keyedCounters = new ConcurrentHashMap<>();
+  private final Map<String, Supplier<? extends Number>> gauges = new ConcurrentHashMap<>();
+
+  /**
+   * Increment a counter by one
+   */
+  public void increment(String name) {
+    add(name, 1);
+  }
+
+  /**
+   * Add to a counter
+   */
+  public void add(String name, long delta) {
+    counters.computeIfAbsent(name, k -> new LongAdder()).add(delta);
+  }
+
+  /**
+   * Increment the counter of one key in a family, exposed as family.key
+   */
+  public void increment(String family, String key) {
+    Map<String, LongAdder> keys = keyedCounters.computeIfAbsent(family, k -> new ConcurrentHashMap<>());
+    LongAdder counter = keys.get(key);
+    if (counter == null) {
+      if (keys.size() >= MAX_KEYS_PER_FAMILY) {
+        increment(family + ".overflow");
+        return;
+      }
+      counter = keys.computeIfAbsent(key, k -> new LongAdder());
+    }
+    counter.increment();
+  }
+
+  /**
+   * Drop the counter of one key in a family, e.g. when its room is reclaimed
+   */
+  public void remove(String family, String key) {
+    Map<String, LongAdder> keys = keyedCounters.get(family);
+    if (keys != null) {
+      keys.remove(key);
+    }
+  }
+
+  /**
+   * Current value of a counter (0 if never incremented)
+   */
+  public long get(String name) {
+    LongAdder counter = counters.get(name);
+    return counter != null ? counter.sum() : 0;
+  }
+
+  /**
+   * Register a gauge sampled each time metrics are read
+   */
+  public void gauge(String name, Supplier<? extends Number> supplier) {
+    gauges.put(name, supplier);
+  }
+
+  /**
+   * Snapshot of all counters and gauges, sorted by name
+   */
+  public Map<String, Object> snapshot() {
+    Map<String, Object> values = new TreeMap<>();
+    counters.forEach((name, counter) -> values.put(name, counter.sum()));
+    keyedCounters.forEach((family, keys) ->
+      keys.forEach((key, counter) -> values.put(family + "." + key, counter.sum())));
+    gauges.forEach((name, supplier) -> values.put(name, supplier.get()));
+    return values;
+  }
+}
@@ -1,17 +1,30 @@
 package com.codesharing.platform.service;
 
-import java.time.LocalDateTime;
+import com.codesharing.platform.dto.SnippetDTO;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 /**
  * Collaboration Service
  * Manages active user sessions, presence tracking, and typing indicators
  * Uses in-memory storage (can be upgraded to Redis for horizontal scaling)
+ * Room state is mutated from the room's SnippetLaneExecutor lane, one task at a time
  */
 @Service
 public class CollaborationService {
@@ -32,20 +45,285 @@ public class CollaborationService {
    */
   private final Map<String, String> sessionOwners = new ConcurrentHashMap<>();
 
+  /**
+   * Structure: snippetId -> live document (code, metadata, revision, recent edit history)
+   * Server-authoritative state: answers joinee sync requests and rebases delta edits
+   */
+  private final Map<String, LiveDocument> documents = new ConcurrentHashMap<>();
+
+  /**
+   * Structure: STOMP sessionId -> (snippetId -> userId)
+   * Lets a dropped connection be turned into a leave without a leave message
+   */
+  private final Map<String, Map<String, String>> sessionBindings = new ConcurrentHashMap<>();
+
+  /**
+   * Structure: snippetId -> active user list built from the maps above
+   * Dropped after every change to the room's presence, typing or owner, and rebuilt on next read
+   */
+  private final Map<String, RoomPresence> presenceViews = new ConcurrentHashMap<>();
+
+  private static final RoomPresence EMPTY_ROOM = new RoomPresence(List.of());
+
+  private final ObjectMapper objectMapper;
+
+  /**
+   * Receives the unsaved changes of a live document when it is dropped from memory
+   */
+  private volatile Consumer<DocumentChanges> documentClosedListener = changes -> { };
+
+  /**
+   * Receives every accepted edit, in revision order per document
+   * Called while the document is locked, so it must only hand the edit off
+   */
+  private volatile Consumer<DocumentEdit> editListener = edit -> { };
+
+  /**
+   * Number of applied edit batches kept per document for rebasing late operations
+   */
+  @Value("${app.collaboration.ops.history-size:500}")
+  private int operationHistorySize = 500;
+
+  /**
+   * Number of sequenced code/metadata frames kept per document for reconnect catch-up
+   */
+  @Value("${app.collaboration.replay.buffer-size:64}")
+  private int replayBufferSize = 64;
+
+  public CollaborationService(ObjectMapper objectMapper) {
+    this.objectMapper = objectMapper;
+  }
+
   /**
    * User presence information
+   * Timestamps are epoch millis
    */
   public static class UserPresence {
-    public String userId;
-    public String username;
-    public LocalDateTime joinedAt;
-    public LocalDateTime lastActivity;
+    public final String userId;
+    public volatile String username;
+    public final long joinedAt;
+    public volatile long lastActivity;
+    // STOMP sessions (tabs) currently bound to this presence
+    final Set<String> sessionIds = ConcurrentHashMap.newKeySet();
+    // Backplane node the user is connected to, null for users connected to this node
+    volatile String originNodeId;
 
     public UserPresence(String userId, String username) {
       this.userId = userId;
       this.username = username;
-      this.joinedAt = LocalDateTime.now();
-      this.lastActivity = LocalDateTime.now();
+      this.joinedAt = System.currentTimeMillis();
+      this.lastActivity = joinedAt;
+    }
+  }
+
+  /**
+   * Entry of a room's active user list, as sent to clients
+   */
+  public record ActiveUser(
+    String userId,
+    String username,
+    long joinedAt,
+    @JsonProperty("isTyping") boolean isTyping,
+    boolean owner
+  ) {}
+
+  /**
+   * Cached active user list of a room, and its /users payload once serialized
+   */
+  private static class RoomPresence {
+    final List<ActiveUser> users;
+    volatile byte[] usersPayload;
+
+    RoomPresence(List<ActiveUser> users) {
+      this.users = users;
+    }
+  }
+
+  /**
+   * A user's membership of a room, e.g. one removed by disconnect or idle eviction
+   */
+  public static class Departure {
+    public final String snippetId;
+    public final String userId;
+    public final String username;
+
+    public Departure(String snippetId, String userId, String username) {
+      this.snippetId = snippetId;
+      this.userId = userId;
+      this.username = username;
+    }
+  }
+
+  /**
+   * Server copy of a snippet's code and metadata
+   * history holds the edits that produced revisions (revision - history.size(), revision]
+   * replay holds the broadcast frames with sequences (sequence - replay.size(), sequence];
+   * epoch changes whenever the document is recreated, so old sequences are not reused
+   * dirtyFields marks the DocumentChanges fields changed since the last autosave;
+   * dirtySinceMillis is when the first of them changed, lastChangeMillis the latest change
+   */
+  private static class LiveDocument {
+    String code;
+    String language;
+    String title;
+    String description;
+    List<String> tags;
+    long revision;
+    volatile long lastAccessMillis = System.currentTimeMillis();
+    final Deque<List<TextOperation.Edit>> history = new ArrayDeque<>();
+    final String epoch = Long.toHexString(ThreadLocalRandom.current().nextLong());
+    long sequence;
+    final Deque<ReplayFrame> replay = new ArrayDeque<>();
+    int dirtyFields;
+    long dirtySinceMillis;
+    long lastChangeMillis;
+    // Whether an edit of this document has been passed to the edit listener yet
+    boolean editsReported;
+
+    LiveDocument(String code, String language) {
+      this.code = code != null ? code : "";
+      this.language = language;
+      this.tags = List.of();
+    }
+
+    void touch() {
+      lastAccessMillis = System.currentTimeMillis();
+    }
+  }
+
+  /**
+   * Fields of a live document changed since it was last saved, with their values at that point
+   * Fields not in the mask are null
+   */
+  public static class DocumentChanges {
+    public static final int CODE = 1;
+    public static final int LANGUAGE = 1 << 1;
+    public static final int TITLE = 1 << 2;
+    public static final int DESCRIPTION = 1 << 3;
+    public static final int TAGS = 1 << 4;
+
+    public final String snippetId;
+    public final int fields;
+    public final String code;
+    public final String language;
+    public final String title;
+    public final String description;
+    public final List<String> tags;
+
+    DocumentChanges(String snippetId, int fields, String code, String language, String title,
+                    String description, List<String> tags) {
+      this.snippetId = snippetId;
+      this.fields = fields;
+      this.code = code;
+      this.language = language;
+      this.title = title;
+      this.description = description;
+      this.tags = tags;
+    }
+
+    public boolean has(int field) {
+      return (fields & field) != 0;
+    }
+  }
+
+  /**
+   * An accepted edit: delta edits (a full-text replace is reported as its diff)
+   * code is the document after the edit; baseCode is the document before it,
+   * set only on the first edit reported for a live document
+   */
+  public static class DocumentEdit {
+    public final String snippetId;
+    public final String epoch;
+    public final long revision;
+    public final String userId;
+    public final List<TextOperation.Edit> edits;
+    public final String code;
+    public final String baseCode;
+    public final long timestamp = System.currentTimeMillis();
+
+    DocumentEdit(String snippetId, String epoch, long revision, String userId,
+                 List<TextOperation.Edit> edits, String code, String baseCode) {
+      this.snippetId = snippetId;
+      this.epoch = epoch;
+      this.revision = revision;
+      this.userId = userId;
+      this.edits = edits;
+      this.code = code;
+      this.baseCode = baseCode;
+    }
+  }
+
+  /**
+   * Point-in-time copy of a live document
+   */
+  public static class DocumentSnapshot {
+    public final String code;
+    public final String language;
+    public final String title;
+    public final String description;
+    public final List<String> tags;
+    public final long revision;
+    public final String epoch;
+    public final long sequence;
+
+    public DocumentSnapshot(String code, String language, String title, String description,
+                            List<String> tags, long revision, String epoch, long sequence) {
+      this.code = code;
+      this.language = language;
+      this.title = title;
+      this.description = description;
+      this.tags = tags;
+      this.revision = revision;
+      this.epoch = epoch;
+      this.sequence = sequence;
+    }
+  }
+
+  /**
+   * Current title and language of a live document, which may be ahead of the stored snippet
+   */
+  public record DocumentMetadata(String title, String language) {}
+
+  /**
+   * Broadcast frame kept for replay to reconnecting clients
+   */
+  public static class ReplayFrame {
+    public final long sequence;
+    public final String channel;
+    public final Object payload;
+
+    public ReplayFrame(long sequence, String channel, Object payload) {
+      this.sequence = sequence;
+      this.channel = channel;
+      this.payload = payload;
+    }
+  }
+
+  /**
+   * Frames a reconnecting client missed, with the document revision they lead up to
+   */
+  public static class Replay {
+    public final List<ReplayFrame> frames;
+    public final long revision;
+    public final long sequence;
+
+    public Replay(List<ReplayFrame> frames, long revision, long sequence) {
+      this.frames = frames;
+      this.revision = revision;
+      this.sequence = sequence;
+    }
+  }
+
+  /**
+   * Result of applying a delta operation: the rebased edits and the revision they produced
+   */
+  public static class AppliedOperation {
+    public final long revision;
+    public final List<TextOperation.Edit> edits;
+
+    public AppliedOperation(long revision, List<TextOperation.Edit> edits) {
+      this.revision = revision;
+      this.edits = edits;
     }
   }
 
@@ -54,12 +332,22 @@ public class CollaborationService {
    * First user to join becomes the owner (if not already set)
    */
   public void joinSession(String snippetId, String userId, String username) {
+    // A re-join from another tab keeps the presence its other sessions are bound to;
+    // a user seen through the backplane is replaced by the local connection
     activePresence
       .computeIfAbsent(snippetId, k -> new ConcurrentHashMap<>())
-      .put(userId, new UserPresence(userId, username));
+      .compute(userId, (k, existing) -> {
+        if (existing == null || existing.originNodeId != null) {
+          return new UserPresence(userId, username);
+        }
+        existing.username = username;
+        existing.lastActivity = System.currentTimeMillis();
+        return existing;
+      });
     
     // Mark first user as owner (if owner not already set)
     sessionOwners.computeIfAbsent(snippetId, k -> userId);
+    presenceChanged(snippetId);
   }
 
   /**
@@ -67,62 +355,324 @@ public class CollaborationService {
    * Used when loading snippet from database to restore owner info
    */
   public void setSessionOwner(String snippetId, String ownerId) {
-    sessionOwners.put(snippetId, ownerId);
+    if (!ownerId.equals(sessionOwners.put(snippetId, ownerId))) {
+      presenceChanged(snippetId);
+    }
   }
 
   /**
    * Remove user from snippet session
+   * The last user leaving keeps the owner and live document (with its replay buffer) for a
+   * quick rejoin; the reaper reclaims them once the room has been empty for the room TTL
    */
   public void leaveSession(String snippetId, String userId) {
-    if (activePresence.containsKey(snippetId)) {
-      activePresence.get(snippetId).remove(userId);
-      if (activePresence.get(snippetId).isEmpty()) {
-        activePresence.remove(snippetId);
-        typingIndicators.remove(snippetId);
+    Map<String, UserPresence> presences = activePresence.get(snippetId);
+    if (presences == null) {
+      return;
+    }
+    presences.remove(userId);
+    if (presences.isEmpty() && activePresence.remove(snippetId, presences)) {
+      typingIndicators.remove(snippetId);
+      LiveDocument document = documents.get(snippetId);
+      if (document != null) {
+        // The room TTL counts from the last user leaving
+        document.touch();
       }
     }
+    presenceChanged(snippetId);
+  }
+
+  /**
+   * Record activity (heartbeat, edit, typing) for a user in a session
+   */
+  public void touch(String snippetId, String userId) {
+    Map<String, UserPresence> presences = activePresence.get(snippetId);
+    UserPresence presence = presences != null && userId != null ? presences.get(userId) : null;
+    if (presence != null) {
+      presence.lastActivity = System.currentTimeMillis();
+    }
+  }
+
+  /**
+   * Bind a STOMP session to a user's presence in a snippet
+   */
+  public void bindSession(String sessionId, String snippetId, String userId) {
+    if (sessionId == null || userId == null) {
+      return;
+    }
+    sessionBindings.computeIfAbsent(sessionId, k -> new ConcurrentHashMap<>()).put(snippetId, userId);
+    Map<String, UserPresence> presences = activePresence.get(snippetId);
+    UserPresence presence = presences != null ? presences.get(userId) : null;
+    if (presence != null) {
+      presence.sessionIds.add(sessionId);
+    }
+  }
+
+  /**
+   * Remove a STOMP session's binding to a snippet after an explicit leave
+   */
+  public void unbindSession(String sessionId, String snippetId) {
+    if (sessionId == null) {
+      return;
+    }
+    sessionBindings.computeIfPresent(sessionId, (k, bindings) -> {
+      bindings.remove(snippetId);
+      return bindings.isEmpty() ? null : bindings;
+    });
+  }
+
+  /**
+   * Remove all room bindings of a closed STOMP session
+   *
+   * @return snippetId -> userId the session was bound to
+   */
+  public Map<String, String> releaseSession(String sessionId) {
+    Map<String, String> bindings = sessionId != null ? sessionBindings.remove(sessionId) : null;
+    return bindings != null ? bindings : Map.of();
+  }
+
+  /**
+   * Detach a closed session from a user's presence in one room
+   * The user leaves only when none of their other sessions (tabs) are still bound to it
+   *
+   * @return The departure, or null if the user is still connected
+   */
+  public Departure detachSession(String sessionId, String snippetId, String userId) {
+    Map<String, UserPresence> presences = activePresence.get(snippetId);
+    UserPresence presence = presences != null ? presences.get(userId) : null;
+    if (presence == null) {
+      return null;
+    }
+    presence.sessionIds.remove(sessionId);
+    if (!presence.sessionIds.isEmpty()) {
+      return null;
+    }
+    setUserTyping(snippetId, userId, false);
+    leaveSession(snippetId, userId);
+    return new Departure(snippetId, userId, presence.username);
+  }
+
+  /**
+   * Add a user connected to another backplane node
+   * Ignored if the user is also connected to this node
+   */
+  public void joinRemote(String snippetId, String userId, String username, String nodeId) {
+    UserPresence presence = new UserPresence(userId, username);
+    presence.originNodeId = nodeId;
+    activePresence.computeIfAbsent(snippetId, k -> new ConcurrentHashMap<>()).merge(
+      userId, presence, (existing, remote) -> existing.originNodeId == null ? existing : remote
+    );
+    presenceChanged(snippetId);
+  }
+
+  /**
+   * Remove a user connected to another backplane node
+   *
+   * @return true if the user was removed
+   */
+  public boolean leaveRemote(String snippetId, String userId, String nodeId) {
+    Map<String, UserPresence> presences = activePresence.get(snippetId);
+    UserPresence presence = presences != null ? presences.get(userId) : null;
+    if (presence == null || !nodeId.equals(presence.originNodeId)) {
+      return false;
+    }
+    setUserTyping(snippetId, userId, false);
+    leaveSession(snippetId, userId);
+    return true;
+  }
+
+  /**
+   * Users connected to the given backplane node (null for this node), as (snippetId, userId, username)
+   */
+  public List<Departure> findParticipants(String nodeId) {
+    List<Departure> participants = new ArrayList<>();
+    activePresence.forEach((snippetId, presences) -> {
+      for (UserPresence presence : presences.values()) {
+        if (Objects.equals(nodeId, presence.originNodeId)) {
+          participants.add(new Departure(snippetId, presence.userId, presence.username));
+        }
+      }
+    });
+    return participants;
+  }
+
+  /**
+   * Find users with no activity since the cutoff (does not modify state)
+   * Users connected to other backplane nodes are reaped by their own node
+   */
+  public List<Departure> findIdleUsers(long cutoff) {
+    List<Departure> idle = new ArrayList<>();
+    activePresence.forEach((snippetId, presences) -> {
+      for (UserPresence presence : presences.values()) {
+        if (presence.originNodeId == null && presence.lastActivity < cutoff) {
+          idle.add(new Departure(snippetId, presence.userId, presence.username));
+        }
+      }
+    });
+    return idle;
+  }
+
+  /**
+   * Evict a user if they are still idle since the cutoff
+   *
+   * @return true if the user was evicted
+   */
+  public boolean evictIfIdle(String snippetId, String userId, long cutoff) {
+    Map<String, UserPresence> presences = activePresence.get(snippetId);
+    UserPresence presence = presences != null ? presences.get(userId) : null;
+    if (presence == null || presence.originNodeId != null || presence.lastActivity >= cutoff) {
+      return false;
+    }
+    for (String sessionId : presence.sessionIds) {
+      unbindSession(sessionId, snippetId);
+    }
+    setUserTyping(snippetId, userId, false);
+    leaveSession(snippetId, userId);
+    return true;
+  }
+
+  /**
+   * Snippets that still hold typing, owner or document state but have no active users
+   */
+  public Set<String> findAbandonedRooms() {
+    Set<String> abandoned = new HashSet<>();
+    typingIndicators.keySet().forEach(abandoned::add);
+    sessionOwners.keySet().forEach(abandoned::add);
+    documents.keySet().forEach(abandoned::add);
+    presenceViews.keySet().forEach(abandoned::add);
+    abandoned.removeAll(activePresence.keySet());
+    return abandoned;
+  }
+
+  /**
+   * Drop per-room state of a room with no active users
+   * The live document is kept for documentTtlMillis after its last access
+   *
+   * @return Number of entries reclaimed
+   */
+  public int removeAbandonedRoom(String snippetId, long documentTtlMillis) {
+    if (activePresence.containsKey(snippetId)) {
+      return 0;
+    }
+    int reclaimed = 0;
+    if (typingIndicators.remove(snippetId) != null) {
+      reclaimed++;
+    }
+    if (sessionOwners.remove(snippetId) != null) {
+      reclaimed++;
+    }
+    if (presenceViews.remove(snippetId) != null) {
+      reclaimed++;
+    }
+    LiveDocument document = documents.get(snippetId);
+    if (document != null
+        && document.lastAccessMillis < System.currentTimeMillis() - documentTtlMillis
+        && documents.remove(snippetId, document)) {
+      closeDocument(snippetId, document);
+      reclaimed++;
+    }
+    return reclaimed;
+  }
+
+  /**
+   * Number of rooms with at least one active user
+   */
+  public int getActiveRoomCount() {
+    return activePresence.size();
+  }
+
+  /**
+   * Number of live documents held in memory
+   */
+  public int getLiveDocumentCount() {
+    return documents.size();
   }
 
   /**
    * Get all active users in a snippet session
    * Includes owner flag for each user
+   * The list is shared and cached until the room changes; callers must not modify it
    */
-  public List<Map<String, Object>> getActiveUsers(String snippetId) {
-    List<Map<String, Object>> users = new ArrayList<>();
-    String ownerId = sessionOwners.get(snippetId);
-    
-    if (activePresence.containsKey(snippetId)) {
-      for (UserPresence presence : activePresence.get(snippetId).values()) {
-        Map<String, Object> userData = new HashMap<>();
-        userData.put("userId", presence.userId);
-        userData.put("username", presence.username);
-        userData.put("joinedAt", presence.joinedAt);
-        userData.put("isTyping", typingIndicators
-          .getOrDefault(snippetId, new HashMap<>())
-          .getOrDefault(presence.userId, false));
-        userData.put("owner", presence.userId.equals(ownerId));
-        users.add(userData);
+  public List<ActiveUser> getActiveUsers(String snippetId) {
+    return roomPresence(snippetId).users;
+  }
+
+  /**
+   * Serialized {"users": [...], "count": n} payload for the room, cached with the active user list
+   */
+  public byte[] getActiveUsersPayload(String snippetId) {
+    RoomPresence room = roomPresence(snippetId);
+    byte[] payload = room.usersPayload;
+    if (payload == null) {
+      try {
+        payload = objectMapper.writeValueAsBytes(Map.of("users", room.users, "count", room.users.size()));
+      } catch (JsonProcessingException e) {
+        throw new IllegalStateException("Could not serialize active users of snippet " + snippetId, e);
       }
+      room.usersPayload = payload;
     }
-    return users;
+    return payload;
+  }
+
+  private RoomPresence roomPresence(String snippetId) {
+    // Built inside compute so a concurrent presenceChanged cannot be overtaken by a stale build
+    RoomPresence room = presenceViews.computeIfAbsent(snippetId, this::buildRoomPresence);
+    return room != null ? room : EMPTY_ROOM;
+  }
+
+  /**
+   * Active user list of a room, or null (not cached) if the room has no users
+   */
+  private RoomPresence buildRoomPresence(String snippetId) {
+    Map<String, UserPresence> presences = activePresence.get(snippetId);
+    if (presences == null) {
+      return null;
+    }
+    String ownerId = sessionOwners.get(snippetId);
+    Map<String, Boolean> typing = typingIndicators.get(snippetId);
+    List<ActiveUser> users = new ArrayList<>(presences.size());
+    for (UserPresence presence : presences.values()) {
+      users.add(new ActiveUser(
+        presence.userId,
+        presence.username,
+        presence.joinedAt,
+        typing != null && typing.containsKey(presence.userId),
+        presence.userId.equals(ownerId)
+      ));
+    }
+    return new RoomPresence(List.copyOf(users));
+  }
+
+  /**
+   * Drop the cached active user list after a change to the room
+   * Must be called after the change is applied
+   */
+  private void presenceChanged(String snippetId) {
+    presenceViews.remove(snippetId);
   }
 
   /**
    * Update user typing status
    */
   public void setUserTyping(String snippetId, String userId, boolean isTyping) {
+    touch(snippetId, userId);
+    boolean changed = false;
     if (isTyping) {
-      typingIndicators
+      changed = typingIndicators
         .computeIfAbsent(snippetId, k -> new ConcurrentHashMap<>())
-        .put(userId, true);
+        .put(userId, true) == null;
     } else {
-      if (typingIndicators.containsKey(snippetId)) {
-        typingIndicators.get(snippetId).remove(userId);
-        if (typingIndicators.get(snippetId).isEmpty()) {
-          typingIndicators.remove(snippetId);
+      Map<String, Boolean> typing = typingIndicators.get(snippetId);
+      if (typing != null) {
+        changed = typing.remove(userId) != null;
+        if (typing.isEmpty()) {
+          typingIndicators.remove(snippetId, typing);
         }
       }
     }
+    if (changed) {
+      presenceChanged(snippetId);
+    }
   }
 
   /**
@@ -170,7 +720,8 @@ public class CollaborationService {
    * Get count of active users
    */
   public int getActiveUserCount(String snippetId) {
-    return activePresence.getOrDefault(snippetId, new HashMap<>()).size();
+    Map<String, UserPresence> presences = activePresence.get(snippetId);
+    return presences != null ? presences.size() : 0;
   }
 
   /**
@@ -179,4 +730,382 @@ public class CollaborationService {
   public String getSessionOwner(String snippetId) {
     return sessionOwners.get(snippetId);
   }
+
+  /**
+   * STOMP sessions of the snippet owner connected to this node
+   *
+   * @return Empty if the owner is not present here
+   */
+  public List<String> getOwnerSessionIds(String snippetId) {
+    String ownerId = sessionOwners.get(snippetId);
+    Map<String, UserPresence> presences = activePresence.get(snippetId);
+    UserPresence owner = ownerId != null && presences != null ? presences.get(ownerId) : null;
+    return owner != null ? List.copyOf(owner.sessionIds) : List.of();
+  }
+
+  /**
+   * Check whether a live document exists for the snippet
+   */
+  public boolean hasDocument(String snippetId) {
+    return documents.containsKey(snippetId);
+  }
+
+  /**
+   * Snippets with a live document on this node
+   */
+  public Set<String> getDocumentIds() {
+    return new HashSet<>(documents.keySet());
+  }
+
+  /**
+   * Drop a live document this node no longer owns, handing its unsaved changes to the autosaver
+   * Kept documents would be stale if the room moved back to this node later
+   *
+   * @return true if a document was released
+   */
+  public boolean releaseDocument(String snippetId) {
+    LiveDocument document = documents.remove(snippetId);
+    closeDocument(snippetId, document);
+    return document != null;
+  }
+
+  /**
+   * Seed the live document from the persisted snippet
+   * No-op if another message already created it
+   */
+  public void seedDocument(String snippetId, SnippetDTO snippet) {
+    LiveDocument document = new LiveDocument(
+      snippet != null ? snippet.getCode() : "",
+      snippet != null ? snippet.getLanguage() : null
+    );
+    if (snippet != null) {
+      document.title = snippet.getTitle();
+      document.description = snippet.getDescription();
+      document.tags = snippet.getTags() != null ? new ArrayList<>(snippet.getTags()) : List.of();
+    }
+    documents.putIfAbsent(snippetId, document);
+  }
+
+  /**
+   * Apply a metadata update to the live document
+   * Null fields are left unchanged, matching partial updates sent by clients
+   */
+  public void updateDocumentMetadata(String snippetId, String title, String description,
+                                     String language, List<String> tags) {
+    LiveDocument document = documents.computeIfAbsent(snippetId, k -> new LiveDocument("", language));
+    synchronized (document) {
+      document.touch();
+      if (title != null) {
+        document.title = title;
+        markDirty(document, DocumentChanges.TITLE);
+      }
+      if (description != null) {
+        document.description = description;
+        markDirty(document, DocumentChanges.DESCRIPTION);
+      }
+      if (language != null) {
+        document.language = language;
+        markDirty(document, DocumentChanges.LANGUAGE);
+      }
+      if (tags != null) {
+        document.tags = new ArrayList<>(tags);
+        markDirty(document, DocumentChanges.TAGS);
+      }
+    }
+  }
+
+  /**
+   * Get a copy of the live document, or null if none exists
+   */
+  public DocumentSnapshot getDocumentSnapshot(String snippetId) {
+    LiveDocument document = documents.get(snippetId);
+    if (document == null) {
+      return null;
+    }
+    synchronized (document) {
+      document.touch();
+      return new DocumentSnapshot(document.code, document.language, document.title, document.description,
+                                  document.tags, document.revision, document.epoch, document.sequence);
+    }
+  }
+
+  /**
+   * Title and language of the live document without copying its code, or null if none exists
+   */
+  public DocumentMetadata getDocumentMetadata(String snippetId) {
+    LiveDocument document = documents.get(snippetId);
+    if (document == null) {
+      return null;
+    }
+    synchronized (document) {
+      return new DocumentMetadata(document.title, document.language);
+    }
+  }
+
+  /**
+   * Epoch of the live document's sequences, or null if none exists
+   */
+  public String getDocumentEpoch(String snippetId) {
+    LiveDocument document = documents.get(snippetId);
+    return document != null ? document.epoch : null;
+  }
+
+  /**
+   * Assign the next sequence to a frame about to be broadcast and keep it for replay
+   * Called from the room's lane, so frames are broadcast in sequence order
+   *
+   * @return The frame's sequence, or 0 if there is no live document
+   */
+  public long recordFrame(String snippetId, String channel, Object payload) {
+    LiveDocument document = documents.get(snippetId);
+    if (document == null) {
+      return 0;
+    }
+    synchronized (document) {
+      long sequence = ++document.sequence;
+      document.replay.addLast(new ReplayFrame(sequence, channel, payload));
+      while (document.replay.size() > replayBufferSize) {
+        document.replay.removeFirst();
+      }
+      return sequence;
+    }
+  }
+
+  /**
+   * Frames broadcast after lastSequence in the given epoch
+   *
+   * @return The missed frames, or null if the client must take a full snapshot
+   *         (unknown document, different epoch, or frames no longer buffered)
+   */
+  public Replay getFramesSince(String snippetId, String epoch, long lastSequence) {
+    LiveDocument document = documents.get(snippetId);
+    if (document == null || epoch == null || !epoch.equals(document.epoch)) {
+      return null;
+    }
+    synchronized (document) {
+      document.touch();
+      long oldestBuffered = document.sequence - document.replay.size();
+      if (lastSequence > document.sequence || lastSequence < oldestBuffered) {
+        return null;
+      }
+      List<ReplayFrame> missed = new ArrayList<>();
+      for (ReplayFrame frame : document.replay) {
+        if (frame.sequence > lastSequence) {
+          missed.add(frame);
+        }
+      }
+      return new Replay(missed, document.revision, document.sequence);
+    }
+  }
+
+  /**
+   * Replace the whole document (full-text fallback for clients without delta support)
+   * The replacement is recorded in the edit history as the diff from the previous text,
+   * so operations based on older revisions are still rebased over it
+   *
+   * @return The new revision, or the current one if the code did not change
+   */
+  public long replaceDocument(String snippetId, String userId, String code, String language) {
+    LiveDocument document = documents.computeIfAbsent(snippetId, k -> new LiveDocument(code, language));
+    synchronized (document) {
+      document.touch();
+      if (language != null && !language.equals(document.language)) {
+        document.language = language;
+        markDirty(document, DocumentChanges.LANGUAGE);
+      }
+      String baseCode = document.code;
+      String newCode = code != null ? code : "";
+      // Kept as the changed range, so rebasing and the operation log work on a small op, not the whole code
+      List<TextOperation.Edit> edits = TextOperation.diff(baseCode, newCode);
+      if (edits.isEmpty()) {
+        return document.revision;
+      }
+      document.code = newCode;
+      markDirty(document, DocumentChanges.CODE);
+      document.history.addLast(edits);
+      while (document.history.size() > operationHistorySize) {
+        document.history.removeFirst();
+      }
+      long revision = ++document.revision;
+      reportEdit(snippetId, document, revision, userId, edits, baseCode);
+      return revision;
+    }
+  }
+
+  /**
+   * Apply a delta operation made against baseRevision
+   * Edits are rebased over everything applied since baseRevision before being applied
+   *
+   * @return The applied operation, or null if the client must resync
+   *         (unknown document, revision outside the history window, or invalid edits)
+   */
+  public AppliedOperation applyOperation(String snippetId, String userId, long baseRevision,
+                                         List<TextOperation.Edit> edits) {
+    LiveDocument document = documents.get(snippetId);
+    if (document == null || edits == null || edits.isEmpty()) {
+      return null;
+    }
+    synchronized (document) {
+      document.touch();
+      long oldestBase = document.revision - document.history.size();
+      if (baseRevision > document.revision || baseRevision < oldestBase) {
+        return null;
+      }
+      List<TextOperation.Edit> rebased = edits;
+      String baseCode = document.code;
+      try {
+        Iterator<List<TextOperation.Edit>> concurrent = document.history.iterator();
+        for (long rev = oldestBase; rev < document.revision; rev++) {
+          List<TextOperation.Edit> applied = concurrent.next();
+          if (rev >= baseRevision) {
+            rebased = TextOperation.transform(rebased, applied);
+          }
+        }
+        document.code = TextOperation.apply(document.code, rebased);
+        markDirty(document, DocumentChanges.CODE);
+      } catch (IllegalArgumentException e) {
+        return null;
+      }
+      document.history.addLast(rebased);
+      while (document.history.size() > operationHistorySize) {
+        document.history.removeFirst();
+      }
+      long revision = ++document.revision;
+      reportEdit(snippetId, document, revision, userId, rebased, baseCode);
+      return new AppliedOperation(revision, rebased);
+    }
+  }
+
+  /**
+   * Register the receiver of unsaved changes of documents dropped from memory
+   */
+  public void setDocumentClosedListener(Consumer<DocumentChanges> listener) {
+    this.documentClosedListener = listener != null ? listener : changes -> { };
+  }
+
+  /**
+   * Register the receiver of accepted edits
+   */
+  public void setEditListener(Consumer<DocumentEdit> listener) {
+    this.editListener = listener != null ? listener : edit -> { };
+  }
+
+  /**
+   * Snippets whose live document has changes not yet saved
+   */
+  public List<String> findDirtyDocuments() {
+    List<String> dirty = new ArrayList<>();
+    documents.forEach((snippetId, document) -> {
+      synchronized (document) {
+        if (document.dirtyFields != 0) {
+          dirty.add(snippetId);
+        }
+      }
+    });
+    return dirty;
+  }
+
+  /**
+   * Take the unsaved changes of a live document, marking it clean
+   * Changes made afterwards mark it dirty again
+   *
+   * @return The changes, or null if the document is unknown or clean
+   */
+  public DocumentChanges takeChanges(String snippetId) {
+    LiveDocument document = documents.get(snippetId);
+    return document != null ? takeChanges(snippetId, document) : null;
+  }
+
+  /**
+   * Mark changes whose save failed as unsaved again, unless the document is gone
+   *
+   * @return false if the live document no longer exists
+   */
+  public boolean restoreChanges(DocumentChanges changes) {
+    LiveDocument document = documents.get(changes.snippetId);
+    if (document == null) {
+      return false;
+    }
+    synchronized (document) {
+      if (document.dirtyFields == 0) {
+        document.dirtySinceMillis = System.currentTimeMillis();
+      }
+      document.dirtyFields |= changes.fields;
+    }
+    return true;
+  }
+
+  /**
+   * Snippets with unsaved changes that are due for saving: no change for quietMillis,
+   * or changes pending for maxWaitMillis while edits keep coming
+   */
+  public List<String> findSettledDocuments(long quietMillis, long maxWaitMillis) {
+    long now = System.currentTimeMillis();
+    List<String> settled = new ArrayList<>();
+    documents.forEach((snippetId, document) -> {
+      synchronized (document) {
+        if (document.dirtyFields != 0
+          && (now - document.lastChangeMillis >= quietMillis || now - document.dirtySinceMillis >= maxWaitMillis)) {
+          settled.add(snippetId);
+        }
+      }
+    });
+    return settled;
+  }
+
+  private DocumentChanges takeChanges(String snippetId, LiveDocument document) {
+    synchronized (document) {
+      int fields = document.dirtyFields;
+      if (fields == 0) {
+        return null;
+      }
+      document.dirtyFields = 0;
+      return new DocumentChanges(
+        snippetId,
+        fields,
+        (fields & DocumentChanges.CODE) != 0 ? document.code : null,
+        (fields & DocumentChanges.LANGUAGE) != 0 ? document.language : null,
+        (fields & DocumentChanges.TITLE) != 0 ? document.title : null,
+        (fields & DocumentChanges.DESCRIPTION) != 0 ? document.description : null,
+        (fields & DocumentChanges.TAGS) != 0 ? List.copyOf(document.tags) : null
+      );
+    }
+  }
+
+  /**
+   * Mark a field of the live document unsaved; caller holds the document lock
+   */
+  private static void markDirty(LiveDocument document, int field) {
+    long now = System.currentTimeMillis();
+    if (document.dirtyFields == 0) {
+      document.dirtySinceMillis = now;
+    }
+    document.lastChangeMillis = now;
+    document.dirtyFields |= field;
+  }
+
+  /**
+   * Pass an edit to the edit listener; caller holds the document lock
+   */
+  private void reportEdit(String snippetId, LiveDocument document, long revision, String userId,
+                          List<TextOperation.Edit> edits, String baseCode) {
+    boolean first = !document.editsReported;
+    document.editsReported = true;
+    editListener.accept(new DocumentEdit(
+      snippetId, document.epoch, revision, userId, edits, document.code, first ? baseCode : null
+    ));
+  }
+
+  /**
+   * Hand the unsaved changes of a document dropped from memory to the listener
+   */
+  private void closeDocument(String snippetId, LiveDocument document) {
+    if (document == null) {
+      return;
+    }
+    DocumentChanges changes = takeChanges(snippetId, document);
+    if (changes != null) {
+      documentClosedListener.accept(changes);
+    }
+  }
 }
@@ -1,9 +1,8 @@
 package com.codesharing.platform.service;
 
 import com.codesharing.platform.dto.CommentDTO;
+import com.codesharing.platform.dto.UserDTO;
 import com.codesharing.platform.entity.Comment;
-import com.codesharing.platform.entity.User;
-import com.codesharing.platform.repository.UserRepository;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
@@ -15,11 +14,11 @@ import java.util.*;
 @Service
 public class CommentService {
     private final MongoTemplate mongoTemplate;
-    private final UserRepository userRepository;
+    private final AuthorCache authorCache;
 
-    public CommentService(MongoTemplate mongoTemplate, UserRepository userRepository) {
+    public CommentService(MongoTemplate mongoTemplate, AuthorCache authorCache) {
         this.mongoTemplate = mongoTemplate;
-        this.userRepository = userRepository;
+        this.authorCache = authorCache;
     }
 
     public CommentDTO addComment(String snippetId, String authorId, String content) {
@@ -33,13 +32,15 @@ public class CommentService {
                 .build();
 
         mongoTemplate.save(comment);
-        return convertToDTO(comment);
+        return convertToDTO(comment, authorCache.getAuthors(Collections.singletonList(authorId)));
     }
 
     public List<CommentDTO> getCommentsBySnippetId(String snippetId) {
         Query query = new Query(Criteria.where("snippetId").is(snippetId));
         List<Comment> comments = mongoTemplate.find(query, Comment.class);
-        return comments.stream().map(this::convertToDTO).toList();
+        // All authors of the thread in one batch
+        Map<String, UserDTO> authors = authorCache.getAuthors(comments.stream().map(Comment::getAuthorId).toList());
+        return comments.stream().map(comment -> convertToDTO(comment, authors)).toList();
     }
 
     public boolean deleteComment(String id) {
@@ -51,15 +52,17 @@ public class CommentService {
         return false;
     }
 
-    private CommentDTO convertToDTO(Comment comment) {
-        Optional<User> user = userRepository.findById(comment.getAuthorId());
-        String authorUsername = user.map(User::getUsername).orElse("Anonymous");
-        
+    /**
+     * authorUsername is filled for REST and WebSocket callers; GraphQL resolves the author
+     * fields per request through AuthorController, which reads the same AuthorCache
+     */
+    private CommentDTO convertToDTO(Comment comment, Map<String, UserDTO> authors) {
+        UserDTO author = authors.get(comment.getAuthorId());
         CommentDTO dto = new CommentDTO();
         dto.setId(comment.getId());
         dto.setSnippetId(comment.getSnippetId());
         dto.setAuthorId(comment.getAuthorId());
-        dto.setAuthorUsername(authorUsername);
+        dto.setAuthorUsername(author != null ? author.getUsername() : AuthorCache.ANONYMOUS);
         dto.setContent(comment.getContent());
         dto.setCreatedAt(comment.getCreatedAt());
         dto.setUpdatedAt(comment.getUpdatedAt());
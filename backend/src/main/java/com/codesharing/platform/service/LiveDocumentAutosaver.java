@@ -0,0 +1,249 @@
+package com.codesharing.platform.service;
+
+import com.codesharing.platform.entity.CodeSnippet;
+import com.codesharing.platform.repository.SessionHistoryRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+/**
+ * Live Document Autosaver
+ * Write-behind persistence of collaborative edits to code_snippets and session_history
+ * Edits only mark fields of the live document dirty; a document is written once its edits
+ * pause for quiet-period-ms (or at the latest interval-ms after its first unsaved change)
+ * with a field-level $set, so a burst of keystrokes costs one write. Title, description,
+ * language and tag changes are also copied to the snippet's admin session history row.
+ * Documents dropped from memory (room closed) are saved right away, and everything
+ * still dirty is saved on shutdown
+ */
+@Slf4j
+@Service
+public class LiveDocumentAutosaver {
+
+  private static final int SEARCHABLE_FIELDS = CollaborationService.DocumentChanges.CODE
+    | CollaborationService.DocumentChanges.TITLE
+    | CollaborationService.DocumentChanges.DESCRIPTION
+    | CollaborationService.DocumentChanges.LANGUAGE
+    | CollaborationService.DocumentChanges.TAGS;
+
+  private static final int METADATA_FIELDS = CollaborationService.DocumentChanges.TITLE
+    | CollaborationService.DocumentChanges.DESCRIPTION
+    | CollaborationService.DocumentChanges.LANGUAGE
+    | CollaborationService.DocumentChanges.TAGS;
+
+  private final CollaborationService collaborationService;
+  private final MongoTemplate mongoTemplate;
+  private final SnippetHeaderCache snippetHeaderCache;
+  private final SessionHistoryRepository sessionHistoryRepository;
+  private final SnippetSearchIndex snippetSearchIndex;
+  private final CollaborationMetrics metrics;
+
+  /**
+   * Longest a change stays unsaved while edits keep coming; 0 or less disables autosave
+   */
+  @Value("${app.collaboration.autosave.interval-ms:5000}")
+  private long intervalMillis = 5000;
+
+  /**
+   * Pause in a document's edits after which it is saved; 0 or less saves every interval-ms
+   */
+  @Value("${app.collaboration.autosave.quiet-period-ms:1000}")
+  private long quietPeriodMillis = 1000;
+
+  /**
+   * Changes of closed documents whose save failed, retried on the next run
+   */
+  private final Queue<CollaborationService.DocumentChanges> retries = new ConcurrentLinkedQueue<>();
+
+  private ScheduledExecutorService saver;
+
+  public LiveDocumentAutosaver(
+    CollaborationService collaborationService,
+    MongoTemplate mongoTemplate,
+    SnippetHeaderCache snippetHeaderCache,
+    SessionHistoryRepository sessionHistoryRepository,
+    SnippetSearchIndex snippetSearchIndex,
+    CollaborationMetrics metrics
+  ) {
+    this.collaborationService = collaborationService;
+    this.mongoTemplate = mongoTemplate;
+    this.snippetHeaderCache = snippetHeaderCache;
+    this.sessionHistoryRepository = sessionHistoryRepository;
+    this.snippetSearchIndex = snippetSearchIndex;
+    this.metrics = metrics;
+  }
+
+  @PostConstruct
+  public void start() {
+    if (intervalMillis <= 0) {
+      log.info("[Autosave] Live document autosave disabled");
+      return;
+    }
+    metrics.gauge("collaboration.autosave.dirty", () -> collaborationService.findDirtyDocuments().size());
+    // Check often enough that a settled document waits at most half a quiet period more
+    long checkMillis = quietPeriodMillis > 0
+      ? Math.min(intervalMillis, Math.max(100, quietPeriodMillis / 2))
+      : intervalMillis;
+    // One thread, so saves of the same document are never reordered
+    saver = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("live-autosave-"));
+    saver.scheduleWithFixedDelay(this::saveSettled, checkMillis, checkMillis, TimeUnit.MILLISECONDS);
+    collaborationService.setDocumentClosedListener(changes -> saver.execute(() -> saveClosed(changes)));
+    log.info("[Autosave] Saving live documents after {} ms without edits, at most {} ms after a change",
+             quietPeriodMillis, intervalMillis);
+  }
+
+  /**
+   * Save everything still dirty before the live documents are lost
+   */
+  @PreDestroy
+  public void stop() throws InterruptedException {
+    if (saver == null) {
+      return;
+    }
+    collaborationService.setDocumentClosedListener(this::saveClosed);
+    saver.shutdown();
+    saver.awaitTermination(10, TimeUnit.SECONDS);
+    save(collaborationService.findDirtyDocuments());
+  }
+
+  /**
+   * Save the live documents due for saving
+   */
+  void saveSettled() {
+    save(collaborationService.findSettledDocuments(Math.max(quietPeriodMillis, 0), intervalMillis));
+  }
+
+  /**
+   * Save the given live documents and retry failed saves of closed ones
+   */
+  private void save(List<String> snippetIds) {
+    try {
+      for (int pending = retries.size(); pending > 0; pending--) {
+        CollaborationService.DocumentChanges changes = retries.poll();
+        if (changes == null) {
+          break;
+        }
+        saveClosed(changes);
+      }
+      for (String snippetId : snippetIds) {
+        CollaborationService.DocumentChanges changes = collaborationService.takeChanges(snippetId);
+        if (changes != null && !save(changes) && !collaborationService.restoreChanges(changes)) {
+          retries.add(changes);
+        }
+      }
+    } catch (Exception e) {
+      log.error("[Autosave] Autosave run failed: {}", e.getMessage(), e);
+    }
+  }
+
+  private void saveClosed(CollaborationService.DocumentChanges changes) {
+    if (!save(changes)) {
+      retries.add(changes);
+    }
+  }
+
+  /**
+   * Write the changed fields to the stored snippet
+   *
+   * @return false if the write failed and should be retried
+   */
+  private boolean save(CollaborationService.DocumentChanges changes) {
+    Update update = new Update().set("updatedAt", LocalDateTime.now());
+    if (changes.has(CollaborationService.DocumentChanges.CODE)) {
+      update.set("code", changes.code);
+    }
+    if (changes.has(CollaborationService.DocumentChanges.LANGUAGE)) {
+      update.set("language", changes.language);
+    }
+    if (changes.has(CollaborationService.DocumentChanges.TITLE)) {
+      update.set("title", changes.title);
+    }
+    if (changes.has(CollaborationService.DocumentChanges.DESCRIPTION)) {
+      update.set("description", changes.description);
+    }
+    if (changes.has(CollaborationService.DocumentChanges.TAGS)) {
+      update.set("tags", changes.tags);
+    }
+    if (changes.has(METADATA_FIELDS)) {
+      updateSessionHistory(changes);
+    }
+    try {
+      if (!write(changes, update)) {
+        // Live-only room (snippet never stored or deleted meanwhile): nothing to save to
+        metrics.increment("collaboration.autosave.skipped");
+        log.debug("[Autosave] Snippet {} is not stored, dropping live changes", changes.snippetId);
+        return true;
+      }
+      if (changes.has(CollaborationService.DocumentChanges.TITLE | CollaborationService.DocumentChanges.LANGUAGE)) {
+        snippetHeaderCache.invalidate(changes.snippetId);
+      }
+      metrics.increment("collaboration.autosave.saved");
+      log.debug("[Autosave] Saved live changes of snippet {}", changes.snippetId);
+      return true;
+    } catch (Exception e) {
+      metrics.increment("collaboration.autosave.failed");
+      log.warn("[Autosave] Could not save snippet {}: {}", changes.snippetId, e.getMessage());
+      return false;
+    }
+  }
+
+  /**
+   * Apply the update to the stored snippet, reindexing it for search if searchable text changed
+   *
+   * @return false if the snippet is not stored
+   */
+  private boolean write(CollaborationService.DocumentChanges changes, Update update) {
+    Query query = Query.query(Criteria.where("_id").is(changes.snippetId));
+    if (!changes.has(SEARCHABLE_FIELDS)) {
+      return mongoTemplate.updateFirst(query, update, CodeSnippet.class).getMatchedCount() > 0;
+    }
+    // The index needs the full text, so read back the searchable fields in the same round trip
+    query.fields().include("title", "description", "code", "tags", "language");
+    CodeSnippet saved = mongoTemplate.findAndModify(
+      query, update, FindAndModifyOptions.options().returnNew(true), CodeSnippet.class
+    );
+    if (saved == null) {
+      return false;
+    }
+    snippetSearchIndex.updated(saved);
+    return true;
+  }
+
+  /**
+   * Copy changed metadata to the admin session history, which lists sessions by snippet title
+   * Best effort: the snippet itself is the source of truth and is not held back by a failure here
+   */
+  private void updateSessionHistory(CollaborationService.DocumentChanges changes) {
+    try {
+      int updated = sessionHistoryRepository.updateSnippetMetadata(
+        changes.snippetId,
+        changes.title,
+        changes.description,
+        changes.language,
+        changes.tags != null ? String.join(",", changes.tags) : null,
+        LocalDateTime.now()
+      );
+      if (updated > 0) {
+        metrics.increment("collaboration.autosave.session-history");
+      }
+    } catch (Exception e) {
+      metrics.increment("collaboration.autosave.session-history.failed");
+      log.warn("[Autosave] Could not update session history of snippet {}: {}", changes.snippetId, e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,414 @@
+package com.codesharing.platform.service;
+
+import com.codesharing.platform.entity.SnippetOperation;
+import com.codesharing.platform.entity.SnippetSnapshot;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+/**
+ * Operation Log
+ * Append-only history of accepted edits per snippet, in snippet_operations keyed by (snippetId, seq),
+ * with full-code checkpoints in snippet_snapshots
+ * The edit path only enqueues; a background writer assigns sequence numbers and writes in
+ * bulk batches. Full-text replaces arrive as their diff, so they are logged as operations too.
+ * A snapshot is written when a live document starts logging and after every snapshot-every
+ * operations, and each snapshot is followed by a compaction. Only the newest
+ * keep-snapshots snapshots and the operations after the oldest of them are kept,
+ * so the code at any retained seq is one snapshot plus a short operation tail
+ */
+@Slf4j
+@Service
+public class OperationLog {
+
+  private final CollaborationService collaborationService;
+  private final MongoTemplate mongoTemplate;
+  private final CollaborationMetrics metrics;
+  private final BlockingQueue<CollaborationService.DocumentEdit> queue;
+
+  @Value("${app.collaboration.oplog.enabled:true}")
+  private boolean enabled = true;
+
+  @Value("${app.collaboration.oplog.batch-size:500}")
+  private int batchSize = 500;
+
+  @Value("${app.collaboration.oplog.flush-interval-ms:1000}")
+  private long flushIntervalMillis = 1000;
+
+  /**
+   * Delta operations between two periodic snapshots
+   */
+  @Value("${app.collaboration.oplog.snapshot-every:100}")
+  private int snapshotEvery = 100;
+
+  /**
+   * Snapshots retained per snippet; older snapshots and operations are compacted away
+   */
+  @Value("${app.collaboration.oplog.keep-snapshots:10}")
+  private int keepSnapshots = 10;
+
+  /**
+   * Structure: snippetId -> newest edit dropped because the queue was full
+   * The next logged edit after it is written as a snapshot, so the gap does not corrupt replays
+   */
+  private final Map<String, CollaborationService.DocumentEdit> dropped = new ConcurrentHashMap<>();
+
+  /**
+   * Structure: snippetId -> log position, touched only by the writer thread
+   */
+  private final Map<String, Cursor> cursors = new HashMap<>();
+
+  private volatile boolean running = true;
+  private Thread writerThread;
+
+  public OperationLog(
+    CollaborationService collaborationService,
+    MongoTemplate mongoTemplate,
+    CollaborationMetrics metrics,
+    @Value("${app.collaboration.oplog.queue-capacity:10000}") int queueCapacity
+  ) {
+    this.collaborationService = collaborationService;
+    this.mongoTemplate = mongoTemplate;
+    this.metrics = metrics;
+    this.queue = new ArrayBlockingQueue<>(queueCapacity);
+  }
+
+  /**
+   * Writer-side log position of a snippet
+   */
+  private static class Cursor {
+    String epoch;
+    long lastSeq;
+    int opsSinceSnapshot;
+    boolean needsSnapshot = true;
+    long lastUsedMillis;
+  }
+
+  /**
+   * Code of a snippet at a log position
+   */
+  public static class HistoryPoint {
+    public final long seq;
+    public final String code;
+    // Operations applied on top of the snapshot to reach seq
+    public final int replayedOperations;
+
+    public HistoryPoint(long seq, String code, int replayedOperations) {
+      this.seq = seq;
+      this.code = code;
+      this.replayedOperations = replayedOperations;
+    }
+  }
+
+  /**
+   * Entry of a snippet's history listing
+   */
+  public static class HistoryEntry {
+    public final long seq;
+    public final String type;
+    public final String userId;
+    public final LocalDateTime createdAt;
+
+    public HistoryEntry(long seq, String type, String userId, LocalDateTime createdAt) {
+      this.seq = seq;
+      this.type = type;
+      this.userId = userId;
+      this.createdAt = createdAt;
+    }
+  }
+
+  @PostConstruct
+  public void start() {
+    if (!enabled) {
+      log.info("[OpLog] Operation log disabled");
+      return;
+    }
+    metrics.gauge("collaboration.oplog.queue.depth", queue::size);
+    collaborationService.setEditListener(this::enqueue);
+    writerThread = new CustomizableThreadFactory("operation-log-").newThread(this::drainLoop);
+    writerThread.setDaemon(true);
+    writerThread.start();
+    log.info("[OpLog] Operation log started (capacity {}, snapshot every {} ops, keep {} snapshots)",
+             queue.remainingCapacity(), snapshotEvery, keepSnapshots);
+  }
+
+  /**
+   * Stop the writer once the edits still queued have been written
+   */
+  @PreDestroy
+  public void stop() throws InterruptedException {
+    running = false;
+    if (writerThread != null) {
+      writerThread.join(flushIntervalMillis + TimeUnit.SECONDS.toMillis(10));
+    }
+  }
+
+  private void enqueue(CollaborationService.DocumentEdit edit) {
+    if (queue.offer(edit)) {
+      return;
+    }
+    dropped.put(edit.snippetId, edit);
+    metrics.increment("collaboration.oplog.dropped");
+  }
+
+  /**
+   * Code of a snippet at a log position: the latest snapshot at or before seq plus the operations after it
+   *
+   * @return The code, or null if seq is not in the retained history
+   */
+  public HistoryPoint getCodeAt(String snippetId, long seq) {
+    Query snapshotQuery = Query.query(Criteria.where("snippetId").is(snippetId).and("seq").lte(seq))
+      .with(Sort.by(Sort.Direction.DESC, "seq"))
+      .limit(1);
+    SnippetSnapshot snapshot = mongoTemplate.findOne(snapshotQuery, SnippetSnapshot.class);
+    if (snapshot == null) {
+      return null;
+    }
+    Query tailQuery = Query.query(Criteria.where("snippetId").is(snippetId).and("seq").gt(snapshot.getSeq()).lte(seq))
+      .with(Sort.by(Sort.Direction.ASC, "seq"));
+    List<SnippetOperation> tail = mongoTemplate.find(tailQuery, SnippetOperation.class);
+    String code = snapshot.getCode() != null ? snapshot.getCode() : "";
+    long expected = snapshot.getSeq() + 1;
+    for (SnippetOperation operation : tail) {
+      if (operation.getSeq() != expected++) {
+        return null;
+      }
+      code = TextOperation.apply(code, operation.getEdits());
+    }
+    if (expected <= seq) {
+      // seq is past the end of the log
+      return null;
+    }
+    return new HistoryPoint(seq, code, tail.size());
+  }
+
+  /**
+   * Newest log positions of a snippet, newest first
+   * When a full page of operations comes back, every position in the listing is at or after
+   * the oldest of them, so only snapshots from that seq on are read
+   */
+  public List<HistoryEntry> getHistory(String snippetId, int limit) {
+    Query operationQuery = Query.query(Criteria.where("snippetId").is(snippetId))
+      .with(Sort.by(Sort.Direction.DESC, "seq"))
+      .limit(limit);
+    operationQuery.fields().include("seq", "userId", "createdAt");
+    List<SnippetOperation> operations = mongoTemplate.find(operationQuery, SnippetOperation.class);
+
+    Criteria snapshotCriteria = Criteria.where("snippetId").is(snippetId);
+    if (!operations.isEmpty() && operations.size() >= limit) {
+      snapshotCriteria = snapshotCriteria.and("seq").gte(operations.get(operations.size() - 1).getSeq());
+    }
+    Query snapshotQuery = Query.query(snapshotCriteria)
+      .with(Sort.by(Sort.Direction.DESC, "seq"))
+      .limit(limit);
+    snapshotQuery.fields().include("seq", "userId", "createdAt");
+
+    Map<Long, HistoryEntry> entries = new HashMap<>();
+    for (SnippetOperation operation : operations) {
+      entries.put(operation.getSeq(),
+        new HistoryEntry(operation.getSeq(), "operation", operation.getUserId(), operation.getCreatedAt()));
+    }
+    for (SnippetSnapshot snapshot : mongoTemplate.find(snapshotQuery, SnippetSnapshot.class)) {
+      // A snapshot taken after an operation shares its seq; the operation describes the change
+      entries.putIfAbsent(snapshot.getSeq(),
+        new HistoryEntry(snapshot.getSeq(), "snapshot", snapshot.getUserId(), snapshot.getCreatedAt()));
+    }
+    List<HistoryEntry> history = new ArrayList<>(entries.values());
+    history.sort((a, b) -> Long.compare(b.seq, a.seq));
+    return history.size() > limit ? history.subList(0, limit) : history;
+  }
+
+  private void drainLoop() {
+    try {
+      ensureIndexes();
+    } catch (Exception e) {
+      log.warn("[OpLog] Could not create operation log indexes: {}", e.getMessage());
+    }
+    List<CollaborationService.DocumentEdit> batch = new ArrayList<>(batchSize);
+    while (running || !queue.isEmpty()) {
+      try {
+        CollaborationService.DocumentEdit first =
+          running ? queue.poll(flushIntervalMillis, TimeUnit.MILLISECONDS) : queue.poll();
+        if (first == null) {
+          pruneCursors();
+          continue;
+        }
+        batch.add(first);
+        queue.drainTo(batch, batchSize - 1);
+        writeBatch(batch);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (Exception e) {
+        metrics.add("collaboration.oplog.failed", batch.size());
+        log.error("[OpLog] Failed to write {} edits: {}", batch.size(), e.getMessage(), e);
+        // Positions are unknown after a failed bulk write: re-read them and snapshot next time
+        for (CollaborationService.DocumentEdit edit : batch) {
+          cursors.remove(edit.snippetId);
+        }
+      } finally {
+        batch.clear();
+      }
+    }
+  }
+
+  private void ensureIndexes() {
+    Index bySnippetAndSeq = new Index().on("snippetId", Sort.Direction.ASC).on("seq", Sort.Direction.ASC).unique();
+    mongoTemplate.indexOps(SnippetOperation.class).ensureIndex(bySnippetAndSeq);
+    mongoTemplate.indexOps(SnippetSnapshot.class).ensureIndex(bySnippetAndSeq);
+  }
+
+  /**
+   * Assign sequence numbers and write the batch with one bulk insert per collection
+   */
+  private void writeBatch(List<CollaborationService.DocumentEdit> batch) {
+    List<SnippetOperation> operations = new ArrayList<>();
+    List<SnippetSnapshot> snapshots = new ArrayList<>();
+    Set<String> compact = new LinkedHashSet<>();
+    long now = System.currentTimeMillis();
+
+    for (CollaborationService.DocumentEdit edit : batch) {
+      Cursor cursor = cursors.computeIfAbsent(edit.snippetId, this::openCursor);
+      cursor.lastUsedMillis = now;
+      if (!edit.epoch.equals(cursor.epoch)) {
+        // A new live document may start from code the log has never seen
+        cursor.epoch = edit.epoch;
+        cursor.needsSnapshot = true;
+      }
+      CollaborationService.DocumentEdit gap = dropped.get(edit.snippetId);
+      if (gap != null && (!gap.epoch.equals(edit.epoch) || edit.revision > gap.revision)) {
+        dropped.remove(edit.snippetId, gap);
+        cursor.needsSnapshot = true;
+      }
+      LocalDateTime createdAt = LocalDateTime.ofInstant(Instant.ofEpochMilli(edit.timestamp), ZoneId.systemDefault());
+
+      if (edit.edits == null || (cursor.needsSnapshot && edit.baseCode == null)) {
+        // No edits or no known starting point: checkpoint the code after the edit
+        snapshots.add(snapshot(edit.snippetId, ++cursor.lastSeq, edit.code, edit.userId, createdAt));
+        cursor.opsSinceSnapshot = 0;
+        compact.add(edit.snippetId);
+      } else {
+        if (cursor.needsSnapshot) {
+          snapshots.add(snapshot(edit.snippetId, ++cursor.lastSeq, edit.baseCode, edit.userId, createdAt));
+          cursor.opsSinceSnapshot = 0;
+          compact.add(edit.snippetId);
+        }
+        long seq = ++cursor.lastSeq;
+        operations.add(SnippetOperation.builder()
+          .id(edit.snippetId + ":" + seq)
+          .snippetId(edit.snippetId)
+          .seq(seq)
+          .userId(edit.userId)
+          .edits(edit.edits)
+          .createdAt(createdAt)
+          .build());
+        if (++cursor.opsSinceSnapshot >= snapshotEvery) {
+          snapshots.add(snapshot(edit.snippetId, seq, edit.code, edit.userId, createdAt));
+          cursor.opsSinceSnapshot = 0;
+          compact.add(edit.snippetId);
+        }
+      }
+      cursor.needsSnapshot = false;
+    }
+
+    if (!snapshots.isEmpty()) {
+      mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, SnippetSnapshot.class).insert(snapshots).execute();
+    }
+    if (!operations.isEmpty()) {
+      mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, SnippetOperation.class).insert(operations).execute();
+    }
+    for (String snippetId : compact) {
+      compact(snippetId);
+    }
+
+    metrics.add("collaboration.oplog.operations", operations.size());
+    metrics.add("collaboration.oplog.snapshots", snapshots.size());
+    log.debug("[OpLog] Wrote {} operations and {} snapshots for {} edits",
+              operations.size(), snapshots.size(), batch.size());
+  }
+
+  /**
+   * Continue after the highest seq already stored for the snippet
+   */
+  private Cursor openCursor(String snippetId) {
+    Query last = Query.query(Criteria.where("snippetId").is(snippetId))
+      .with(Sort.by(Sort.Direction.DESC, "seq"))
+      .limit(1);
+    last.fields().include("seq");
+    SnippetOperation lastOperation = mongoTemplate.findOne(last, SnippetOperation.class);
+    SnippetSnapshot lastSnapshot = mongoTemplate.findOne(last, SnippetSnapshot.class);
+    Cursor cursor = new Cursor();
+    cursor.lastSeq = Math.max(
+      lastOperation != null ? lastOperation.getSeq() : 0,
+      lastSnapshot != null ? lastSnapshot.getSeq() : 0
+    );
+    return cursor;
+  }
+
+  private SnippetSnapshot snapshot(String snippetId, long seq, String code, String userId, LocalDateTime createdAt) {
+    return SnippetSnapshot.builder()
+      .id(snippetId + ":" + seq)
+      .snippetId(snippetId)
+      .seq(seq)
+      .code(code)
+      .userId(userId)
+      .createdAt(createdAt)
+      .build();
+  }
+
+  /**
+   * Drop snapshots older than the newest keep-snapshots, and the operations they make redundant
+   */
+  private void compact(String snippetId) {
+    Query oldestKept = Query.query(Criteria.where("snippetId").is(snippetId))
+      .with(Sort.by(Sort.Direction.DESC, "seq"))
+      .skip(keepSnapshots - 1L)
+      .limit(1);
+    oldestKept.fields().include("seq");
+    SnippetSnapshot boundary = mongoTemplate.findOne(oldestKept, SnippetSnapshot.class);
+    if (boundary == null) {
+      return;
+    }
+    long removedOperations = mongoTemplate.remove(
+      Query.query(Criteria.where("snippetId").is(snippetId).and("seq").lte(boundary.getSeq())),
+      SnippetOperation.class
+    ).getDeletedCount();
+    long removedSnapshots = mongoTemplate.remove(
+      Query.query(Criteria.where("snippetId").is(snippetId).and("seq").lt(boundary.getSeq())),
+      SnippetSnapshot.class
+    ).getDeletedCount();
+    metrics.add("collaboration.oplog.compacted", removedOperations + removedSnapshots);
+    log.debug("[OpLog] Compacted snippet {} up to seq {}: {} operations, {} snapshots removed",
+              snippetId, boundary.getSeq(), removedOperations, removedSnapshots);
+  }
+
+  /**
+   * Forget positions of snippets not edited for a while; they are re-read from the log when needed
+   */
+  private void pruneCursors() {
+    long cutoff = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(10);
+    cursors.values().removeIf(cursor -> cursor.lastUsedMillis < cutoff);
+  }
+}
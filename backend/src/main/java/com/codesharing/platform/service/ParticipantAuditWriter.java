@@ -0,0 +1,409 @@
+package com.codesharing.platform.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Participant Audit Writer
+ * Write-behind pipeline for participant join/leave tracking
+ * WebSocket handlers only enqueue an event; a background writer drains the bounded
+ * queue and applies events to participant_sessions/session_history in JDBC batches,
+ * so a slow database never stalls real-time collaboration
+ */
+@Slf4j
+@Service
+public class ParticipantAuditWriter {
+
+  /**
+   * What to do when the queue is full
+   * DROP_NEWEST rejects the new event, DROP_OLDEST evicts the oldest queued event,
+   * BLOCK waits up to block-timeout-ms for space (backpressure) and then drops the new event
+   */
+  public enum OverflowPolicy { DROP_NEWEST, DROP_OLDEST, BLOCK }
+
+  private final NamedParameterJdbcTemplate namedJdbcTemplate;
+  private final JdbcTemplate jdbcTemplate;
+  private final TransactionTemplate transactionTemplate;
+  private final AdminDashboardService adminDashboardService;
+  private final SnippetHeaderCache snippetHeaderCache;
+  private final CollaborationMetrics metrics;
+
+  private final BlockingQueue<ParticipantEvent> queue;
+  private final OverflowPolicy overflowPolicy;
+
+  @Value("${app.collaboration.audit.batch-size:500}")
+  private int batchSize = 500;
+
+  @Value("${app.collaboration.audit.flush-interval-ms:1000}")
+  private long flushIntervalMillis = 1000;
+
+  @Value("${app.collaboration.audit.block-timeout-ms:50}")
+  private long blockTimeoutMillis = 50;
+
+  private volatile boolean running = true;
+  private volatile long lastBatchLagMillis;
+  private Thread writerThread;
+
+  public ParticipantAuditWriter(
+    NamedParameterJdbcTemplate namedJdbcTemplate,
+    PlatformTransactionManager transactionManager,
+    AdminDashboardService adminDashboardService,
+    SnippetHeaderCache snippetHeaderCache,
+    CollaborationMetrics metrics,
+    @Value("${app.collaboration.audit.queue-capacity:10000}") int queueCapacity,
+    @Value("${app.collaboration.audit.overflow-policy:drop-oldest}") String overflowPolicy
+  ) {
+    this.namedJdbcTemplate = namedJdbcTemplate;
+    this.jdbcTemplate = namedJdbcTemplate.getJdbcTemplate();
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+    this.adminDashboardService = adminDashboardService;
+    this.snippetHeaderCache = snippetHeaderCache;
+    this.metrics = metrics;
+    this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    this.overflowPolicy = OverflowPolicy.valueOf(overflowPolicy.trim().replace('-', '_').toUpperCase());
+  }
+
+  /**
+   * Queued join or leave
+   * Device fields are only set for joins
+   */
+  private static class ParticipantEvent {
+    final boolean join;
+    final String snippetId;
+    final String userId;
+    final String username;
+    final String ipAddress;
+    final String userAgent;
+    final String browserName;
+    final String browserVersion;
+    final String osName;
+    final String osVersion;
+    final LocalDateTime occurredAt = LocalDateTime.now();
+    final long enqueuedAtMillis = System.currentTimeMillis();
+
+    ParticipantEvent(boolean join, String snippetId, String userId, String username,
+                     String ipAddress, String userAgent, String browserName,
+                     String browserVersion, String osName, String osVersion) {
+      this.join = join;
+      this.snippetId = snippetId;
+      this.userId = userId;
+      this.username = username;
+      this.ipAddress = ipAddress;
+      this.userAgent = userAgent;
+      this.browserName = browserName;
+      this.browserVersion = browserVersion;
+      this.osName = osName;
+      this.osVersion = osVersion;
+    }
+  }
+
+  @PostConstruct
+  public void start() {
+    metrics.gauge("collaboration.audit.queue.depth", queue::size);
+    metrics.gauge("collaboration.audit.lag-ms", this::getOldestEventAgeMillis);
+    metrics.gauge("collaboration.audit.last-batch-lag-ms", () -> lastBatchLagMillis);
+    writerThread = new CustomizableThreadFactory("participant-audit-").newThread(this::drainLoop);
+    writerThread.setDaemon(true);
+    writerThread.start();
+    log.info("[Audit] Participant write-behind started (capacity {}, batch {}, policy {})",
+             queue.remainingCapacity(), batchSize, overflowPolicy);
+  }
+
+  /**
+   * Stop the writer once the events still queued have been flushed
+   */
+  @PreDestroy
+  public void stop() throws InterruptedException {
+    running = false;
+    if (writerThread != null) {
+      writerThread.join(flushIntervalMillis + TimeUnit.SECONDS.toMillis(10));
+    }
+  }
+
+  /**
+   * Queue a participant join
+   */
+  public void recordJoin(String snippetId, String userId, String username,
+                         String ipAddress, String userAgent, String browserName,
+                         String browserVersion, String osName, String osVersion) {
+    enqueue(new ParticipantEvent(true, snippetId, userId, username, ipAddress, userAgent,
+                                 browserName, browserVersion, osName, osVersion));
+  }
+
+  /**
+   * Queue a participant departure
+   */
+  public void recordLeave(String snippetId, String userId) {
+    enqueue(new ParticipantEvent(false, snippetId, userId, null, null, null, null, null, null, null));
+  }
+
+  /**
+   * Age of the oldest event still waiting to be written
+   */
+  public long getOldestEventAgeMillis() {
+    ParticipantEvent oldest = queue.peek();
+    return oldest != null ? System.currentTimeMillis() - oldest.enqueuedAtMillis : 0;
+  }
+
+  private void enqueue(ParticipantEvent event) {
+    if (event.snippetId == null || event.userId == null) {
+      return;
+    }
+    boolean accepted = queue.offer(event);
+    if (!accepted) {
+      switch (overflowPolicy) {
+        case DROP_OLDEST -> {
+          while (!accepted) {
+            if (queue.poll() != null) {
+              metrics.increment("collaboration.audit.dropped");
+            }
+            accepted = queue.offer(event);
+          }
+        }
+        case BLOCK -> {
+          try {
+            accepted = queue.offer(event, blockTimeoutMillis, TimeUnit.MILLISECONDS);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+        case DROP_NEWEST -> { }
+      }
+    }
+    if (accepted) {
+      metrics.increment("collaboration.audit.enqueued");
+    } else {
+      metrics.increment("collaboration.audit.dropped");
+      log.warn("[Audit] Queue full, dropped {} event for user {} in snippet {}",
+               event.join ? "join" : "leave", event.userId, event.snippetId);
+    }
+  }
+
+  private void drainLoop() {
+    List<ParticipantEvent> batch = new ArrayList<>(batchSize);
+    while (running || !queue.isEmpty()) {
+      try {
+        ParticipantEvent first = running ? queue.poll(flushIntervalMillis, TimeUnit.MILLISECONDS) : queue.poll();
+        if (first == null) {
+          continue;
+        }
+        batch.add(first);
+        queue.drainTo(batch, batchSize - 1);
+        writeBatch(batch);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (Exception e) {
+        metrics.add("collaboration.audit.failed", batch.size());
+        log.error("[Audit] Failed to write {} participant events: {}", batch.size(), e.getMessage(), e);
+      } finally {
+        batch.clear();
+      }
+    }
+  }
+
+  /**
+   * Apply a batch of events in one transaction
+   * Events are folded per (snippet, user) first, so a join followed by a leave
+   * becomes one upsert plus one leave update
+   */
+  private void writeBatch(List<ParticipantEvent> batch) {
+    Map<String, ParticipantState> states = new LinkedHashMap<>();
+    for (ParticipantEvent event : batch) {
+      ParticipantState state = states.computeIfAbsent(event.snippetId + '\u0000' + event.userId,
+        k -> new ParticipantState(event.snippetId, event.userId));
+      if (event.join) {
+        state.lastJoin = event;
+        state.leftAt = null;
+      } else {
+        state.leftAt = event.occurredAt;
+      }
+    }
+
+    transactionTemplate.executeWithoutResult(tx -> {
+      Map<String, SessionRow> sessions = resolveSessions(
+        states.values().stream().map(s -> s.snippetId).collect(Collectors.toSet()));
+      writeJoins(states.values(), sessions);
+      writeLeaves(states.values(), sessions);
+    });
+
+    long oldest = batch.get(0).enqueuedAtMillis;
+    lastBatchLagMillis = System.currentTimeMillis() - oldest;
+    metrics.add("collaboration.audit.written", batch.size());
+    metrics.increment("collaboration.audit.batches");
+    log.debug("[Audit] Wrote {} participant events ({} participants), lag {} ms",
+              batch.size(), states.size(), lastBatchLagMillis);
+  }
+
+  private static class ParticipantState {
+    final String snippetId;
+    final String userId;
+    ParticipantEvent lastJoin;
+    LocalDateTime leftAt;
+
+    ParticipantState(String snippetId, String userId) {
+      this.snippetId = snippetId;
+      this.userId = userId;
+    }
+  }
+
+  private static class SessionRow {
+    final long id;
+    final String ownerId;
+
+    SessionRow(long id, String ownerId) {
+      this.id = id;
+      this.ownerId = ownerId;
+    }
+  }
+
+  /**
+   * Look up session_history rows for the batch's snippets, creating missing ones
+   */
+  private Map<String, SessionRow> resolveSessions(Set<String> snippetIds) {
+    Map<String, SessionRow> sessions = new HashMap<>();
+    namedJdbcTemplate.query(
+      "SELECT id, snippet_id, owner_id FROM session_history WHERE snippet_id IN (:snippetIds)",
+      new MapSqlParameterSource("snippetIds", snippetIds),
+      rs -> {
+        sessions.putIfAbsent(rs.getString("snippet_id"), new SessionRow(rs.getLong("id"), rs.getString("owner_id")));
+      }
+    );
+    for (String snippetId : snippetIds) {
+      if (!sessions.containsKey(snippetId)) {
+        // Session wasn't created during snippet creation: create it retroactively
+        SnippetHeaderCache.SnippetHeader snippet = snippetHeaderCache.get(snippetId);
+        String ownerId = snippet != null && snippet.authorId != null ? snippet.authorId : "anonymous";
+        var session = adminDashboardService.createSession(
+          snippetId,
+          ownerId,
+          ownerId,
+          null,
+          "anonymous".equals(ownerId),
+          snippet != null ? snippet.title : "Untitled",
+          snippet != null ? snippet.language : "unknown"
+        );
+        sessions.put(snippetId, new SessionRow(session.getId(), session.getOwnerId()));
+        log.info("[Audit] Created session for snippet {} (retroactive)", snippetId);
+      }
+    }
+    return sessions;
+  }
+
+  private void writeJoins(Iterable<ParticipantState> states, Map<String, SessionRow> sessions) {
+    List<ParticipantState> joins = new ArrayList<>();
+    for (ParticipantState state : states) {
+      if (state.lastJoin != null) {
+        joins.add(state);
+      }
+    }
+    if (joins.isEmpty()) {
+      return;
+    }
+
+    // Existing participant rows for the joining users
+    Map<String, Long> existing = new HashMap<>();
+    namedJdbcTemplate.query(
+      "SELECT id, session_history_id, user_id FROM participant_sessions " +
+      "WHERE session_history_id IN (:sessionIds) AND user_id IN (:userIds)",
+      new MapSqlParameterSource()
+        .addValue("sessionIds", joins.stream().map(s -> sessions.get(s.snippetId).id).collect(Collectors.toSet()))
+        .addValue("userIds", joins.stream().map(s -> s.userId).collect(Collectors.toSet())),
+      rs -> {
+        existing.putIfAbsent(rs.getLong("session_history_id") + ":" + rs.getString("user_id"), rs.getLong("id"));
+      }
+    );
+
+    List<Object[]> updates = new ArrayList<>();
+    List<Object[]> inserts = new ArrayList<>();
+    Map<Long, Integer> newParticipants = new HashMap<>();
+    Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+    for (ParticipantState state : joins) {
+      SessionRow session = sessions.get(state.snippetId);
+      ParticipantEvent join = state.lastJoin;
+      Timestamp joinedAt = Timestamp.valueOf(join.occurredAt);
+      Long participantId = existing.get(session.id + ":" + state.userId);
+      if (participantId != null) {
+        // Participant is re-joining - clear left time and refresh device info if provided
+        updates.add(new Object[] {
+          joinedAt, join.ipAddress, join.userAgent, join.browserName, join.browserVersion,
+          join.osName, join.osVersion, now, participantId
+        });
+      } else {
+        inserts.add(new Object[] {
+          session.id, state.userId, join.username != null ? join.username : state.userId,
+          state.userId.equals(session.ownerId), "anonymous".equals(state.userId),
+          join.ipAddress, join.userAgent, join.browserName, join.browserVersion,
+          join.osName, join.osVersion, joinedAt, now, now
+        });
+        newParticipants.merge(session.id, 1, Integer::sum);
+      }
+    }
+
+    if (!updates.isEmpty()) {
+      jdbcTemplate.batchUpdate(
+        "UPDATE participant_sessions SET joined_at = ?, left_at = NULL, duration_seconds = NULL, " +
+        "ip_address = COALESCE(?, ip_address), user_agent = COALESCE(?, user_agent), " +
+        "browser_name = COALESCE(?, browser_name), browser_version = COALESCE(?, browser_version), " +
+        "os_name = COALESCE(?, os_name), os_version = COALESCE(?, os_version), updated_at = ? " +
+        "WHERE id = ?",
+        updates
+      );
+    }
+    if (!inserts.isEmpty()) {
+      jdbcTemplate.batchUpdate(
+        "INSERT INTO participant_sessions (session_history_id, user_id, username, is_owner, is_anonymous, " +
+        "ip_address, user_agent, browser_name, browser_version, os_name, os_version, " +
+        "joined_at, created_at, updated_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
+        inserts
+      );
+      // Only new participants count towards the session's participant total
+      List<Object[]> counts = new ArrayList<>();
+      newParticipants.forEach((sessionId, added) -> counts.add(new Object[] { added, now, sessionId }));
+      jdbcTemplate.batchUpdate(
+        "UPDATE session_history SET participant_count = participant_count + ?, updated_at = ? WHERE id = ?",
+        counts
+      );
+    }
+  }
+
+  private void writeLeaves(Iterable<ParticipantState> states, Map<String, SessionRow> sessions) {
+    List<Object[]> leaves = new ArrayList<>();
+    Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+    for (ParticipantState state : states) {
+      if (state.leftAt != null) {
+        Timestamp leftAt = Timestamp.valueOf(state.leftAt);
+        leaves.add(new Object[] { leftAt, leftAt, now, sessions.get(state.snippetId).id, state.userId });
+      }
+    }
+    if (!leaves.isEmpty()) {
+      jdbcTemplate.batchUpdate(
+        "UPDATE participant_sessions SET left_at = ?, " +
+        "duration_seconds = CAST(EXTRACT(EPOCH FROM (CAST(? AS timestamp) - joined_at)) AS BIGINT), updated_at = ? " +
+        "WHERE session_history_id = ? AND user_id = ?",
+        leaves
+      );
+    }
+  }
+}
@@ -0,0 +1,151 @@
+package com.codesharing.platform.service;
+
+import com.codesharing.platform.entity.CodeSnippet;
+import jakarta.annotation.PostConstruct;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+/**
+ * Snippet Header Cache
+ * Bounded, TTL-evicting cache of lightweight snippet headers (id, title, authorId, language)
+ * for the collaboration hot path, which only needs these fields and not the code body
+ * or the author's username lookup done by SnippetService.convertToDTO
+ */
+@Component
+public class SnippetHeaderCache {
+
+  private final MongoTemplate mongoTemplate;
+  private final CollaborationMetrics metrics;
+  private final long ttlMillis;
+  private final Map<String, Entry> entries;
+
+  /**
+   * Bumped on every invalidation so a load racing with an update is not cached
+   */
+  private long invalidations;
+
+  public SnippetHeaderCache(
+    MongoTemplate mongoTemplate,
+    CollaborationMetrics metrics,
+    @Value("${app.collaboration.snippet-cache.max-size:10000}") int maxSize,
+    @Value("${app.collaboration.snippet-cache.ttl-ms:60000}") long ttlMillis
+  ) {
+    this.mongoTemplate = mongoTemplate;
+    this.metrics = metrics;
+    this.ttlMillis = ttlMillis;
+    // Access-ordered so the least recently used header is evicted first
+    this.entries = new LinkedHashMap<>(256, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+        if (size() > maxSize) {
+          metrics.increment("collaboration.snippet-cache.evictions");
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  /**
+   * Lightweight snippet header
+   */
+  public static class SnippetHeader {
+    public final String id;
+    public final String title;
+    public final String authorId;
+    public final String language;
+
+    public SnippetHeader(String id, String title, String authorId, String language) {
+      this.id = id;
+      this.title = title;
+      this.authorId = authorId;
+      this.language = language;
+    }
+  }
+
+  private static class Entry {
+    final SnippetHeader header;
+    final long expiresAtMillis;
+
+    Entry(SnippetHeader header, long expiresAtMillis) {
+      this.header = header;
+      this.expiresAtMillis = expiresAtMillis;
+    }
+  }
+
+  @PostConstruct
+  public void registerMetrics() {
+    metrics.gauge("collaboration.snippet-cache.size", this::size);
+  }
+
+  /**
+   * Get a snippet header, loading only the header fields from MongoDB on a miss
+   *
+   * @return The header, or null if the snippet does not exist
+   */
+  public SnippetHeader get(String snippetId) {
+    if (snippetId == null) {
+      return null;
+    }
+    long now = System.currentTimeMillis();
+    synchronized (entries) {
+      Entry entry = entries.get(snippetId);
+      if (entry != null && entry.expiresAtMillis > now) {
+        metrics.increment("collaboration.snippet-cache.hits");
+        return entry.header;
+      }
+      if (entry != null) {
+        entries.remove(snippetId);
+      }
+    }
+    metrics.increment("collaboration.snippet-cache.misses");
+
+    long generation;
+    synchronized (entries) {
+      generation = invalidations;
+    }
+    SnippetHeader header = load(snippetId);
+    if (header != null) {
+      synchronized (entries) {
+        if (generation == invalidations) {
+          entries.put(snippetId, new Entry(header, now + ttlMillis));
+        }
+      }
+    }
+    return header;
+  }
+
+  /**
+   * Drop a cached header after the snippet changed or was deleted
+   */
+  public void invalidate(String snippetId) {
+    if (snippetId == null) {
+      return;
+    }
+    synchronized (entries) {
+      invalidations++;
+      entries.remove(snippetId);
+    }
+  }
+
+  public int size() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  private SnippetHeader load(String snippetId) {
+    Query query = new Query(Criteria.where("_id").is(snippetId));
+    query.fields().include("title", "authorId", "language");
+    CodeSnippet snippet = mongoTemplate.findOne(query, CodeSnippet.class);
+    if (snippet == null) {
+      return null;
+    }
+    return new SnippetHeader(snippet.getId(), snippet.getTitle(), snippet.getAuthorId(), snippet.getLanguage());
+  }
+}
@@ -0,0 +1,403 @@
+package com.codesharing.platform.service;
+
+import com.codesharing.platform.entity.CodeSnippet;
+import com.google.re2j.Pattern;
+import com.google.re2j.PatternSyntaxException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+/**
+ * Snippet Regex Search
+ * Regular expression search over snippet code with RE2J, whose automaton matcher runs in
+ * time linear in the code length whatever the pattern, so a user pattern cannot backtrack
+ * catastrophically. Patterns never reach MongoDB's $regex.
+ * A literal the pattern requires (e.g. "getUser" in "getUser\w*\(") narrows the search to
+ * the trigram index's candidates; without one the collection is streamed. Candidates are
+ * matched a batch at a time across a pool of search threads, within a per-query time budget;
+ * on timeout the matches found so far are returned. Results are also partial when the literal
+ * has more than max-candidates candidates: only the first ones are checked. Both cases are
+ * logged and counted.
+ */
+@Slf4j
+@Service
+public class SnippetRegexSearch {
+
+  /**
+   * Snippets fetched and matched per round
+   */
+  private static final int BATCH_SIZE = 256;
+
+  private final MongoTemplate mongoTemplate;
+  private final SnippetSearchIndex snippetSearchIndex;
+  private final CollaborationMetrics metrics;
+
+  @Value("${app.search.regex.time-budget-ms:2000}")
+  private long timeBudgetMillis = 2000;
+
+  /**
+   * Search threads; 0 for one per core
+   */
+  @Value("${app.search.regex.threads:0}")
+  private int threads = 0;
+
+  /**
+   * Most index candidates checked for one query
+   */
+  @Value("${app.search.regex.max-candidates:20000}")
+  private int maxCandidates = 20000;
+
+  @Value("${app.search.regex.max-pattern-length:512}")
+  private int maxPatternLength = 512;
+
+  private ExecutorService matchers;
+  private int parallelism;
+
+  public SnippetRegexSearch(
+    MongoTemplate mongoTemplate,
+    SnippetSearchIndex snippetSearchIndex,
+    CollaborationMetrics metrics
+  ) {
+    this.mongoTemplate = mongoTemplate;
+    this.snippetSearchIndex = snippetSearchIndex;
+    this.metrics = metrics;
+  }
+
+  @PostConstruct
+  public void start() {
+    parallelism = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    matchers = Executors.newFixedThreadPool(parallelism, new CustomizableThreadFactory("regex-search-"));
+  }
+
+  @PreDestroy
+  public void stop() {
+    matchers.shutdownNow();
+  }
+
+  /**
+   * Snippets whose code matches the pattern, in index (or collection) order
+   *
+   * @param language Only snippets in this language, or null for all
+   * @throws IllegalArgumentException If the pattern is too long or not a valid RE2 expression
+   */
+  public List<CodeSnippet> search(String regex, String language, int limit) {
+    Pattern pattern = compile(regex);
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeBudgetMillis);
+    metrics.increment("snippet-search.regex-queries");
+
+    Criteria filter = new Criteria();
+    if (language != null) {
+      filter = Criteria.where("language").regex("^" + java.util.regex.Pattern.quote(language) + "$", "i");
+    }
+    String literal = requiredLiteral(regex);
+    // One past the cap, to tell a truncated candidate list from one that fits exactly
+    List<String> candidates = literal != null ? snippetSearchIndex.candidates(literal, maxCandidates + 1) : null;
+
+    List<CodeSnippet> matches = new ArrayList<>();
+    if (candidates != null) {
+      if (candidates.size() > maxCandidates) {
+        candidates = candidates.subList(0, maxCandidates);
+        metrics.increment("snippet-search.regex-truncated");
+        log.info("[Search] Regex search for {} checks only the first {} candidates for \"{}\"; results may be partial",
+                 regex, maxCandidates, literal);
+      }
+      for (int from = 0; from < candidates.size() && matches.size() < limit; from += BATCH_SIZE) {
+        List<String> ids = candidates.subList(from, Math.min(from + BATCH_SIZE, candidates.size()));
+        Query query = new Query(new Criteria().andOperator(Criteria.where("_id").in(ids), filter));
+        if (!match(pattern, mongoTemplate.find(query, CodeSnippet.class), deadline, limit, matches)) {
+          return timedOut(regex, matches);
+        }
+      }
+      return matches;
+    }
+
+    metrics.increment("snippet-search.regex-scans");
+    Query query = new Query(filter);
+    try (Stream<CodeSnippet> snippets = mongoTemplate.stream(query, CodeSnippet.class)) {
+      Iterator<CodeSnippet> iterator = snippets.iterator();
+      while (iterator.hasNext() && matches.size() < limit) {
+        List<CodeSnippet> batch = new ArrayList<>(BATCH_SIZE);
+        while (iterator.hasNext() && batch.size() < BATCH_SIZE) {
+          batch.add(iterator.next());
+        }
+        if (!match(pattern, batch, deadline, limit, matches)) {
+          return timedOut(regex, matches);
+        }
+      }
+    }
+    return matches;
+  }
+
+  private Pattern compile(String regex) {
+    if (regex == null || regex.isEmpty()) {
+      throw new IllegalArgumentException("Search pattern is empty");
+    }
+    if (regex.length() > maxPatternLength) {
+      throw new IllegalArgumentException("Search pattern is longer than " + maxPatternLength + " characters");
+    }
+    try {
+      return Pattern.compile(regex);
+    } catch (PatternSyntaxException e) {
+      throw new IllegalArgumentException("Invalid search pattern: " + e.getDescription());
+    }
+  }
+
+  private List<CodeSnippet> timedOut(String regex, List<CodeSnippet> matches) {
+    metrics.increment("snippet-search.regex-timeouts");
+    log.debug("[Search] Regex search for {} ran out of its {} ms budget with {} matches",
+              regex, timeBudgetMillis, matches.size());
+    return matches;
+  }
+
+  /**
+   * Match one batch in parallel, one slice per search thread, and append the matches
+   * in batch order up to the limit
+   *
+   * @return false if the deadline passed before the whole batch was matched
+   */
+  private boolean match(Pattern pattern, List<CodeSnippet> batch, long deadline, int limit,
+                        List<CodeSnippet> matches) {
+    int sliceSize = Math.max(1, (batch.size() + parallelism - 1) / parallelism);
+    List<Callable<List<CodeSnippet>>> slices = new ArrayList<>();
+    for (int from = 0; from < batch.size(); from += sliceSize) {
+      List<CodeSnippet> slice = batch.subList(from, Math.min(from + sliceSize, batch.size()));
+      slices.add(() -> {
+        List<CodeSnippet> found = new ArrayList<>();
+        for (CodeSnippet snippet : slice) {
+          if (System.nanoTime() - deadline > 0) {
+            throw new CancellationException();
+          }
+          if (snippet.getCode() != null && pattern.matcher(snippet.getCode()).find()) {
+            found.add(snippet);
+          }
+        }
+        return found;
+      });
+    }
+    long remaining = deadline - System.nanoTime();
+    if (remaining <= 0) {
+      return false;
+    }
+    try {
+      boolean complete = true;
+      for (Future<List<CodeSnippet>> slice : matchers.invokeAll(slices, remaining, TimeUnit.NANOSECONDS)) {
+        // Slices finish in any order, but are collected in batch order up to the first unfinished one
+        if (!complete || slice.isCancelled()) {
+          complete = false;
+          continue;
+        }
+        try {
+          for (CodeSnippet snippet : slice.get()) {
+            if (matches.size() < limit) {
+              matches.add(snippet);
+            }
+          }
+        } catch (ExecutionException e) {
+          complete = false;
+        }
+      }
+      return complete;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  /**
+   * Longest literal every match of the pattern must contain, for narrowing with the
+   * trigram index. Conservative: only literal runs in the top-level sequence count, and a
+   * pattern with top-level alternation has none. Any match contains the literal up to case,
+   * which the index ignores.
+   *
+   * @return The literal, or null if there is none of at least a trigram
+   */
+  static String requiredLiteral(String regex) {
+    if (hasTopLevelAlternation(regex)) {
+      return null;
+    }
+    String best = "";
+    StringBuilder run = new StringBuilder();
+    int i = 0;
+    int length = regex.length();
+    while (i < length) {
+      char c = regex.charAt(i);
+      char literal;
+      if (c == '\\' && i + 1 < length) {
+        char escaped = regex.charAt(i + 1);
+        if (escaped < 128 && !Character.isLetterOrDigit(escaped)) {
+          literal = escaped;
+          i += 2;
+        } else {
+          // Class (\d, \pL), assertion (\b), code (\x41) or quoting (\Q): not a known literal
+          i = skipEscape(regex, i);
+          best = longer(best, run);
+          continue;
+        }
+      } else if (c == '[' || c == '(') {
+        i = c == '[' ? skipClass(regex, i) : skipGroup(regex, i);
+        i = skipQuantifier(regex, i);
+        best = longer(best, run);
+        continue;
+      } else if (c < 128 && ".^$|*+?{})]".indexOf(c) < 0) {
+        literal = c;
+        i++;
+      } else {
+        i++;
+        best = longer(best, run);
+        continue;
+      }
+
+      int quantified = skipQuantifier(regex, i);
+      if (quantified == i) {
+        run.append(literal);
+        continue;
+      }
+      // x+ and x{n,} (n >= 1) still require one x, but end the run; x*, x? and x{0,} do not
+      char quantifier = regex.charAt(i);
+      if (quantifier == '+' || (quantifier == '{' && i + 1 < length && regex.charAt(i + 1) != '0')) {
+        run.append(literal);
+      }
+      best = longer(best, run);
+      i = quantified;
+    }
+    best = longer(best, run);
+    return best.length() >= SnippetSearchIndex.GRAM ? best : null;
+  }
+
+  private static String longer(String best, StringBuilder run) {
+    String candidate = run.toString();
+    run.setLength(0);
+    return candidate.length() > best.length() ? candidate : best;
+  }
+
+  private static boolean hasTopLevelAlternation(String regex) {
+    int depth = 0;
+    for (int i = 0; i < regex.length(); i++) {
+      char c = regex.charAt(i);
+      if (c == '\\') {
+        // Skips \Q...\E as a whole, so a quoted | does not count
+        i = i + 1 < regex.length() ? skipEscape(regex, i) - 1 : i;
+      } else if (c == '[') {
+        i = skipClass(regex, i) - 1;
+      } else if (c == '(') {
+        depth++;
+      } else if (c == ')') {
+        depth--;
+      } else if (c == '|' && depth <= 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Index after the escape sequence at i, including the arguments of \x, \p and \Q
+   */
+  private static int skipEscape(String regex, int i) {
+    int length = regex.length();
+    char escaped = regex.charAt(i + 1);
+    i += 2;
+    if ((escaped == 'x' || escaped == 'p' || escaped == 'P') && i < length && regex.charAt(i) == '{') {
+      int close = regex.indexOf('}', i);
+      return close < 0 ? length : close + 1;
+    }
+    if (escaped == 'x') {
+      return Math.min(i + 2, length);
+    }
+    if (escaped == 'p' || escaped == 'P') {
+      return Math.min(i + 1, length);
+    }
+    if (escaped == 'Q') {
+      int end = regex.indexOf("\\E", i);
+      return end < 0 ? length : end + 2;
+    }
+    while (Character.isDigit(escaped) && i < length && Character.isDigit(regex.charAt(i))) {
+      i++;
+    }
+    return i;
+  }
+
+  /**
+   * Index after the character class opening at i
+   */
+  private static int skipClass(String regex, int i) {
+    int length = regex.length();
+    i++;
+    if (i < length && regex.charAt(i) == '^') {
+      i++;
+    }
+    if (i < length && regex.charAt(i) == ']') {
+      i++;
+    }
+    while (i < length && regex.charAt(i) != ']') {
+      if (regex.charAt(i) == '\\') {
+        i++;
+      } else if (regex.startsWith("[:", i)) {
+        int close = regex.indexOf(":]", i + 2);
+        i = close < 0 ? length : close + 1;
+      }
+      i++;
+    }
+    return Math.min(i + 1, length);
+  }
+
+  /**
+   * Index after the group opening at i
+   */
+  private static int skipGroup(String regex, int i) {
+    int length = regex.length();
+    int depth = 0;
+    while (i < length) {
+      char c = regex.charAt(i);
+      if (c == '\\') {
+        i = i + 1 < length ? skipEscape(regex, i) - 1 : i;
+      } else if (c == '[') {
+        i = skipClass(regex, i) - 1;
+      } else if (c == '(') {
+        depth++;
+      } else if (c == ')' && --depth == 0) {
+        return i + 1;
+      }
+      i++;
+    }
+    return length;
+  }
+
+  /**
+   * Index after the quantifier at i (with its lazy marker), or i if there is none
+   */
+  private static int skipQuantifier(String regex, int i) {
+    int length = regex.length();
+    if (i >= length) {
+      return i;
+    }
+    char c = regex.charAt(i);
+    int end;
+    if (c == '*' || c == '+' || c == '?') {
+      end = i + 1;
+    } else if (c == '{' && regex.indexOf('}', i) > i + 1
+      && regex.substring(i + 1, regex.indexOf('}', i)).matches("\\d+(,\\d*)?")) {
+      end = regex.indexOf('}', i) + 1;
+    } else {
+      return i;
+    }
+    return end < length && regex.charAt(end) == '?' ? end + 1 : end;
+  }
+}
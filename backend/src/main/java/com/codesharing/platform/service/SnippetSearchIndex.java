@@ -0,0 +1,673 @@
+package com.codesharing.platform.service;
+
+import com.codesharing.platform.entity.CodeSnippet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Snippet Search Index
+ * In-memory inverted indexes over snippet title, description, tags and code
+ * Trigram index: maps every lowercased 3-character sequence to the documents containing it,
+ * so a substring query only has to check documents that contain all of its trigrams instead
+ * of scanning every code body. Candidates are verified against MongoDB, so it may
+ * over-approximate but never misses what the index holds.
+ * Each node keeps its own index; writes made on other nodes arrive as change notices
+ * (see SearchIndexReplicator) and are re-read from MongoDB, so they become searchable here
+ * shortly after they are saved.
+ * Term index: maps CodeTokenizer terms to the documents containing them with field-weighted
+ * frequencies (title and tags above description above code), for BM25-ranked search.
+ * Posting lists are delta/varint encoded in document order. An update indexes the snippet
+ * under a new document number and marks the old one dead; dead entries are dropped by a
+ * compaction once they make up half of the index.
+ * Built at startup by streaming code_snippets in the background; until then search scans.
+ */
+@Slf4j
+@Component
+public class SnippetSearchIndex {
+
+  public static final int GRAM = 3;
+
+  /**
+   * Weight of a term occurrence per field, summed into the document's term frequency
+   */
+  private static final int TITLE_WEIGHT = 4;
+  private static final int TAG_WEIGHT = 4;
+  private static final int DESCRIPTION_WEIGHT = 2;
+  private static final int CODE_WEIGHT = 1;
+
+  /**
+   * BM25 term frequency saturation and length normalization
+   */
+  private static final double K1 = 1.2;
+  private static final double B = 0.75;
+
+  private final MongoTemplate mongoTemplate;
+  private final CollaborationMetrics metrics;
+
+  @Value("${app.search.index.enabled:true}")
+  private boolean enabled = true;
+
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  /**
+   * Structure: packed trigram -> documents containing it, ascending
+   */
+  private final Map<Long, Postings> postings = new HashMap<>();
+
+  /**
+   * Structure: term -> (document, weighted frequency) pairs, ascending by document
+   */
+  private final Map<String, Postings> terms = new HashMap<>();
+
+  /**
+   * Structure: document number -> weighted term count, and -> language id
+   */
+  private int[] lengths = new int[1024];
+  private short[] languages = new short[1024];
+  private long totalLength;
+
+  /**
+   * Structure: lowercased language -> language id
+   */
+  private final Map<String, Short> languageIds = new HashMap<>();
+
+  /**
+   * Structure: snippet id -> current document number
+   */
+  private final Map<String, Integer> documentNumbers = new HashMap<>();
+
+  /**
+   * Structure: document number -> snippet id, null once the document is dead
+   */
+  private final List<String> snippetIds = new ArrayList<>();
+
+  private final BitSet live = new BitSet();
+  private int deadDocuments;
+
+  /**
+   * Snippets written while the startup build runs; the build must not overwrite them
+   * with the older copy it streamed
+   */
+  private final Set<String> changedDuringBuild = ConcurrentHashMap.newKeySet();
+
+  private volatile boolean building;
+  private volatile boolean ready;
+
+  private volatile Consumer<String> changeListener = snippetId -> { };
+
+  public SnippetSearchIndex(MongoTemplate mongoTemplate, CollaborationMetrics metrics) {
+    this.mongoTemplate = mongoTemplate;
+    this.metrics = metrics;
+  }
+
+  /**
+   * Append-only posting list of ascending document numbers, stored as varint deltas
+   */
+  private static final class Postings {
+    // Whether each document is followed by its frequency
+    final boolean weighted;
+    byte[] data = new byte[8];
+    int length;
+    int count;
+    int lastDocument = -1;
+
+    Postings(boolean weighted) {
+      this.weighted = weighted;
+    }
+
+    void add(int document, int frequency) {
+      if (length + 10 > data.length) {
+        data = Arrays.copyOf(data, Math.max(data.length * 2, length + 10));
+      }
+      writeVarint(document - lastDocument);
+      lastDocument = document;
+      if (weighted) {
+        writeVarint(frequency);
+      }
+      count++;
+    }
+
+    private void writeVarint(int value) {
+      while ((value & ~0x7F) != 0) {
+        data[length++] = (byte) ((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      data[length++] = (byte) value;
+    }
+  }
+
+  /**
+   * Forward-only reader over a posting list
+   */
+  private static final class Cursor {
+    final Postings list;
+    int position;
+    int remaining;
+    int document = -1;
+    int frequency;
+
+    Cursor(Postings list) {
+      this.list = list;
+      this.remaining = list.count;
+    }
+
+    /**
+     * Move to the first document at or after target
+     *
+     * @return That document, or Integer.MAX_VALUE once the list is exhausted
+     */
+    int advance(int target) {
+      while (document < target) {
+        if (remaining == 0) {
+          return document = Integer.MAX_VALUE;
+        }
+        document += readVarint();
+        if (list.weighted) {
+          frequency = readVarint();
+        }
+        remaining--;
+      }
+      return document;
+    }
+
+    private int readVarint() {
+      int value = 0;
+      int shift = 0;
+      byte b;
+      do {
+        b = list.data[position++];
+        value |= (b & 0x7F) << shift;
+        shift += 7;
+      } while (b < 0);
+      return value;
+    }
+  }
+
+  /**
+   * Document score kept in the top-K heap
+   */
+  private record ScoredDocument(int document, double score) {
+    // Worst first, so the heap head is the one to evict; on equal scores later documents lose
+    static final Comparator<ScoredDocument> WORST_FIRST = Comparator
+      .comparingDouble(ScoredDocument::score)
+      .thenComparing(Comparator.comparingInt(ScoredDocument::document).reversed());
+  }
+
+  /**
+   * Build the index in the background once the application is up
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  public void buildOnStartup() {
+    if (!enabled) {
+      log.info("[Search] Snippet search index disabled");
+      return;
+    }
+    metrics.gauge("snippet-search.documents", this::size);
+    Thread builder = new CustomizableThreadFactory("snippet-search-index-").newThread(this::rebuild);
+    builder.setDaemon(true);
+    builder.start();
+  }
+
+  /**
+   * Replace the index with one built from every stored snippet
+   */
+  public void rebuild() {
+    long start = System.currentTimeMillis();
+    building = true;
+    changedDuringBuild.clear();
+    clear();
+    int indexed = 0;
+    Query query = new Query();
+    query.fields().include("title", "description", "code", "tags", "language");
+    try (Stream<CodeSnippet> snippets = mongoTemplate.stream(query, CodeSnippet.class)) {
+      for (CodeSnippet snippet : (Iterable<CodeSnippet>) snippets::iterator) {
+        if (put(snippet, true)) {
+          indexed++;
+        }
+      }
+      ready = true;
+      log.info("[Search] Indexed {} snippets ({} trigrams, {} terms) in {} ms",
+               indexed, postingsSize(), termsSize(), System.currentTimeMillis() - start);
+    } catch (Exception e) {
+      log.warn("[Search] Could not build snippet search index, search will scan: {}", e.getMessage());
+    } finally {
+      building = false;
+      changedDuringBuild.clear();
+    }
+  }
+
+  /**
+   * Whether search can use the index
+   */
+  public boolean isReady() {
+    return ready;
+  }
+
+  /**
+   * Index a created or updated snippet, replacing its previous text
+   * Needs title, description, code, tags and language
+   */
+  public void index(CodeSnippet snippet) {
+    put(snippet, false);
+  }
+
+  /**
+   * @param fromBuild Skip snippets changed since the build started; checked under the lock,
+   *                  so a concurrent write is either seen here or indexed after this
+   * @return false if the snippet was skipped
+   */
+  private boolean put(CodeSnippet snippet, boolean fromBuild) {
+    String snippetId = snippet.getId();
+    if (snippetId == null) {
+      return false;
+    }
+    long[] trigrams = trigrams(
+      normalize(snippet.getTitle()) + '\n' + normalize(snippet.getDescription()) + '\n' + normalize(snippet.getCode())
+    );
+    Map<String, Integer> frequencies = new HashMap<>();
+    count(frequencies, CodeTokenizer.tokenize(snippet.getTitle()), TITLE_WEIGHT);
+    if (snippet.getTags() != null) {
+      for (String tag : snippet.getTags()) {
+        count(frequencies, CodeTokenizer.tokenize(tag), TAG_WEIGHT);
+      }
+    }
+    count(frequencies, CodeTokenizer.tokenize(snippet.getDescription()), DESCRIPTION_WEIGHT);
+    count(frequencies, CodeTokenizer.tokenizeCode(snippet.getCode(), snippet.getLanguage()), CODE_WEIGHT);
+    int length = 0;
+    for (int frequency : frequencies.values()) {
+      length += frequency;
+    }
+    String language = normalize(snippet.getLanguage());
+
+    lock.writeLock().lock();
+    try {
+      if (fromBuild && changedDuringBuild.contains(snippetId)) {
+        return false;
+      }
+      remove(snippetId);
+      int document = snippetIds.size();
+      snippetIds.add(snippetId);
+      documentNumbers.put(snippetId, document);
+      live.set(document);
+      if (document == lengths.length) {
+        lengths = Arrays.copyOf(lengths, document * 2);
+        languages = Arrays.copyOf(languages, document * 2);
+      }
+      lengths[document] = length;
+      languages[document] = languageIds.computeIfAbsent(language, k -> (short) languageIds.size());
+      totalLength += length;
+      for (long trigram : trigrams) {
+        postings.computeIfAbsent(trigram, k -> new Postings(false)).add(document, 0);
+      }
+      frequencies.forEach((term, frequency) ->
+        terms.computeIfAbsent(term, k -> new Postings(true)).add(document, frequency));
+      return true;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private static void count(Map<String, Integer> frequencies, List<String> tokens, int weight) {
+    for (String token : tokens) {
+      frequencies.merge(token, weight, Integer::sum);
+    }
+  }
+
+  /**
+   * Register the receiver of ids of snippets written or deleted on this node
+   */
+  public void setChangeListener(Consumer<String> listener) {
+    this.changeListener = listener != null ? listener : snippetId -> { };
+  }
+
+  /**
+   * Record a snippet written outside the startup build; see changedDuringBuild
+   */
+  public void updated(CodeSnippet snippet) {
+    if (building) {
+      changedDuringBuild.add(snippet.getId());
+    }
+    index(snippet);
+    changeListener.accept(snippet.getId());
+  }
+
+  /**
+   * Drop a deleted snippet from the index
+   */
+  public void deleted(String snippetId) {
+    drop(snippetId);
+    changeListener.accept(snippetId);
+  }
+
+  /**
+   * Re-read a snippet another node wrote or deleted, and index what is stored now
+   */
+  public void refresh(String snippetId) {
+    if (!enabled) {
+      return;
+    }
+    Query query = Query.query(Criteria.where("_id").is(snippetId));
+    query.fields().include("title", "description", "code", "tags", "language");
+    CodeSnippet snippet = mongoTemplate.findOne(query, CodeSnippet.class);
+    if (snippet == null) {
+      drop(snippetId);
+      return;
+    }
+    if (building) {
+      changedDuringBuild.add(snippetId);
+    }
+    index(snippet);
+  }
+
+  private void drop(String snippetId) {
+    if (building) {
+      changedDuringBuild.add(snippetId);
+    }
+    lock.writeLock().lock();
+    try {
+      remove(snippetId);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Snippets that may contain the query (case-insensitive), in index order
+   * The posting lists are intersected a document at a time, so only as much of them
+   * is decoded as it takes to find max candidates
+   *
+   * @return Up to max candidate ids, or null if the index cannot narrow the search
+   *         (not built, or query shorter than a trigram)
+   */
+  public List<String> candidates(String query, int max) {
+    String normalized = normalize(query);
+    if (!ready || normalized.length() < GRAM) {
+      metrics.increment("snippet-search.scans");
+      return null;
+    }
+    metrics.increment("snippet-search.indexed-queries");
+    long[] trigrams = trigrams(normalized);
+    lock.readLock().lock();
+    try {
+      Cursor[] cursors = new Cursor[trigrams.length];
+      for (int i = 0; i < trigrams.length; i++) {
+        Postings list = postings.get(trigrams[i]);
+        if (list == null) {
+          return List.of();
+        }
+        cursors[i] = new Cursor(list);
+      }
+      // Rarest trigram leads, the others only skip ahead to its documents
+      Arrays.sort(cursors, (a, b) -> Integer.compare(a.list.count, b.list.count));
+      List<String> ids = new ArrayList<>();
+      int target = 0;
+      while (ids.size() < max && target != Integer.MAX_VALUE) {
+        int document = cursors[0].advance(target);
+        if (document == Integer.MAX_VALUE) {
+          break;
+        }
+        target = document + 1;
+        boolean inAll = true;
+        for (int i = 1; i < cursors.length; i++) {
+          int next = cursors[i].advance(document);
+          if (next != document) {
+            // May be document + 1 itself, so the miss is tracked apart from the next target
+            inAll = false;
+            target = next;
+            break;
+          }
+        }
+        if (inAll && live.get(document)) {
+          ids.add(snippetIds.get(document));
+        }
+      }
+      return ids;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Best-matching snippets for a free-text query, best first, scored with BM25
+   * over the field-weighted term frequencies. Posting lists of the query terms are merged
+   * a document at a time and only the best limit documents are kept, in a bounded heap.
+   * Document frequencies count dead entries until the next compaction, which only
+   * slightly lowers the weight of terms in frequently edited snippets.
+   *
+   * @param language Only snippets in this language, or null for all
+   * @return Up to limit snippet ids, or null if the index cannot rank the query
+   *         (not built, or no searchable terms in it)
+   */
+  public List<String> rank(String query, String language, int limit) {
+    List<String> queryTerms = new ArrayList<>(new LinkedHashSet<>(CodeTokenizer.tokenize(query)));
+    if (!ready || queryTerms.isEmpty() || limit <= 0) {
+      return null;
+    }
+    metrics.increment("snippet-search.ranked-queries");
+    lock.readLock().lock();
+    try {
+      int documentCount = documentNumbers.size();
+      if (documentCount == 0) {
+        return List.of();
+      }
+      short languageId = -1;
+      if (language != null) {
+        Short id = languageIds.get(normalize(language));
+        if (id == null) {
+          return List.of();
+        }
+        languageId = id;
+      }
+      double averageLength = Math.max(1.0, (double) totalLength / documentCount);
+
+      List<Cursor> cursors = new ArrayList<>();
+      List<Double> weights = new ArrayList<>();
+      for (String term : queryTerms) {
+        Postings list = terms.get(term);
+        if (list != null) {
+          Cursor cursor = new Cursor(list);
+          cursor.advance(0);
+          cursors.add(cursor);
+          double frequency = Math.min(list.count, documentCount);
+          weights.add(Math.log(1 + (documentCount - frequency + 0.5) / (frequency + 0.5)));
+        }
+      }
+
+      PriorityQueue<ScoredDocument> top = new PriorityQueue<>(limit + 1, ScoredDocument.WORST_FIRST);
+      int document = Integer.MAX_VALUE;
+      for (Cursor cursor : cursors) {
+        document = Math.min(document, cursor.document);
+      }
+      while (document != Integer.MAX_VALUE) {
+        double score = 0;
+        int next = Integer.MAX_VALUE;
+        for (int i = 0; i < cursors.size(); i++) {
+          Cursor cursor = cursors.get(i);
+          if (cursor.document == document) {
+            double frequency = cursor.frequency;
+            double norm = K1 * (1 - B + B * lengths[document] / averageLength);
+            score += weights.get(i) * frequency * (K1 + 1) / (frequency + norm);
+            cursor.advance(document + 1);
+          }
+          next = Math.min(next, cursor.document);
+        }
+        if (live.get(document) && (languageId < 0 || languages[document] == languageId)) {
+          if (top.size() < limit) {
+            top.add(new ScoredDocument(document, score));
+          } else if (ScoredDocument.WORST_FIRST.compare(new ScoredDocument(document, score), top.peek()) > 0) {
+            top.poll();
+            top.add(new ScoredDocument(document, score));
+          }
+        }
+        document = next;
+      }
+
+      List<ScoredDocument> ranked = new ArrayList<>(top);
+      ranked.sort(ScoredDocument.WORST_FIRST.reversed());
+      List<String> ids = new ArrayList<>(ranked.size());
+      for (ScoredDocument scored : ranked) {
+        ids.add(snippetIds.get(scored.document()));
+      }
+      return ids;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Number of live indexed snippets
+   */
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return documentNumbers.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private int postingsSize() {
+    lock.readLock().lock();
+    try {
+      return postings.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private int termsSize() {
+    lock.readLock().lock();
+    try {
+      return terms.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private void clear() {
+    lock.writeLock().lock();
+    try {
+      ready = false;
+      postings.clear();
+      terms.clear();
+      languageIds.clear();
+      totalLength = 0;
+      documentNumbers.clear();
+      snippetIds.clear();
+      live.clear();
+      deadDocuments = 0;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Mark a snippet's document dead; caller holds the write lock
+   */
+  private void remove(String snippetId) {
+    Integer document = documentNumbers.remove(snippetId);
+    if (document == null) {
+      return;
+    }
+    live.clear(document);
+    snippetIds.set(document, null);
+    totalLength -= lengths[document];
+    if (++deadDocuments > 1024 && deadDocuments > documentNumbers.size()) {
+      compact();
+    }
+  }
+
+  /**
+   * Renumber live documents densely and drop dead ones from every posting list;
+   * caller holds the write lock
+   */
+  private void compact() {
+    long start = System.currentTimeMillis();
+    int[] renumbered = new int[snippetIds.size()];
+    List<String> compacted = new ArrayList<>(documentNumbers.size());
+    for (int document = 0; document < snippetIds.size(); document++) {
+      String snippetId = snippetIds.get(document);
+      renumbered[document] = -1;
+      if (snippetId != null) {
+        int target = compacted.size();
+        renumbered[document] = target;
+        documentNumbers.put(snippetId, target);
+        compacted.add(snippetId);
+        // target <= document, so moving down never overwrites an entry still to be read
+        lengths[target] = lengths[document];
+        languages[target] = languages[document];
+      }
+    }
+    // Renumbering keeps the order, so the rebuilt lists stay ascending
+    postings.replaceAll((trigram, list) -> renumber(list, renumbered));
+    postings.values().removeIf(list -> list.count == 0);
+    terms.replaceAll((term, list) -> renumber(list, renumbered));
+    terms.values().removeIf(list -> list.count == 0);
+    snippetIds.clear();
+    snippetIds.addAll(compacted);
+    live.clear();
+    live.set(0, compacted.size());
+    deadDocuments = 0;
+    metrics.increment("snippet-search.compactions");
+    log.debug("[Search] Compacted index to {} snippets in {} ms", compacted.size(), System.currentTimeMillis() - start);
+  }
+
+  private static Postings renumber(Postings list, int[] renumbered) {
+    Postings kept = new Postings(list.weighted);
+    Cursor cursor = new Cursor(list);
+    for (int document = cursor.advance(0); document != Integer.MAX_VALUE; document = cursor.advance(document + 1)) {
+      if (renumbered[document] >= 0) {
+        kept.add(renumbered[document], cursor.frequency);
+      }
+    }
+    return kept;
+  }
+
+  static String normalize(String text) {
+    return text != null ? text.toLowerCase(Locale.ROOT) : "";
+  }
+
+  /**
+   * Distinct trigrams of a normalized text, each packed into a long (three 16-bit chars)
+   */
+  static long[] trigrams(String text) {
+    if (text.length() < GRAM) {
+      return new long[0];
+    }
+    long[] trigrams = new long[text.length() - GRAM + 1];
+    for (int i = 0; i < trigrams.length; i++) {
+      trigrams[i] = ((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2);
+    }
+    Arrays.sort(trigrams);
+    int distinct = 0;
+    for (int i = 0; i < trigrams.length; i++) {
+      if (i == 0 || trigrams[i] != trigrams[i - 1]) {
+        trigrams[distinct++] = trigrams[i];
+      }
+    }
+    return Arrays.copyOf(trigrams, distinct);
+  }
+}
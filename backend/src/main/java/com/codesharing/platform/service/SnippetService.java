@@ -1,29 +1,66 @@
 package com.codesharing.platform.service;
 
+import com.codesharing.platform.dto.SnippetConnection;
 import com.codesharing.platform.dto.SnippetDTO;
+import com.codesharing.platform.dto.UserDTO;
 import com.codesharing.platform.entity.CodeSnippet;
-import com.codesharing.platform.entity.User;
 import com.codesharing.platform.repository.TinyUrlRepository;
 import com.codesharing.platform.repository.UserRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.regex.Pattern;
 
+@Slf4j
 @Service
 public class SnippetService {
     private final MongoTemplate mongoTemplate;
     private final UserRepository userRepository;
     private final TinyUrlRepository tinyUrlRepository;
+    private final SnippetHeaderCache snippetHeaderCache;
+    private final SnippetSearchIndex snippetSearchIndex;
+    private final SnippetRegexSearch snippetRegexSearch;
+    private final AuthorCache authorCache;
+
+    /**
+     * Candidates verified per MongoDB round trip when searching through the index
+     */
+    private static final int SEARCH_BATCH_SIZE = 256;
+
+    /**
+     * Largest page of a cursor-paginated listing
+     */
+    private static final int MAX_PAGE_SIZE = 100;
+
+    /**
+     * Listing order, newest first; _id breaks ties between snippets created in the same millisecond
+     */
+    private static final Sort LISTING_ORDER = Sort.by(Sort.Direction.DESC, "createdAt", "_id");
 
     public SnippetService(MongoTemplate mongoTemplate, UserRepository userRepository, 
-                         TinyUrlRepository tinyUrlRepository) {
+                         TinyUrlRepository tinyUrlRepository, SnippetHeaderCache snippetHeaderCache,
+                         SnippetSearchIndex snippetSearchIndex, SnippetRegexSearch snippetRegexSearch,
+                         AuthorCache authorCache) {
         this.mongoTemplate = mongoTemplate;
         this.userRepository = userRepository;
         this.tinyUrlRepository = tinyUrlRepository;
+        this.snippetHeaderCache = snippetHeaderCache;
+        this.snippetSearchIndex = snippetSearchIndex;
+        this.snippetRegexSearch = snippetRegexSearch;
+        this.authorCache = authorCache;
     }
 
     public SnippetDTO createSnippet(String authorId, String title, String description,
@@ -43,6 +80,7 @@ public class SnippetService {
                 .build();
 
         mongoTemplate.save(snippet);
+        snippetSearchIndex.updated(snippet);
         return convertToDTO(snippet);
     }
 
@@ -54,28 +92,199 @@ public class SnippetService {
         return null;
     }
 
+    /**
+     * Indexes backing the cursor-paginated listings, so a page is an index range scan
+     * instead of a skip over all earlier snippets
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureListingIndexes() {
+        try {
+            var indexOps = mongoTemplate.indexOps(CodeSnippet.class);
+            indexOps.ensureIndex(new Index().on("createdAt", Sort.Direction.DESC).on("_id", Sort.Direction.DESC)
+                    .named("createdAt_id"));
+            indexOps.ensureIndex(new Index().on("language", Sort.Direction.ASC)
+                    .on("createdAt", Sort.Direction.DESC).on("_id", Sort.Direction.DESC)
+                    .named("language_createdAt_id"));
+        } catch (Exception e) {
+            log.warn("[Snippets] Could not create listing indexes: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Offset-paginated listing; deep pages get slower with the offset, prefer getSnippetsPage
+     */
     public List<SnippetDTO> getAllSnippets(int limit, int offset) {
-        Query query = new Query().skip(offset).limit(limit);
+        Query query = new Query().with(LISTING_ORDER).skip(offset).limit(limit);
         List<CodeSnippet> snippets = mongoTemplate.find(query, CodeSnippet.class);
-        return snippets.stream().map(this::convertToDTO).toList();
+        return convertToDTOs(snippets);
     }
 
-    public List<SnippetDTO> searchSnippets(String query, int limit) {
-        Criteria criteria = new Criteria().orOperator(
-                Criteria.where("title").regex(query, "i"),
-                Criteria.where("description").regex(query, "i"),
-                Criteria.where("code").regex(query, "i")
+    /**
+     * Search over title, tags, description and code, best matches first
+     * Ranked by the search index (BM25 over code-aware terms, title and tags weighted
+     * above description and code). Queries the index cannot rank (index not built yet,
+     * or no words in the query, e.g. "->") fall back to a case-insensitive substring search.
+     * In regex mode the query is an RE2 regular expression matched against the code
+     *
+     * @param language Only snippets in this language, or null for all
+     * @throws IllegalArgumentException In regex mode, if the query is not a valid expression
+     */
+    public List<SnippetDTO> searchSnippets(String query, int limit, String language, boolean regex) {
+        if (regex) {
+            return convertToDTOs(snippetRegexSearch.search(query, language, limit));
+        }
+        List<String> ranked = snippetSearchIndex.rank(query, language, limit);
+        if (ranked == null || ranked.isEmpty()) {
+            return substringSearch(query, limit, language);
+        }
+        Map<String, CodeSnippet> byId = new HashMap<>();
+        for (CodeSnippet snippet : mongoTemplate.find(new Query(Criteria.where("_id").in(ranked)), CodeSnippet.class)) {
+            byId.put(snippet.getId(), snippet);
+        }
+        // Deleted between ranking and fetching: skip
+        return convertToDTOs(ranked.stream()
+                .map(byId::get)
+                .filter(Objects::nonNull)
+                .toList());
+    }
+
+    /**
+     * Case-insensitive substring search over title, description and code
+     * The query is quoted, so it is always matched as plain text
+     * The trigram index narrows the search to candidate snippets, which MongoDB then
+     * verifies by _id; without the index (not built yet, or query under 3 characters)
+     * the collection is scanned
+     */
+    private List<SnippetDTO> substringSearch(String query, int limit, String language) {
+        String pattern = Pattern.quote(query);
+        Criteria matches = new Criteria().orOperator(
+                Criteria.where("title").regex(pattern, "i"),
+                Criteria.where("description").regex(pattern, "i"),
+                Criteria.where("code").regex(pattern, "i")
         );
+        if (language != null) {
+            matches = new Criteria().andOperator(
+                    matches,
+                    Criteria.where("language").regex("^" + Pattern.quote(language) + "$", "i")
+            );
+        }
+        
+        int wanted = Math.max(limit * 2, SEARCH_BATCH_SIZE);
+        List<String> candidates = snippetSearchIndex.candidates(query, wanted);
+        if (candidates == null) {
+            Query mongoQuery = new Query(matches).limit(limit);
+            List<CodeSnippet> snippets = mongoTemplate.find(mongoQuery, CodeSnippet.class);
+            return convertToDTOs(snippets);
+        }
         
-        Query mongoQuery = new Query(criteria).limit(limit);
-        List<CodeSnippet> snippets = mongoTemplate.find(mongoQuery, CodeSnippet.class);
-        return snippets.stream().map(this::convertToDTO).toList();
+        List<CodeSnippet> snippets = new ArrayList<>();
+        int verified = 0;
+        while (snippets.size() < limit && verified < candidates.size()) {
+            List<String> batch = candidates.subList(verified, Math.min(verified + SEARCH_BATCH_SIZE, candidates.size()));
+            verified += batch.size();
+            Query mongoQuery = new Query(new Criteria().andOperator(Criteria.where("_id").in(batch), matches))
+                    .limit(limit - snippets.size());
+            snippets.addAll(mongoTemplate.find(mongoQuery, CodeSnippet.class));
+            if (verified == candidates.size() && candidates.size() == wanted && snippets.size() < limit) {
+                // Too many false candidates: fetch a longer candidate list and continue after the verified ones
+                wanted *= 4;
+                candidates = snippetSearchIndex.candidates(query, wanted);
+                if (candidates == null) {
+                    break;
+                }
+            }
+        }
+        return convertToDTOs(snippets);
     }
 
     public List<SnippetDTO> getSnippetsByLanguage(String language, int limit) {
-        Query query = new Query(Criteria.where("language").is(language)).limit(limit);
+        Query query = new Query(Criteria.where("language").is(language)).with(LISTING_ORDER).limit(limit);
+        List<CodeSnippet> snippets = mongoTemplate.find(query, CodeSnippet.class);
+        return convertToDTOs(snippets);
+    }
+
+    /**
+     * Keyset-paginated listing, newest first by (createdAt, id)
+     * A page continues strictly after the cursor's (createdAt, id), so its cost does not depend
+     * on how deep it is, and snippets created while paging do not shift later pages
+     *
+     * @param language Only snippets in this language, or null for all
+     * @param after    endCursor of the previous page, or null for the first page
+     * @throws IllegalArgumentException If the cursor is malformed
+     */
+    public SnippetConnection getSnippetsPage(String language, int first, String after) {
+        int pageSize = Math.max(1, Math.min(first, MAX_PAGE_SIZE));
+        List<Criteria> criteria = new ArrayList<>();
+        if (language != null) {
+            criteria.add(Criteria.where("language").is(language));
+        }
+        if (after != null) {
+            criteria.add(ListingCursor.decode(after).after());
+        }
+        Query query = criteria.isEmpty()
+                ? new Query()
+                : new Query(new Criteria().andOperator(criteria.toArray(new Criteria[0])));
+        // One extra snippet tells whether there is a next page
+        query.with(LISTING_ORDER).limit(pageSize + 1);
         List<CodeSnippet> snippets = mongoTemplate.find(query, CodeSnippet.class);
-        return snippets.stream().map(this::convertToDTO).toList();
+
+        boolean hasNextPage = snippets.size() > pageSize;
+        List<CodeSnippet> page = snippets.subList(0, Math.min(snippets.size(), pageSize));
+        Map<String, UserDTO> authors = getAuthors(page);
+        List<SnippetConnection.Edge> edges = new ArrayList<>();
+        for (CodeSnippet snippet : page) {
+            String cursor = new ListingCursor(snippet.getCreatedAt(), snippet.getId()).encode();
+            edges.add(new SnippetConnection.Edge(cursor, convertToDTO(snippet, authors)));
+        }
+        String endCursor = edges.isEmpty() ? null : edges.get(edges.size() - 1).getCursor();
+        return new SnippetConnection(edges, new SnippetConnection.PageInfo(hasNextPage, endCursor));
+    }
+
+    /**
+     * Position in the listing order, opaque to clients: base64url of "createdAt|id"
+     * Snippets without a createdAt sort after all others in the descending order;
+     * their cursor has an empty createdAt
+     */
+    private record ListingCursor(LocalDateTime createdAt, String id) {
+
+        /**
+         * Snippets strictly after this position in the listing order
+         */
+        Criteria after() {
+            Criteria sameCreatedAtLowerId = new Criteria().andOperator(
+                    Criteria.where("createdAt").is(createdAt),
+                    Criteria.where("_id").lt(id)
+            );
+            if (createdAt == null) {
+                return sameCreatedAtLowerId;
+            }
+            // A date comparison never matches a missing createdAt, so those are added explicitly
+            return new Criteria().orOperator(
+                    Criteria.where("createdAt").lt(createdAt),
+                    sameCreatedAtLowerId,
+                    Criteria.where("createdAt").is(null)
+            );
+        }
+
+        String encode() {
+            String value = (createdAt != null ? createdAt.toString() : "") + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static ListingCursor decode(String cursor) {
+            try {
+                String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int separator = value.indexOf('|');
+                if (separator < 0) {
+                    throw new IllegalArgumentException("Invalid cursor");
+                }
+                String createdAt = value.substring(0, separator);
+                return new ListingCursor(createdAt.isEmpty() ? null : LocalDateTime.parse(createdAt),
+                        value.substring(separator + 1));
+            } catch (IllegalArgumentException | DateTimeParseException e) {
+                throw new IllegalArgumentException("Invalid cursor", e);
+            }
+        }
     }
 
     public SnippetDTO updateSnippet(String id, String title, String description,
@@ -92,6 +301,8 @@ public class SnippetService {
             snippet.setUpdatedAt(LocalDateTime.now());
             
             mongoTemplate.save(snippet);
+            snippetHeaderCache.invalidate(id);
+            snippetSearchIndex.updated(snippet);
             return convertToDTO(snippet);
         }
         return null;
@@ -101,19 +312,24 @@ public class SnippetService {
         CodeSnippet snippet = mongoTemplate.findById(id, CodeSnippet.class);
         if (snippet != null) {
             mongoTemplate.remove(snippet);
+            snippetHeaderCache.invalidate(id);
+            snippetSearchIndex.deleted(id);
             return true;
         }
         return false;
     }
 
+    /**
+     * Count a view with an atomic $inc, so it never writes back a stale copy of the
+     * code and metadata the live document autosaver is updating
+     */
     public long incrementViews(String snippetId) {
-        CodeSnippet snippet = mongoTemplate.findById(snippetId, CodeSnippet.class);
-        if (snippet != null) {
-            snippet.setViews(snippet.getViews() + 1);
-            mongoTemplate.save(snippet);
-            return snippet.getViews();
-        }
-        return 0;
+        Query query = Query.query(Criteria.where("_id").is(snippetId));
+        query.fields().include("views");
+        CodeSnippet snippet = mongoTemplate.findAndModify(
+            query, new Update().inc("views", 1), FindAndModifyOptions.options().returnNew(true), CodeSnippet.class
+        );
+        return snippet != null ? snippet.getViews() : 0;
     }
 
     /**
@@ -259,7 +475,7 @@ public class SnippetService {
      *
      * @return A 6-character code
      */
-    private String generateRandomTinyCode() {
+    String generateRandomTinyCode() {
         String chars = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
         StringBuilder code = new StringBuilder();
         Random random = new Random();
@@ -271,10 +487,28 @@ public class SnippetService {
         return code.toString();
     }
 
-    private SnippetDTO convertToDTO(CodeSnippet snippet) {
-        Optional<User> user = userRepository.findById(snippet.getAuthorId());
-        String authorUsername = user.map(User::getUsername).orElse("Anonymous");
-        
+    SnippetDTO convertToDTO(CodeSnippet snippet) {
+        return convertToDTO(snippet, authorCache.getAuthors(Collections.singletonList(snippet.getAuthorId())));
+    }
+
+    /**
+     * DTOs for a list of snippets, with all of their authors looked up in one batch
+     */
+    private List<SnippetDTO> convertToDTOs(List<CodeSnippet> snippets) {
+        Map<String, UserDTO> authors = getAuthors(snippets);
+        return snippets.stream().map(snippet -> convertToDTO(snippet, authors)).toList();
+    }
+
+    private Map<String, UserDTO> getAuthors(List<CodeSnippet> snippets) {
+        return authorCache.getAuthors(snippets.stream().map(CodeSnippet::getAuthorId).toList());
+    }
+
+    /**
+     * authorUsername is filled for REST and WebSocket callers; GraphQL resolves the author
+     * fields per request through AuthorController, which reads the same AuthorCache
+     */
+    private SnippetDTO convertToDTO(CodeSnippet snippet, Map<String, UserDTO> authors) {
+        UserDTO author = authors.get(snippet.getAuthorId());
         SnippetDTO dto = new SnippetDTO();
         dto.setId(snippet.getId());
         dto.setTitle(snippet.getTitle());
@@ -282,7 +516,7 @@ public class SnippetService {
         dto.setCode(snippet.getCode());
         dto.setLanguage(snippet.getLanguage());
         dto.setAuthorId(snippet.getAuthorId());
-        dto.setAuthorUsername(authorUsername);
+        dto.setAuthorUsername(author != null ? author.getUsername() : AuthorCache.ANONYMOUS);
         dto.setTags(snippet.getTags());
         dto.setViews(Math.toIntExact(snippet.getViews()));
         dto.setIsPublic(snippet.isPublic());
@@ -0,0 +1,231 @@
+package com.codesharing.platform.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Text Operation
+ * Insert/delete edits against a plain-text document, plus the transform rules
+ * used to rebase a client's edits onto the revisions the server applied meanwhile
+ */
+public final class TextOperation {
+
+  public static final String INSERT = "insert";
+  public static final String DELETE = "delete";
+
+  private TextOperation() {}
+
+  /**
+   * A single edit. Edits in a list are applied one after another,
+   * so each position refers to the document produced by the previous edit.
+   */
+  public static class Edit {
+    public String type;
+    public int position;
+    public String text;
+    public int length;
+
+    // Default constructor for deserialization
+    public Edit() {}
+
+    public static Edit insert(int position, String text) {
+      Edit edit = new Edit();
+      edit.type = INSERT;
+      edit.position = position;
+      edit.text = text;
+      return edit;
+    }
+
+    public static Edit delete(int position, int length) {
+      Edit edit = new Edit();
+      edit.type = DELETE;
+      edit.position = position;
+      edit.length = length;
+      return edit;
+    }
+
+    boolean isInsert() {
+      return INSERT.equals(type);
+    }
+
+    int end() {
+      return position + length;
+    }
+
+    Edit withPosition(int newPosition) {
+      return isInsert() ? insert(newPosition, text) : delete(newPosition, length);
+    }
+  }
+
+  /**
+   * Apply edits to a document
+   *
+   * @throws IllegalArgumentException if an edit is malformed or out of range
+   */
+  public static String apply(String document, List<Edit> edits) {
+    StringBuilder buffer = new StringBuilder(document != null ? document : "");
+    for (Edit edit : edits) {
+      validate(edit);
+      if (edit.position > buffer.length()) {
+        throw new IllegalArgumentException("Edit position " + edit.position + " beyond document length " + buffer.length());
+      }
+      if (edit.isInsert()) {
+        buffer.insert(edit.position, edit.text);
+      } else {
+        if (edit.end() > buffer.length()) {
+          throw new IllegalArgumentException("Delete range ends beyond document length " + buffer.length());
+        }
+        buffer.delete(edit.position, edit.end());
+      }
+    }
+    return buffer.toString();
+  }
+
+  /**
+   * Edits turning one text into another: the changed middle between their common prefix
+   * and suffix, as a delete followed by an insert (either may be absent)
+   */
+  public static List<Edit> diff(String from, String to) {
+    String before = from != null ? from : "";
+    String after = to != null ? to : "";
+    int shorter = Math.min(before.length(), after.length());
+    int prefix = 0;
+    while (prefix < shorter && before.charAt(prefix) == after.charAt(prefix)) {
+      prefix++;
+    }
+    int suffix = 0;
+    while (suffix < shorter - prefix
+      && before.charAt(before.length() - 1 - suffix) == after.charAt(after.length() - 1 - suffix)) {
+      suffix++;
+    }
+    List<Edit> edits = new ArrayList<>(2);
+    int removed = before.length() - prefix - suffix;
+    if (removed > 0) {
+      edits.add(Edit.delete(prefix, removed));
+    }
+    if (after.length() - suffix > prefix) {
+      edits.add(Edit.insert(prefix, after.substring(prefix, after.length() - suffix)));
+    }
+    return edits;
+  }
+
+  /**
+   * Rebase incoming edits so they apply after edits the server has already applied.
+   * When both sides insert at the same position, the already applied text comes first.
+   */
+  public static List<Edit> transform(List<Edit> incoming, List<Edit> applied) {
+    for (Edit edit : incoming) {
+      validate(edit);
+    }
+    return transformPair(incoming, applied, false).left;
+  }
+
+  private static void validate(Edit edit) {
+    if (edit == null || edit.type == null) {
+      throw new IllegalArgumentException("Edit type is required");
+    }
+    if (edit.position < 0) {
+      throw new IllegalArgumentException("Edit position must not be negative");
+    }
+    if (INSERT.equals(edit.type)) {
+      if (edit.text == null || edit.text.isEmpty()) {
+        throw new IllegalArgumentException("Insert requires text");
+      }
+    } else if (DELETE.equals(edit.type)) {
+      if (edit.length <= 0) {
+        throw new IllegalArgumentException("Delete requires a positive length");
+      }
+    } else {
+      throw new IllegalArgumentException("Unknown edit type: " + edit.type);
+    }
+  }
+
+  /**
+   * Transform two edit lists that were made against the same document.
+   * Returns (left', right') where left' applies after right and right' applies after left.
+   */
+  private static Pair transformPair(List<Edit> left, List<Edit> right, boolean leftWinsTies) {
+    if (left.isEmpty() || right.isEmpty()) {
+      return new Pair(left, right);
+    }
+    if (left.size() == 1 && right.size() == 1) {
+      Edit a = left.get(0);
+      Edit b = right.get(0);
+      return new Pair(transformSingle(a, b, leftWinsTies), transformSingle(b, a, !leftWinsTies));
+    }
+    if (left.size() > 1) {
+      Pair head = transformPair(left.subList(0, 1), right, leftWinsTies);
+      Pair tail = transformPair(left.subList(1, left.size()), head.right, leftWinsTies);
+      return new Pair(concat(head.left, tail.left), tail.right);
+    }
+    Pair head = transformPair(left, right.subList(0, 1), leftWinsTies);
+    Pair tail = transformPair(head.left, right.subList(1, right.size()), leftWinsTies);
+    return new Pair(tail.left, concat(head.right, tail.right));
+  }
+
+  /**
+   * Transform edit a so that it applies after edit b
+   */
+  private static List<Edit> transformSingle(Edit a, Edit b, boolean aWinsTies) {
+    if (a.isInsert()) {
+      if (b.isInsert()) {
+        if (a.position < b.position || (a.position == b.position && aWinsTies)) {
+          return List.of(a);
+        }
+        return List.of(a.withPosition(a.position + b.text.length()));
+      }
+      if (a.position <= b.position) {
+        return List.of(a);
+      }
+      if (a.position >= b.end()) {
+        return List.of(a.withPosition(a.position - b.length));
+      }
+      return List.of(a.withPosition(b.position));
+    }
+
+    if (b.isInsert()) {
+      if (b.position <= a.position) {
+        return List.of(a.withPosition(a.position + b.text.length()));
+      }
+      if (b.position >= a.end()) {
+        return List.of(a);
+      }
+      // Insert landed inside the deleted range: delete around it, keep the inserted text
+      int before = b.position - a.position;
+      return List.of(
+        Edit.delete(a.position, before),
+        Edit.delete(a.position + b.text.length(), a.length - before)
+      );
+    }
+
+    if (a.end() <= b.position) {
+      return List.of(a);
+    }
+    if (a.position >= b.end()) {
+      return List.of(a.withPosition(a.position - b.length));
+    }
+    int overlap = Math.min(a.end(), b.end()) - Math.max(a.position, b.position);
+    int remaining = a.length - overlap;
+    if (remaining == 0) {
+      return List.of();
+    }
+    return List.of(Edit.delete(Math.min(a.position, b.position), remaining));
+  }
+
+  private static List<Edit> concat(List<Edit> first, List<Edit> second) {
+    List<Edit> result = new ArrayList<>(first.size() + second.size());
+    result.addAll(first);
+    result.addAll(second);
+    return result;
+  }
+
+  private static class Pair {
+    final List<Edit> left;
+    final List<Edit> right;
+
+    Pair(List<Edit> left, List<Edit> right) {
+      this.left = left;
+      this.right = right;
+    }
+  }
+}
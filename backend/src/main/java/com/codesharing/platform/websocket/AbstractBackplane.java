@@ -0,0 +1,94 @@
+package com.codesharing.platform.websocket;
+
+import com.codesharing.platform.service.CollaborationMetrics;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Base class for backplanes
+ * Stamps outgoing events, drops this node's own events and dispatches the rest
+ */
+@Slf4j
+public abstract class AbstractBackplane implements CollaborationBackplane {
+
+  protected final ObjectMapper objectMapper;
+  protected final CollaborationMetrics metrics;
+  private final String nodeId = UUID.randomUUID().toString();
+  private final long startedAt = System.currentTimeMillis();
+  private final List<Consumer<BackplaneEvent>> listeners = new CopyOnWriteArrayList<>();
+
+  protected AbstractBackplane(ObjectMapper objectMapper, CollaborationMetrics metrics) {
+    this.objectMapper = objectMapper;
+    this.metrics = metrics;
+  }
+
+  @Override
+  public String getNodeId() {
+    return nodeId;
+  }
+
+  @Override
+  public long getStartedAt() {
+    return startedAt;
+  }
+
+  @Override
+  public void publish(BackplaneEvent event) {
+    event.nodeId = nodeId;
+    event.nodeStartedAt = startedAt;
+    event.timestamp = System.currentTimeMillis();
+    metrics.increment("collaboration.backplane.published");
+    send(event);
+  }
+
+  @Override
+  public void subscribe(Consumer<BackplaneEvent> listener) {
+    listeners.add(listener);
+  }
+
+  /**
+   * Transport a stamped event to the other nodes
+   */
+  protected abstract void send(BackplaneEvent event);
+
+  /**
+   * Hand an event received from the transport to the listeners
+   */
+  protected void dispatch(BackplaneEvent event) {
+    if (event == null || nodeId.equals(event.nodeId)) {
+      return;
+    }
+    metrics.increment("collaboration.backplane.received");
+    for (Consumer<BackplaneEvent> listener : listeners) {
+      try {
+        listener.accept(event);
+      } catch (Exception e) {
+        log.error("[Backplane] Listener failed for {} event from node {}: {}",
+                  event.type, event.nodeId, e.getMessage(), e);
+      }
+    }
+  }
+
+  protected String serialize(BackplaneEvent event) {
+    try {
+      return objectMapper.writeValueAsString(event);
+    } catch (JsonProcessingException e) {
+      throw new IllegalStateException("Could not serialize backplane event", e);
+    }
+  }
+
+  protected BackplaneEvent deserialize(String json) {
+    try {
+      return objectMapper.readValue(json, BackplaneEvent.class);
+    } catch (JsonProcessingException e) {
+      metrics.increment("collaboration.backplane.malformed");
+      log.warn("[Backplane] Dropping malformed event: {}", e.getMessage());
+      return null;
+    }
+  }
+}
@@ -0,0 +1,92 @@
+package com.codesharing.platform.websocket;
+
+import com.codesharing.platform.service.CollaborationMetrics;
+import jakarta.annotation.PostConstruct;
+import java.util.Base64;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.AbstractSubscribableChannel;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+
+/**
+ * Backplane Bridge
+ * Forwards /topic broadcasts made on this node to the other nodes, and feeds
+ * broadcasts from other nodes into the local broker so they reach this node's subscribers
+ * Inactive when the backplane does not forward broadcasts (single node, broker relay)
+ */
+@Slf4j
+@Component
+public class BackplaneBridge implements ChannelInterceptor {
+
+  /**
+   * Marks messages that came from another node so they are not forwarded again
+   */
+  static final String ORIGIN_HEADER = "backplaneOrigin";
+
+  private static final String TOPIC_PREFIX = "/topic/";
+
+  private final CollaborationBackplane backplane;
+  private final AbstractSubscribableChannel brokerChannel;
+  private final CollaborationMetrics metrics;
+
+  public BackplaneBridge(
+    CollaborationBackplane backplane,
+    @Qualifier("brokerChannel") AbstractSubscribableChannel brokerChannel,
+    CollaborationMetrics metrics
+  ) {
+    this.backplane = backplane;
+    this.brokerChannel = brokerChannel;
+    this.metrics = metrics;
+  }
+
+  @PostConstruct
+  public void start() {
+    if (!backplane.forwardsBroadcasts()) {
+      return;
+    }
+    brokerChannel.addInterceptor(this);
+    backplane.subscribe(this::onEvent);
+    log.info("[Backplane] Forwarding topic broadcasts between nodes");
+  }
+
+  @Override
+  public Message<?> preSend(Message<?> message, MessageChannel channel) {
+    SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+    String destination = accessor.getDestination();
+    if (accessor.getMessageType() == SimpMessageType.MESSAGE
+        && destination != null && destination.startsWith(TOPIC_PREFIX)
+        && accessor.getHeader(ORIGIN_HEADER) == null
+        && message.getPayload() instanceof byte[] body) {
+      MimeType contentType = accessor.getContentType();
+      backplane.publish(BackplaneEvent.broadcast(
+        destination,
+        contentType != null ? contentType.toString() : null,
+        Base64.getEncoder().encodeToString(body)
+      ));
+      metrics.increment("collaboration.backplane.broadcasts.out");
+    }
+    return message;
+  }
+
+  private void onEvent(BackplaneEvent event) {
+    if (event.type != BackplaneEvent.Type.BROADCAST || event.destination == null || event.payload == null) {
+      return;
+    }
+    SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+    accessor.setDestination(event.destination);
+    if (event.contentType != null) {
+      accessor.setContentType(MimeType.valueOf(event.contentType));
+    }
+    accessor.setHeader(ORIGIN_HEADER, event.nodeId);
+    brokerChannel.send(MessageBuilder.createMessage(
+      Base64.getDecoder().decode(event.payload), accessor.getMessageHeaders()));
+    metrics.increment("collaboration.backplane.broadcasts.in");
+  }
+}
@@ -0,0 +1,99 @@
+package com.codesharing.platform.websocket;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Backplane Event
+ * Message exchanged between backend nodes over the collaboration backplane
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BackplaneEvent {
+
+  public enum Type {
+    // A broadcast to a /topic destination made on the origin node
+    BROADCAST,
+    // A user joined or left a room on the origin node
+    PRESENCE_JOIN,
+    PRESENCE_LEAVE,
+    // The origin node is alive
+    NODE_HEARTBEAT,
+    // A client frame for a room, passed to the node that owns the room's live document
+    ROOM_MESSAGE,
+    // A reply to a session connected to the target node
+    SESSION_MESSAGE,
+    // A snippet was written or deleted on the origin node; other nodes re-read it for search
+    SEARCH_INDEX_CHANGED
+  }
+
+  public Type type;
+  public String nodeId;
+  public long nodeStartedAt;
+  public long timestamp;
+
+  // ROOM_MESSAGE / SESSION_MESSAGE: node the event is meant for, and the client session
+  public String targetNodeId;
+  public String sessionId;
+  public Boolean resync;
+
+  // BROADCAST, ROOM_MESSAGE, SESSION_MESSAGE
+  public String destination;
+  public String contentType;
+  public String payload;  // Base64 encoded message body
+
+  // PRESENCE_JOIN / PRESENCE_LEAVE / SEARCH_INDEX_CHANGED
+  public String snippetId;
+  public String userId;
+  public String username;
+
+  public BackplaneEvent() {
+  }
+
+  public static BackplaneEvent broadcast(String destination, String contentType, String payload) {
+    BackplaneEvent event = new BackplaneEvent();
+    event.type = Type.BROADCAST;
+    event.destination = destination;
+    event.contentType = contentType;
+    event.payload = payload;
+    return event;
+  }
+
+  public static BackplaneEvent presence(Type type, String snippetId, String userId, String username) {
+    BackplaneEvent event = new BackplaneEvent();
+    event.type = type;
+    event.snippetId = snippetId;
+    event.userId = userId;
+    event.username = username;
+    return event;
+  }
+
+  public static BackplaneEvent roomMessage(String targetNodeId, String snippetId, String sessionId,
+                                           String destination, String contentType, String payload, boolean resync) {
+    BackplaneEvent event = sessionMessage(targetNodeId, sessionId, destination, contentType, payload);
+    event.type = Type.ROOM_MESSAGE;
+    event.snippetId = snippetId;
+    event.resync = resync ? Boolean.TRUE : null;
+    return event;
+  }
+
+  public static BackplaneEvent sessionMessage(String targetNodeId, String sessionId,
+                                              String destination, String contentType, String payload) {
+    BackplaneEvent event = broadcast(destination, contentType, payload);
+    event.type = Type.SESSION_MESSAGE;
+    event.targetNodeId = targetNodeId;
+    event.sessionId = sessionId;
+    return event;
+  }
+
+  public static BackplaneEvent searchIndexChanged(String snippetId) {
+    BackplaneEvent event = new BackplaneEvent();
+    event.type = Type.SEARCH_INDEX_CHANGED;
+    event.snippetId = snippetId;
+    return event;
+  }
+
+  public static BackplaneEvent heartbeat() {
+    BackplaneEvent event = new BackplaneEvent();
+    event.type = Type.NODE_HEARTBEAT;
+    return event;
+  }
+}
@@ -0,0 +1,39 @@
+package com.codesharing.platform.websocket;
+
+import java.util.function.Consumer;
+
+/**
+ * Collaboration Backplane
+ * Carries broadcasts, presence changes and room messages between backend nodes
+ * so a room can span several replicas behind the load balancer
+ * Selected with app.collaboration.backplane.type (in-process, postgres, relay)
+ */
+public interface CollaborationBackplane {
+
+  /**
+   * Unique id of this node
+   */
+  String getNodeId();
+
+  /**
+   * When this node started, in epoch millis; nodes up for less than a heartbeat interval own no rooms
+   */
+  long getStartedAt();
+
+  /**
+   * Send an event to every other node
+   * The event's nodeId, nodeStartedAt and timestamp are filled in by the backplane
+   */
+  void publish(BackplaneEvent event);
+
+  /**
+   * Receive events published by other nodes (never this node's own events)
+   */
+  void subscribe(Consumer<BackplaneEvent> listener);
+
+  /**
+   * Whether /topic broadcasts must be forwarded over the backplane
+   * False when an external broker already delivers them to every node
+   */
+  boolean forwardsBroadcasts();
+}
@@ -1,22 +1,27 @@
 package com.codesharing.platform.websocket;
 
+import com.codesharing.platform.service.CollaborationMetrics;
 import com.codesharing.platform.service.CollaborationService;
+import com.codesharing.platform.service.SnippetHeaderCache;
 import com.codesharing.platform.service.SnippetService;
-import com.codesharing.platform.service.AdminDashboardService;
-import com.codesharing.platform.entity.SessionHistory;
+import com.codesharing.platform.service.TextOperation;
+import com.codesharing.platform.service.ParticipantAuditWriter;
 import com.codesharing.platform.dto.SnippetDTO;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.messaging.handler.annotation.DestinationVariable;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Controller;
+import org.springframework.util.MimeTypeUtils;
 
 /**
  * WebSocket Message Controller
@@ -30,8 +35,14 @@ public class CollaborationController {
 
   private final CollaborationService collaborationService;
   private final SnippetService snippetService;
-  private final AdminDashboardService adminDashboardService;
+  private final SnippetHeaderCache snippetHeaderCache;
+  private final ParticipantAuditWriter participantAuditWriter;
   private final SimpMessagingTemplate messagingTemplate;
+  private final PresenceBroadcaster presenceBroadcaster;
+  private final PresenceReplicator presenceReplicator;
+  private final CollaborationMetrics metrics;
+  private final InboundRateLimiter inboundRateLimiter;
+  private final RoomRouter roomRouter;
 
   /**
    * Handle user joining a snippet session
@@ -40,7 +51,8 @@ public class CollaborationController {
   @MessageMapping("/snippet/{snippetId}/join")
   public void handleUserJoin(
     @DestinationVariable String snippetId,
-    @Payload Map<String, String> payload
+    @Payload Map<String, String> payload,
+    SimpMessageHeaderAccessor headerAccessor
   ) {
     String userId = payload.get("userId");
     String username = payload.get("username");
@@ -52,108 +64,51 @@ public class CollaborationController {
     String osVersion = payload.get("osVersion");
 
     collaborationService.joinSession(snippetId, userId, username);
+    collaborationService.bindSession(headerAccessor.getSessionId(), snippetId, userId);
+    presenceReplicator.localJoined(snippetId, userId, username);
 
     // Set owner from snippet metadata if available, otherwise keep first user as owner
+    SnippetHeaderCache.SnippetHeader header = null;
     try {
-      SnippetDTO snippet = snippetService.getSnippetById(snippetId);
-      if (snippet != null && snippet.getAuthorId() != null) {
-        collaborationService.setSessionOwner(snippetId, snippet.getAuthorId());
-        log.info("[Collaboration] Owner set from snippet: {} for snippet {}", snippet.getAuthorId(), snippetId);
+      header = snippetHeaderCache.get(snippetId);
+      if (header != null && header.authorId != null) {
+        collaborationService.setSessionOwner(snippetId, header.authorId);
+        log.info("[Collaboration] Owner set from snippet: {} for snippet {}", header.authorId, snippetId);
       } else {
         log.warn("[Collaboration] Snippet not found or has no author for: {}", snippetId);
       }
     } catch (Exception e) {
       log.error("[Collaboration] Could not load snippet owner: {}", e.getMessage(), e);
     }
-
-    // Track participant in admin dashboard
-    try {
-      log.info("[Collaboration] Tracking participant join: snippetId={}, userId={}, username={}", 
-               snippetId, userId, username);
-      
-      // Get or create session history entry
-      Optional<SessionHistory> sessionOpt = adminDashboardService.getSessionBySnippetId(snippetId);
-      SessionHistory session;
-      
-      if (sessionOpt.isPresent()) {
-        session = sessionOpt.get();
-        log.info("[Collaboration] Found existing session for snippet {}", snippetId);
-      } else {
-        // Session wasn't created during snippet creation (shouldn't happen with our fix, but be safe)
-        SnippetDTO snippet = snippetService.getSnippetById(snippetId);
-        String ownerUsername = snippet != null && snippet.getAuthorId() != null ? 
-                              snippet.getAuthorId() : "anonymous";
-        Boolean isAnonymous = snippet != null && "anonymous".equals(snippet.getAuthorId());
-        
-        session = adminDashboardService.createSession(
-          snippetId,
-          snippet != null ? snippet.getAuthorId() : "anonymous",
-          ownerUsername,
-          null,
-          isAnonymous,
-          snippet != null ? snippet.getTitle() : "Untitled",
-          snippet != null ? snippet.getLanguage() : "unknown"
-        );
-        log.info("[Collaboration] Created session for snippet {} (retroactive)", snippetId);
-      }
-      
-      // Add participant to session
-      Boolean isOwner = userId.equals(session.getOwnerId());
-      Boolean isAnonymousUser = "anonymous".equals(userId);
-      
-      adminDashboardService.addParticipant(
-        session,
-        userId,
-        username,
-        isOwner,
-        isAnonymousUser,
-        ipAddress,
-        userAgent,
-        browserName,
-        browserVersion,
-        osName,
-        osVersion
-      );
-      
-      log.info("[Collaboration] Participant added to session: snippetId={}, userId={}, isOwner={}", 
-               snippetId, userId, isOwner);
-    } catch (Exception e) {
-      log.error("[Collaboration] Failed to track participant join for snippet {}: {}", 
-                snippetId, e.getMessage(), e);
+    // Only the first joiner of a room pays for loading the full snippet body,
+    // on the node that owns the room's live document
+    if (header != null && roomRouter.isOwner(snippetId)) {
+      ensureDocument(snippetId);
     }
 
-    // Broadcast updated presence to all subscribers
-    List<Map<String, Object>> activeUsers = collaborationService.getActiveUsers(snippetId);
-    log.info("[Collaboration] Broadcasting presence for snippet {} with {} users", snippetId, activeUsers.size());
-    activeUsers.forEach(u -> {
-      log.debug("[Collaboration]   - {} (owner: {})", u.get("username"), u.get("owner"));
-    });
-    
-    // Fetch snippet title to send to joinee
-    String snippetTitle = "";
-    log.info("[Collaboration] Starting snippet title fetch for snippetId: '{}'", snippetId);
-    try {
-      SnippetDTO snippet = snippetService.getSnippetById(snippetId);
-      log.info("[Collaboration] Fetched snippet: {}", snippet != null ? "FOUND" : "NULL");
-      if (snippet != null) {
-        String rawTitle = snippet.getTitle();
-        log.debug("[Collaboration] Raw title from DTO: {}", rawTitle == null ? "NULL" : "'" + rawTitle + "'");
-        snippetTitle = rawTitle != null ? rawTitle : "";
-        log.debug("[Collaboration] Snippet title after processing: '{}'", snippetTitle);
-      } else {
-        log.warn("[Collaboration] Snippet is NULL - cannot fetch title");
-      }
-    } catch (Exception e) {
-      log.error("[Collaboration] Exception fetching snippet title: {}", e.getMessage(), e);
-    }
-    
-    log.info("[Collaboration] Final: Sending presence with title: '{}' (length: {})", snippetTitle, snippetTitle.length());
-    PresenceMessage msg = new PresenceMessage("user_joined", userId, username, activeUsers, snippetTitle);
-    log.debug("[Collaboration] PresenceMessage object created: type={}, snippetTitle={}", msg.type, msg.snippetTitle);
-    messagingTemplate.convertAndSend(
-      "/topic/snippet/" + snippetId + "/presence",
-      msg
+    // Track participant in admin dashboard (written asynchronously in batches)
+    log.info("[Collaboration] Queueing participant join: snippetId={}, userId={}, username={}", 
+             snippetId, userId, username);
+    participantAuditWriter.recordJoin(
+      snippetId,
+      userId,
+      username,
+      ipAddress,
+      userAgent,
+      browserName,
+      browserVersion,
+      osName,
+      osVersion
     );
+
+    // Snippet title to send to joinee; the live document has edits not yet saved
+    CollaborationService.DocumentMetadata live = collaborationService.getDocumentMetadata(snippetId);
+    String snippetTitle = live != null && live.title() != null ? live.title()
+      : header != null && header.title != null ? header.title : "";
+    
+    // Presence is broadcast on the next tick, merged with other joins/leaves in this room
+    log.info("[Collaboration] Queueing user_joined presence with title: '{}' (length: {})", snippetTitle, snippetTitle.length());
+    presenceBroadcaster.presenceChanged(snippetId, "user_joined", userId, username, snippetTitle);
   }
 
   /**
@@ -163,57 +118,38 @@ public class CollaborationController {
   @MessageMapping("/snippet/{snippetId}/leave")
   public void handleUserLeave(
     @DestinationVariable String snippetId,
-    @Payload Map<String, String> payload
+    @Payload Map<String, String> payload,
+    SimpMessageHeaderAccessor headerAccessor
   ) {
     String userId = payload.get("userId");
     String username = payload.get("username");
 
+    collaborationService.unbindSession(headerAccessor.getSessionId(), snippetId);
     collaborationService.leaveSession(snippetId, userId);
+    presenceReplicator.localLeft(snippetId, userId);
 
-    // Track participant departure in admin dashboard
-    try {
-      log.info("[Collaboration] Tracking participant departure: snippetId={}, userId={}", snippetId, userId);
-      
-      Optional<SessionHistory> sessionOpt = adminDashboardService.getSessionBySnippetId(snippetId);
-      if (sessionOpt.isPresent()) {
-        SessionHistory session = sessionOpt.get();
-        adminDashboardService.markParticipantLeft(session, userId);
-        log.info("[Collaboration] Participant marked as departed: snippetId={}, userId={}", snippetId, userId);
-      } else {
-        log.warn("[Collaboration] Session not found for departing participant: snippetId={}", snippetId);
-      }
-    } catch (Exception e) {
-      log.error("[Collaboration] Failed to track participant departure for snippet {}: {}", 
-                snippetId, e.getMessage(), e);
-    }
+    // Track participant departure in admin dashboard (written asynchronously in batches)
+    participantAuditWriter.recordLeave(snippetId, userId);
 
-    // Broadcast updated presence to all subscribers
-    List<Map<String, Object>> activeUsers = collaborationService.getActiveUsers(snippetId);
-    
-    // Fetch snippet title to send to remaining users
-    String snippetTitle = "";
-    log.info("[Collaboration] Starting snippet title fetch for user_left on snippetId: '{}'", snippetId);
-    try {
-      SnippetDTO snippet = snippetService.getSnippetById(snippetId);
-      log.debug("[Collaboration] Fetched snippet: {}", snippet != null ? "FOUND" : "NULL");
-      if (snippet != null) {
-        String rawTitle = snippet.getTitle();
-        log.debug("[Collaboration] Raw title from DTO: {}", rawTitle == null ? "NULL" : "'" + rawTitle + "'");
-        snippetTitle = rawTitle != null ? rawTitle : "";
-        log.debug("[Collaboration] Snippet title after processing: '{}'", snippetTitle);
-      } else {
-        log.warn("[Collaboration] Snippet is NULL - cannot fetch title");
-      }
-    } catch (Exception e) {
-      log.error("[Collaboration] Exception fetching snippet title: {}", e.getMessage(), e);
-    }
+    // Snippet title to send to remaining users
+    String snippetTitle = getSnippetTitle(snippetId);
     
-    log.info("[Collaboration] Final user_left: Sending presence with title: '{}' (length: {})", 
+    log.info("[Collaboration] Queueing user_left presence with title: '{}' (length: {})", 
              snippetTitle, snippetTitle.length());
-    messagingTemplate.convertAndSend(
-      "/topic/snippet/" + snippetId + "/presence",
-      new PresenceMessage("user_left", userId, username != null ? username : "", activeUsers, snippetTitle)
-    );
+    presenceBroadcaster.presenceChanged(snippetId, "user_left", userId, username, snippetTitle);
+  }
+
+  /**
+   * Handle presence heartbeat
+   * Keeps the user from being evicted as idle while their tab is open
+   * Message: /app/snippet/{snippetId}/heartbeat
+   */
+  @MessageMapping("/snippet/{snippetId}/heartbeat")
+  public void handleHeartbeat(
+    @DestinationVariable String snippetId,
+    @Payload Map<String, String> payload
+  ) {
+    collaborationService.touch(snippetId, payload.get("userId"));
   }
 
   /**
@@ -223,10 +159,24 @@ public class CollaborationController {
   @MessageMapping("/snippet/{snippetId}/code")
   public void handleCodeChange(
     @DestinationVariable String snippetId,
-    @Payload CodeChangeMessage codeChange
+    @Payload CodeChangeMessage codeChange,
+    @Header(name = InboundRateLimiter.RESYNC_HEADER, required = false) Boolean resync,
+    SimpMessageHeaderAccessor headerAccessor
   ) {
     log.info("[CodeChange] Received code change from {} for snippet {}", codeChange.username, snippetId);
     log.debug("[CodeChange] Code length: {} Language: {}", codeChange.code != null ? codeChange.code.length() : 0, codeChange.language);
+
+    collaborationService.touch(snippetId, codeChange.userId);
+
+    // Full-text fallback for clients without delta support: reset the live document
+    ensureDocument(snippetId);
+    if (Boolean.TRUE.equals(resync)) {
+      resync(snippetId, headerAccessor.getSessionId(), codeChange.username);
+      return;
+    }
+    codeChange.revision = collaborationService.replaceDocument(snippetId, codeChange.userId, codeChange.code, codeChange.language);
+    codeChange.epoch = collaborationService.getDocumentEpoch(snippetId);
+    codeChange.sequence = collaborationService.recordFrame(snippetId, "code", codeChange);
     
     // Broadcast code change to all subscribers (except sender if needed)
     messagingTemplate.convertAndSend(
@@ -237,6 +187,48 @@ public class CollaborationController {
     log.debug("[CodeChange] Broadcasted to /topic/snippet/{}/code", snippetId);
   }
 
+  /**
+   * Handle delta code operations (insert/delete edits against a base revision)
+   * Edits are rebased onto the server revision and only the delta is broadcast
+   * Message: /app/snippet/{snippetId}/ops
+   */
+  @MessageMapping("/snippet/{snippetId}/ops")
+  public void handleCodeOperation(
+    @DestinationVariable String snippetId,
+    @Payload CodeOperationMessage operation,
+    @Header(name = InboundRateLimiter.RESYNC_HEADER, required = false) Boolean resync,
+    SimpMessageHeaderAccessor headerAccessor
+  ) {
+    log.debug("[CodeOps] Received {} edits from {} for snippet {} at revision {}",
+              operation.operations != null ? operation.operations.size() : 0, operation.username, snippetId, operation.baseRevision);
+
+    collaborationService.touch(snippetId, operation.userId);
+    ensureDocument(snippetId);
+    if (Boolean.TRUE.equals(resync)) {
+      resync(snippetId, headerAccessor.getSessionId(), operation.username);
+      return;
+    }
+    CollaborationService.AppliedOperation applied =
+      collaborationService.applyOperation(snippetId, operation.userId, operation.baseRevision, operation.operations);
+
+    if (applied == null) {
+      log.info("[CodeOps] Rejected operation from {} at revision {} for snippet {}, sending snapshot",
+               operation.username, operation.baseRevision, snippetId);
+      sendSnapshot(snippetId, headerAccessor.getSessionId(), "snapshot");
+      return;
+    }
+
+    operation.operations = applied.edits;
+    operation.baseRevision = applied.revision - 1;
+    operation.revision = applied.revision;
+    messagingTemplate.convertAndSend(
+      "/topic/snippet/" + snippetId + "/ops",
+      operation
+    );
+
+    log.debug("[CodeOps] Broadcasted revision {} to /topic/snippet/{}/ops", applied.revision, snippetId);
+  }
+
   /**
    * Handle typing indicator
    * Message: /app/snippet/{snippetId}/typing
@@ -250,29 +242,45 @@ public class CollaborationController {
     
     collaborationService.setUserTyping(snippetId, typing.userId, typing.isTyping);
 
-    // Broadcast typing status with usernames to all subscribers
-    List<Map<String, String>> typingUsers = collaborationService.getTypingUsersWithNames(snippetId);
-    messagingTemplate.convertAndSend(
-      "/topic/snippet/" + snippetId + "/typing",
-      new TypingStatusMessage(typingUsers)
-    );
-    
-    log.debug("[Typing] Broadcasting {} typing users to /topic/snippet/{}/typing", typingUsers.size(), snippetId);
+    // Typing status with usernames goes out on the next broadcast tick
+    presenceBroadcaster.typingChanged(snippetId);
+  }
+
+  /**
+   * Handle cursor and selection moves
+   * Only the latest position per user is kept; changed cursors go out on the next broadcast tick
+   * Message: /app/snippet/{snippetId}/cursor
+   */
+  @MessageMapping("/snippet/{snippetId}/cursor")
+  public void handleCursorMove(
+    @DestinationVariable String snippetId,
+    @Payload CursorMessage cursor
+  ) {
+    if (cursor.userId == null || !collaborationService.isUserInSession(snippetId, cursor.userId)) {
+      return;
+    }
+    collaborationService.touch(snippetId, cursor.userId);
+    presenceBroadcaster.cursorMoved(snippetId, cursor);
   }
 
   /**
    * Get active users in snippet (on-demand query)
+   * Only the requesting session gets the reply
    * Message: /app/snippet/{snippetId}/users
+   * Reply: /user/queue/snippet/{snippetId}/users
    */
   @MessageMapping("/snippet/{snippetId}/users")
   public void getActiveUsers(
-    @DestinationVariable String snippetId
+    @DestinationVariable String snippetId,
+    SimpMessageHeaderAccessor headerAccessor
   ) {
-    List<Map<String, Object>> activeUsers = collaborationService.getActiveUsers(snippetId);
-    messagingTemplate.convertAndSend(
-      "/topic/snippet/" + snippetId + "/users",
-      new ActiveUsersMessage(activeUsers, activeUsers.size())
-    );
+    String sessionId = headerAccessor.getSessionId();
+    if (sessionId == null) {
+      return;
+    }
+    // Serialized once per room change, repeated queries reuse the same bytes
+    byte[] activeUsers = collaborationService.getActiveUsersPayload(snippetId);
+    sendToSession(sessionId, "/queue/snippet/" + snippetId + "/users", activeUsers);
   }
 
   /**
@@ -284,43 +292,59 @@ public class CollaborationController {
     @DestinationVariable String snippetId,
     @Payload MetadataUpdateMessage metadata
   ) {
-    log.info("[Metadata] Received metadata update from user {} for snippet {}", metadata.userId, snippetId);
-    
-    // Broadcast metadata update to all subscribers
-    messagingTemplate.convertAndSend(
-      "/topic/snippet/" + snippetId + "/metadata",
-      metadata
+    log.debug("[Metadata] Received metadata update from user {} for snippet {}", metadata.userId, snippetId);
+
+    ensureDocument(snippetId);
+    collaborationService.updateDocumentMetadata(
+      snippetId, metadata.title, metadata.description, metadata.language, metadata.tags
     );
-    
-    log.debug("[Metadata] Broadcasted to /topic/snippet/{}/metadata", snippetId);
+
+    // Rapid edits are merged into one frame with the latest metadata per tick,
+    // and persisted by the autosaver once they pause
+    presenceBroadcaster.metadataChanged(snippetId, metadata);
   }
 
   /**
    * Handle state sync request from joinee
-   * When a joinee joins, they request the current code and metadata from owner
+   * The server keeps the live code and metadata, so the snapshot is sent
+   * straight to the requesting session without involving the owner
    * Message: /app/snippet/{snippetId}/sync-state
+   * Reply: /user/queue/snippet/{snippetId}/sync
    */
   @MessageMapping("/snippet/{snippetId}/sync-state")
   public void handleSyncStateRequest(
     @DestinationVariable String snippetId,
-    @Payload Map<String, String> payload
+    @Payload Map<String, String> payload,
+    SimpMessageHeaderAccessor headerAccessor
   ) {
     String userId = payload.get("userId");
     String username = payload.get("username");
     
     log.info("[Sync] User {} ({}) requesting state sync for snippet {}", username, userId, snippetId);
-    
-    // In a real-time collaboration, the owner's state is in memory on the frontend.
-    // We send an empty state sync response, and the frontend will handle broadcasting
-    // the owner's current state when they receive this request.
-    // This is a signal that says "a new user joined, send them your current state"
-    
+
+    ensureDocument(snippetId);
+    if (sendSnapshot(snippetId, headerAccessor.getSessionId(), "state-sync")) {
+      log.debug("[Sync] Sent server snapshot of snippet {} to {}", snippetId, username);
+      return;
+    }
+
+    // No server state (snippet not stored yet): fall back to asking the owner's browser
     Map<String, Object> syncMessage = new HashMap<>();
     syncMessage.put("type", "state-sync-request");
     syncMessage.put("requesterId", userId);
     syncMessage.put("requesterUsername", username);
     syncMessage.put("timestamp", System.currentTimeMillis());
-    
+
+    List<String> ownerSessionIds = collaborationService.getOwnerSessionIds(snippetId);
+    if (!ownerSessionIds.isEmpty()) {
+      for (String ownerSessionId : ownerSessionIds) {
+        sendToSession(ownerSessionId, "/queue/snippet/" + snippetId + "/sync", syncMessage);
+      }
+      log.debug("[Sync] Sent sync request from {} to the owner's {} session(s)", username, ownerSessionIds.size());
+      return;
+    }
+
+    // Owner unknown or connected to another node
     messagingTemplate.convertAndSend(
       "/topic/snippet/" + snippetId + "/sync",
       syncMessage
@@ -329,6 +353,147 @@ public class CollaborationController {
     log.debug("[Sync] Broadcasted sync request from {} to all subscribers", username);
   }
 
+  /**
+   * Handle catch-up after a brief disconnect
+   * The client sends the epoch and sequence of the last code/metadata frame it saw
+   * and gets only the frames it missed, or a full snapshot if they are no longer buffered
+   * Message: /app/snippet/{snippetId}/resume
+   * Reply: /user/queue/snippet/{snippetId}/sync
+   */
+  @MessageMapping("/snippet/{snippetId}/resume")
+  public void handleResume(
+    @DestinationVariable String snippetId,
+    @Payload ResumeMessage resume,
+    SimpMessageHeaderAccessor headerAccessor
+  ) {
+    String sessionId = headerAccessor.getSessionId();
+    if (sessionId == null) {
+      return;
+    }
+    collaborationService.touch(snippetId, resume.userId);
+    ensureDocument(snippetId);
+
+    CollaborationService.Replay replay =
+      collaborationService.getFramesSince(snippetId, resume.epoch, resume.lastSequence);
+    if (replay == null) {
+      log.info("[Resume] Gap too large for {} on snippet {} (last sequence {}), sending snapshot",
+               resume.userId, snippetId, resume.lastSequence);
+      metrics.increment("collaboration.replay.snapshots");
+      if (!sendSnapshot(snippetId, sessionId, "snapshot")) {
+        log.warn("[Resume] No live document for snippet {}", snippetId);
+      }
+      return;
+    }
+
+    List<Map<String, Object>> frames = new ArrayList<>();
+    for (CollaborationService.ReplayFrame frame : replay.frames) {
+      Map<String, Object> entry = new HashMap<>();
+      entry.put("sequence", frame.sequence);
+      entry.put("channel", frame.channel);
+      entry.put("payload", frame.payload);
+      frames.add(entry);
+    }
+    Map<String, Object> replayMessage = new HashMap<>();
+    replayMessage.put("type", "replay");
+    replayMessage.put("epoch", resume.epoch);
+    replayMessage.put("frames", frames);
+    replayMessage.put("sequence", replay.sequence);
+    // Delta clients compare this with their revision to tell whether ops were missed too
+    replayMessage.put("revision", replay.revision);
+    replayMessage.put("timestamp", System.currentTimeMillis());
+    sendToSession(sessionId, "/queue/snippet/" + snippetId + "/sync", replayMessage);
+
+    metrics.increment("collaboration.replay.resumed");
+    metrics.add("collaboration.replay.frames", frames.size());
+    log.debug("[Resume] Replayed {} frames after sequence {} to {} for snippet {}",
+              frames.size(), resume.lastSequence, resume.userId, snippetId);
+  }
+
+  /**
+   * Snippet title from the live document, else from the header cache; empty if the snippet is unknown
+   */
+  private String getSnippetTitle(String snippetId) {
+    CollaborationService.DocumentMetadata live = collaborationService.getDocumentMetadata(snippetId);
+    if (live != null && live.title() != null) {
+      return live.title();
+    }
+    try {
+      SnippetHeaderCache.SnippetHeader header = snippetHeaderCache.get(snippetId);
+      return header != null && header.title != null ? header.title : "";
+    } catch (Exception e) {
+      log.error("[Collaboration] Exception fetching snippet title: {}", e.getMessage(), e);
+      return "";
+    }
+  }
+
+  /**
+   * Make sure a live document exists, seeding it from the stored snippet
+   */
+  private void ensureDocument(String snippetId) {
+    if (collaborationService.hasDocument(snippetId)) {
+      return;
+    }
+    try {
+      SnippetDTO snippet = snippetService.getSnippetById(snippetId);
+      if (snippet != null) {
+        collaborationService.seedDocument(snippetId, snippet);
+      }
+    } catch (Exception e) {
+      log.error("[Collaboration] Could not load snippet {} to seed live document: {}", snippetId, e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Answer an edit frame the inbound limiter rejected with a snapshot, so the sender
+   * rebuilds on the server's text instead of on its unapplied edit
+   */
+  private void resync(String snippetId, String sessionId, String username) {
+    log.info("[CodeOps] Edit from {} for snippet {} was rate limited or shed, sending snapshot", username, snippetId);
+    sendSnapshot(snippetId, sessionId, "snapshot");
+    inboundRateLimiter.resyncSent(sessionId, snippetId);
+  }
+
+  /**
+   * Send the current live document to a single session
+   * Client subscribes to: /user/queue/snippet/{snippetId}/sync
+   *
+   * @return false if there is no live document to send
+   */
+  private boolean sendSnapshot(String snippetId, String sessionId, String type) {
+    CollaborationService.DocumentSnapshot snapshot = collaborationService.getDocumentSnapshot(snippetId);
+    if (snapshot == null || sessionId == null) {
+      return false;
+    }
+    Map<String, Object> snapshotMessage = new HashMap<>();
+    snapshotMessage.put("type", type);
+    snapshotMessage.put("code", snapshot.code);
+    snapshotMessage.put("language", snapshot.language);
+    snapshotMessage.put("title", snapshot.title);
+    snapshotMessage.put("description", snapshot.description);
+    snapshotMessage.put("tags", snapshot.tags);
+    snapshotMessage.put("revision", snapshot.revision);
+    snapshotMessage.put("epoch", snapshot.epoch);
+    snapshotMessage.put("sequence", snapshot.sequence);
+    snapshotMessage.put("timestamp", System.currentTimeMillis());
+    sendToSession(sessionId, "/queue/snippet/" + snippetId + "/sync", snapshotMessage);
+    return true;
+  }
+
+  /**
+   * Send a message to one STOMP session via its user destination
+   * Sessions are anonymous, so the session id doubles as the user name
+   */
+  private void sendToSession(String sessionId, String destination, Object payload) {
+    SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+    accessor.setSessionId(sessionId);
+    if (payload instanceof byte[]) {
+      // Pre-serialized JSON, passed through as is
+      accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+    }
+    accessor.setLeaveMutable(true);
+    messagingTemplate.convertAndSendToUser(sessionId, destination, payload, accessor.getMessageHeaders());
+  }
+
   /**
    * Message types for WebSocket communication
    */
@@ -336,19 +501,22 @@ public class CollaborationController {
     public String type;
     public String userId;
     public String username;
-    public List<Map<String, Object>> activeUsers;
+    public List<CollaborationService.ActiveUser> activeUsers;
     public String snippetTitle;
     // Owner's current metadata for joinee synchronization
     public String ownerTitle;
     public String ownerDescription;
     public String ownerLanguage;
     public List<String> ownerTags;
+    // Users that joined/left since the previous presence frame (frames are coalesced per tick)
+    public List<String> joinedUserIds;
+    public List<String> leftUserIds;
 
-    public PresenceMessage(String type, String userId, String username, List<Map<String, Object>> activeUsers) {
+    public PresenceMessage(String type, String userId, String username, List<CollaborationService.ActiveUser> activeUsers) {
       this(type, userId, username, activeUsers, "");
     }
 
-    public PresenceMessage(String type, String userId, String username, List<Map<String, Object>> activeUsers, String snippetTitle) {
+    public PresenceMessage(String type, String userId, String username, List<CollaborationService.ActiveUser> activeUsers, String snippetTitle) {
       this.type = type;
       this.userId = userId;
       this.username = username;
@@ -358,6 +526,8 @@ public class CollaborationController {
       this.ownerDescription = "";
       this.ownerLanguage = "";
       this.ownerTags = new ArrayList<>();
+      this.joinedUserIds = new ArrayList<>();
+      this.leftUserIds = new ArrayList<>();
     }
   }
 
@@ -367,11 +537,30 @@ public class CollaborationController {
     public String code;
     public String language;
     public long timestamp;
+    // Live document revision after this change (set by the server)
+    public long revision;
+    // Replay position of this frame in the room (set by the server)
+    public String epoch;
+    public long sequence;
 
     // Default constructor for deserialization
     public CodeChangeMessage() {}
   }
 
+  public static class CodeOperationMessage {
+    public String userId;
+    public String username;
+    // Revision the edits were made against
+    public long baseRevision;
+    // Revision produced by the edits (set by the server)
+    public long revision;
+    public List<TextOperation.Edit> operations;
+    public long timestamp;
+
+    // Default constructor for deserialization
+    public CodeOperationMessage() {}
+  }
+
   public static class TypingIndicatorMessage {
     public String userId;
     public boolean isTyping;
@@ -388,11 +577,34 @@ public class CollaborationController {
     }
   }
 
+  public static class CursorMessage {
+    public String userId;
+    public String username;
+    // Character offsets in the document at the given revision; selectionStart == selectionEnd for a caret
+    public int position;
+    public int selectionStart;
+    public int selectionEnd;
+    public long revision;
+    public long timestamp;
+
+    // Default constructor for deserialization
+    public CursorMessage() {}
+  }
+
+  public static class CursorStatusMessage {
+    // Cursors that moved since the previous frame, at most one per user
+    public List<CursorMessage> cursors;
+
+    public CursorStatusMessage(List<CursorMessage> cursors) {
+      this.cursors = cursors;
+    }
+  }
+
   public static class ActiveUsersMessage {
-    public List<Map<String, Object>> users;
+    public List<CollaborationService.ActiveUser> users;
     public int count;
 
-    public ActiveUsersMessage(List<Map<String, Object>> users, int count) {
+    public ActiveUsersMessage(List<CollaborationService.ActiveUser> users, int count) {
       this.users = users;
       this.count = count;
     }
@@ -405,8 +617,21 @@ public class CollaborationController {
     public String language;
     public List<String> tags;
     public long timestamp;
+    // Replay position of this frame in the room (set by the server)
+    public String epoch;
+    public long sequence;
 
     // Default constructor for deserialization
     public MetadataUpdateMessage() {}
   }
+
+  public static class ResumeMessage {
+    public String userId;
+    // Epoch and sequence of the last code/metadata frame the client applied
+    public String epoch;
+    public long lastSequence;
+
+    // Default constructor for deserialization
+    public ResumeMessage() {}
+  }
 }
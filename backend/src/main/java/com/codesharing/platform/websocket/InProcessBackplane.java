@@ -0,0 +1,68 @@
+package com.codesharing.platform.websocket;
+
+import com.codesharing.platform.service.CollaborationMetrics;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * In-Process Backplane
+ * Default single-node behaviour: without a cluster name there are no peers and
+ * publishing is a no-op. Application contexts in the same JVM that share a cluster
+ * name (app.collaboration.backplane.in-process.cluster) exchange events, which
+ * allows running two nodes side by side in one process.
+ */
+public class InProcessBackplane extends AbstractBackplane {
+
+  private static final Map<String, List<InProcessBackplane>> CLUSTERS = new ConcurrentHashMap<>();
+
+  private final String cluster;
+  // Single thread per node keeps delivery in publish order, like a network connection
+  private final ExecutorService delivery;
+
+  public InProcessBackplane(ObjectMapper objectMapper, CollaborationMetrics metrics, String cluster) {
+    super(objectMapper, metrics);
+    this.cluster = cluster != null && !cluster.isBlank() ? cluster : null;
+    if (this.cluster != null) {
+      this.delivery = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("backplane-local-"));
+      CLUSTERS.computeIfAbsent(this.cluster, k -> new CopyOnWriteArrayList<>()).add(this);
+    } else {
+      this.delivery = null;
+    }
+  }
+
+  @Override
+  protected void send(BackplaneEvent event) {
+    if (cluster == null) {
+      return;
+    }
+    for (InProcessBackplane peer : CLUSTERS.getOrDefault(cluster, List.of())) {
+      if (peer != this) {
+        peer.delivery.execute(() -> peer.dispatch(event));
+      }
+    }
+  }
+
+  @Override
+  public boolean forwardsBroadcasts() {
+    return cluster != null;
+  }
+
+  /**
+   * Leave the cluster when the application context closes
+   */
+  public void close() {
+    if (cluster != null) {
+      CLUSTERS.computeIfPresent(cluster, (k, peers) -> {
+        peers.remove(this);
+        return peers.isEmpty() ? null : peers;
+      });
+      delivery.shutdown();
+    }
+  }
+}
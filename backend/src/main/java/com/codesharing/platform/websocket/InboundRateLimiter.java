@@ -0,0 +1,243 @@
+package com.codesharing.platform.websocket;
+
+import com.codesharing.platform.service.CollaborationMetrics;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+
+/**
+ * Inbound Rate Limiter
+ * Per-session, per-message-type token buckets and admission control for client SEND frames
+ * Runs on the transport thread before a frame is queued on its snippet lane, so a flooding
+ * client is cut off before it can delay other clients' messages. Rejected frames are dropped
+ * and counted; clients recover missed broadcasts through resume/sync-state.
+ * Edit frames (code, ops) are never dropped silently: the sender's later ops would be based on
+ * text the server never applied. The first rejected edit frame is passed on flagged with
+ * RESYNC_HEADER, and the controller answers it with a snapshot instead of applying it; further
+ * edit frames of that session and snippet are dropped until the snapshot has been sent.
+ * When the target lane backs up, ephemeral frames (typing, cursor, heartbeat, user queries)
+ * are shed first, and all frames except join/leave are shed once it is full.
+ * Frames forwarded from another node were admitted there and are passed through.
+ */
+@Slf4j
+@Component
+public class InboundRateLimiter implements ChannelInterceptor {
+
+  /**
+   * Header of an edit frame to be answered with a snapshot instead of being applied
+   */
+  public static final String RESYNC_HEADER = "collaboration-resync";
+
+  private static final String DEFAULT_TYPE = "default";
+  private static final Set<String> EDIT_TYPES = Set.of("code", "ops");
+  private static final Set<String> EPHEMERAL_TYPES = Set.of("typing", "cursor", "heartbeat", "users");
+  private static final Set<String> CONTROL_TYPES = Set.of("join", "leave");
+  private static final Set<String> KNOWN_TYPES = Set.of(
+    "join", "leave", "heartbeat", "code", "ops", "typing", "cursor", "users", "metadata", "sync-state", "resume"
+  );
+
+  private final SnippetLaneExecutor snippetLaneExecutor;
+  private final CollaborationMetrics metrics;
+  private final Map<String, Limit> limits;
+
+  @Value("${app.collaboration.inbound.enabled:true}")
+  private boolean enabled = true;
+
+  /**
+   * Lane depth from which ephemeral frames are shed
+   */
+  @Value("${app.collaboration.inbound.shed-depth:500}")
+  private int shedDepth = 500;
+
+  /**
+   * Lane depth from which every frame except join/leave is shed
+   */
+  @Value("${app.collaboration.inbound.reject-depth:2000}")
+  private int rejectDepth = 2000;
+
+  /**
+   * Structure: sessionId -> (message type -> bucket)
+   */
+  private final Map<String, Map<String, TokenBucket>> buckets = new ConcurrentHashMap<>();
+
+  /**
+   * Structure: sessionId -> snippetIds with a resync snapshot on its way
+   */
+  private final Map<String, Set<String>> pendingResyncs = new ConcurrentHashMap<>();
+
+  public InboundRateLimiter(
+    SnippetLaneExecutor snippetLaneExecutor,
+    CollaborationMetrics metrics,
+    @Value("${app.collaboration.inbound.rate.default-per-second:20}") double defaultRate,
+    @Value("${app.collaboration.inbound.rate.default-burst:40}") int defaultBurst,
+    @Value("${app.collaboration.inbound.rate.code-per-second:20}") double codeRate,
+    @Value("${app.collaboration.inbound.rate.code-burst:40}") int codeBurst,
+    @Value("${app.collaboration.inbound.rate.ops-per-second:50}") double opsRate,
+    @Value("${app.collaboration.inbound.rate.ops-burst:100}") int opsBurst,
+    @Value("${app.collaboration.inbound.rate.typing-per-second:10}") double typingRate,
+    @Value("${app.collaboration.inbound.rate.typing-burst:20}") int typingBurst,
+    @Value("${app.collaboration.inbound.rate.cursor-per-second:30}") double cursorRate,
+    @Value("${app.collaboration.inbound.rate.cursor-burst:60}") int cursorBurst
+  ) {
+    this.snippetLaneExecutor = snippetLaneExecutor;
+    this.metrics = metrics;
+    this.limits = Map.of(
+      DEFAULT_TYPE, new Limit(defaultRate, defaultBurst),
+      "code", new Limit(codeRate, codeBurst),
+      "ops", new Limit(opsRate, opsBurst),
+      "typing", new Limit(typingRate, typingBurst),
+      "cursor", new Limit(cursorRate, cursorBurst)
+    );
+  }
+
+  /**
+   * Sustained rate and burst size of one bucket, as the spacing of frames in nanos
+   */
+  private static class Limit {
+    final long intervalNanos;
+    final long toleranceNanos;
+
+    Limit(double perSecond, int burst) {
+      this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / Math.max(perSecond, 0.001));
+      this.toleranceNanos = intervalNanos * Math.max(burst - 1, 0);
+    }
+  }
+
+  /**
+   * Lock-free token bucket in GCRA form: a single theoretical arrival time, advanced by CAS
+   * A frame is admitted if the bucket would not run more than the burst ahead of now
+   */
+  private static class TokenBucket {
+    final Limit limit;
+    final AtomicLong theoreticalArrival = new AtomicLong(Long.MIN_VALUE);
+
+    TokenBucket(Limit limit) {
+      this.limit = limit;
+    }
+
+    boolean tryAcquire(long now) {
+      while (true) {
+        long tat = theoreticalArrival.get();
+        long start = tat == Long.MIN_VALUE || tat - now < 0 ? now : tat;
+        if (start - now > limit.toleranceNanos) {
+          return false;
+        }
+        if (theoreticalArrival.compareAndSet(tat, start + limit.intervalNanos)) {
+          return true;
+        }
+      }
+    }
+  }
+
+  @Override
+  public Message<?> preSend(Message<?> message, MessageChannel channel) {
+    SimpMessageType type = SimpMessageHeaderAccessor.getMessageType(message.getHeaders());
+    String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+    if (type == SimpMessageType.DISCONNECT) {
+      if (sessionId != null) {
+        buckets.remove(sessionId);
+        pendingResyncs.remove(sessionId);
+      }
+      return message;
+    }
+    if (!enabled || type != SimpMessageType.MESSAGE || sessionId == null
+        || message.getHeaders().containsKey(BackplaneBridge.ORIGIN_HEADER)) {
+      return message;
+    }
+
+    String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+    String messageType = messageType(destination);
+    if (!admit(message, messageType)) {
+      metrics.increment("collaboration.inbound.shed");
+      metrics.increment("collaboration.inbound.shed." + messageType);
+      log.debug("[Inbound] Shed {} frame from session {}: lane backed up", messageType, sessionId);
+      return rejected(message, messageType, sessionId, destination);
+    }
+
+    Limit limit = limits.getOrDefault(messageType, limits.get(DEFAULT_TYPE));
+    TokenBucket bucket = buckets
+      .computeIfAbsent(sessionId, k -> new ConcurrentHashMap<>())
+      .computeIfAbsent(messageType, k -> new TokenBucket(limit));
+    if (!bucket.tryAcquire(System.nanoTime())) {
+      metrics.increment("collaboration.inbound.rate-limited");
+      metrics.increment("collaboration.inbound.rate-limited." + messageType);
+      log.debug("[Inbound] Rate limited {} frame from session {}", messageType, sessionId);
+      return rejected(message, messageType, sessionId, destination);
+    }
+    return message;
+  }
+
+  /**
+   * What to pass on for a rejected frame: nothing, or for the first rejected edit frame of a
+   * session and snippet, the frame flagged for a resync
+   */
+  private Message<?> rejected(Message<?> message, String messageType, String sessionId, String destination) {
+    if (!EDIT_TYPES.contains(messageType)) {
+      return null;
+    }
+    String snippetId = snippetId(destination);
+    if (!pendingResyncs.computeIfAbsent(sessionId, k -> ConcurrentHashMap.newKeySet()).add(snippetId)) {
+      // The snapshot on its way replaces the text this frame was built on
+      return null;
+    }
+    metrics.increment("collaboration.inbound.resyncs");
+    return MessageBuilder.fromMessage(message).setHeader(RESYNC_HEADER, true).build();
+  }
+
+  /**
+   * Record that the resync snapshot for a flagged frame has been sent, so the session's
+   * edit frames for the snippet are handled normally again
+   */
+  public void resyncSent(String sessionId, String snippetId) {
+    Set<String> snippetIds = pendingResyncs.get(sessionId);
+    if (snippetIds != null) {
+      snippetIds.remove(snippetId);
+    }
+  }
+
+  /**
+   * Admission control on the depth of the lane the frame would be queued on
+   */
+  private boolean admit(Message<?> message, String messageType) {
+    if (CONTROL_TYPES.contains(messageType)) {
+      return true;
+    }
+    int depth = snippetLaneExecutor.getQueueDepth(message);
+    if (depth >= rejectDepth) {
+      return false;
+    }
+    return depth < shedDepth || !EPHEMERAL_TYPES.contains(messageType);
+  }
+
+  /**
+   * snippetId segment of /app/snippet/{snippetId}/{type}; only called for known snippet types
+   */
+  private static String snippetId(String destination) {
+    int start = destination.indexOf("/snippet/") + "/snippet/".length();
+    int end = destination.lastIndexOf('/');
+    return end > start ? destination.substring(start, end) : "";
+  }
+
+  /**
+   * Last segment of /app/snippet/{snippetId}/{type}, or "default" for other destinations
+   * Unknown types share the default bucket, so clients cannot mint buckets or counters
+   */
+  private static String messageType(String destination) {
+    if (destination == null || !destination.contains("/snippet/")) {
+      return DEFAULT_TYPE;
+    }
+    String type = destination.substring(destination.lastIndexOf('/') + 1);
+    return KNOWN_TYPES.contains(type) ? type : DEFAULT_TYPE;
+  }
+}
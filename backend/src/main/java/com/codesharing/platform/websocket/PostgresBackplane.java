@@ -0,0 +1,292 @@
+package com.codesharing.platform.websocket;
+
+import com.codesharing.platform.service.CollaborationMetrics;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Postgres Backplane
+ * Exchanges events between nodes with LISTEN/NOTIFY on the application database
+ * Uses two dedicated connections (listen and notify) outside the Hikari pool so
+ * the backplane never competes with request traffic for pooled connections.
+ * NOTIFY payloads are limited to 8000 bytes, so larger events are sent in chunks.
+ */
+@Slf4j
+public class PostgresBackplane extends AbstractBackplane {
+
+  private static final int MAX_PAYLOAD_BYTES = 7800;
+  // At most 4 bytes per char in UTF-8, leaving room for the chunk header
+  private static final int CHUNK_CHARS = 1800;
+  private static final char CHUNK_MARKER = '#';
+  private static final long CHUNK_TIMEOUT_MILLIS = 30000;
+  private static final int SEND_BATCH = 100;
+  private static final long RECONNECT_DELAY_MILLIS = 2000;
+
+  private final String url;
+  private final String username;
+  private final String password;
+  private final String channel;
+  private final BlockingQueue<String> outbound;
+  // An event never has more chunks than the sender's outbound queue holds
+  private final int maxChunks;
+  private final Map<String, PartialEvent> partials = new ConcurrentHashMap<>();
+
+  private volatile boolean running = true;
+  private Thread listenerThread;
+  private Thread senderThread;
+
+  public PostgresBackplane(ObjectMapper objectMapper, CollaborationMetrics metrics,
+                           String url, String username, String password,
+                           String channel, int queueCapacity) {
+    super(objectMapper, metrics);
+    this.url = url;
+    this.username = username;
+    this.password = password;
+    this.channel = channel;
+    this.outbound = new ArrayBlockingQueue<>(queueCapacity);
+    this.maxChunks = queueCapacity;
+  }
+
+  /**
+   * Chunks of an event that did not fit one notification
+   */
+  private static class PartialEvent {
+    final String[] parts;
+    final long createdAtMillis = System.currentTimeMillis();
+    int received;
+
+    PartialEvent(int count) {
+      this.parts = new String[count];
+    }
+  }
+
+  public void start() {
+    metrics.gauge("collaboration.backplane.outbound.depth", outbound::size);
+    CustomizableThreadFactory threads = new CustomizableThreadFactory("backplane-pg-");
+    threads.setDaemon(true);
+    listenerThread = threads.newThread(this::listenLoop);
+    senderThread = threads.newThread(this::sendLoop);
+    listenerThread.start();
+    senderThread.start();
+    log.info("[Backplane] Postgres backplane on channel '{}' (node {})", channel, getNodeId());
+  }
+
+  public void close() throws InterruptedException {
+    running = false;
+    if (senderThread != null) {
+      senderThread.join(TimeUnit.SECONDS.toMillis(5));
+    }
+    if (listenerThread != null) {
+      listenerThread.join(TimeUnit.SECONDS.toMillis(5));
+    }
+  }
+
+  @Override
+  public boolean forwardsBroadcasts() {
+    return true;
+  }
+
+  /**
+   * Queue the event for the sender thread; broadcasting threads never wait on the database
+   */
+  @Override
+  protected void send(BackplaneEvent event) {
+    String json = serialize(event);
+    List<String> frames = json.getBytes(StandardCharsets.UTF_8).length <= MAX_PAYLOAD_BYTES
+      ? List.of(json)
+      : chunk(json);
+    for (String frame : frames) {
+      if (!outbound.offer(frame)) {
+        metrics.increment("collaboration.backplane.dropped");
+        log.warn("[Backplane] Outbound queue full, dropped {} event", event.type);
+        return;
+      }
+    }
+  }
+
+  private static List<String> chunk(String json) {
+    List<String> parts = new ArrayList<>();
+    for (int start = 0; start < json.length(); ) {
+      int end = Math.min(json.length(), start + CHUNK_CHARS);
+      // Never split a surrogate pair across two notifications
+      if (end < json.length() && Character.isHighSurrogate(json.charAt(end - 1))) {
+        end--;
+      }
+      parts.add(json.substring(start, end));
+      start = end;
+    }
+    String id = UUID.randomUUID().toString();
+    List<String> frames = new ArrayList<>(parts.size());
+    for (int i = 0; i < parts.size(); i++) {
+      frames.add(CHUNK_MARKER + id + ":" + i + ":" + parts.size() + ":" + parts.get(i));
+    }
+    return frames;
+  }
+
+  /**
+   * Send queued frames, one transaction per batch (notifications are delivered on commit, in order)
+   */
+  private void sendLoop() {
+    List<String> batch = new ArrayList<>(SEND_BATCH);
+    Connection connection = null;
+    while (running || !outbound.isEmpty()) {
+      try {
+        String first = running ? outbound.poll(1, TimeUnit.SECONDS) : outbound.poll();
+        if (first == null) {
+          continue;
+        }
+        batch.add(first);
+        outbound.drainTo(batch, SEND_BATCH - 1);
+        if (connection == null) {
+          connection = connect();
+          connection.setAutoCommit(false);
+        }
+        try (PreparedStatement notify = connection.prepareStatement("SELECT pg_notify(?, ?)")) {
+          for (String frame : batch) {
+            notify.setString(1, channel);
+            notify.setString(2, frame);
+            notify.execute();
+          }
+        }
+        connection.commit();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      } catch (SQLException e) {
+        metrics.add("collaboration.backplane.dropped", batch.size());
+        log.error("[Backplane] Failed to publish {} notifications: {}", batch.size(), e.getMessage());
+        close(connection);
+        connection = null;
+        pause();
+      } finally {
+        batch.clear();
+      }
+    }
+    close(connection);
+  }
+
+  private void listenLoop() {
+    Connection connection = null;
+    while (running) {
+      try {
+        if (connection == null) {
+          connection = connect();
+          try (Statement listen = connection.createStatement()) {
+            listen.execute("LISTEN " + channel);
+          }
+        }
+        PGNotification[] notifications = connection.unwrap(PGConnection.class).getNotifications(1000);
+        if (notifications != null) {
+          for (PGNotification notification : notifications) {
+            try {
+              receive(notification.getParameter());
+            } catch (RuntimeException e) {
+              // Anyone can NOTIFY the channel; one bad notification must not stop the listener
+              metrics.increment("collaboration.backplane.malformed");
+              log.warn("[Backplane] Dropping malformed notification: {}", e.getMessage());
+            }
+          }
+        }
+        expirePartials();
+      } catch (SQLException e) {
+        log.error("[Backplane] Listener connection failed: {}", e.getMessage());
+        close(connection);
+        connection = null;
+        pause();
+      }
+    }
+    close(connection);
+  }
+
+  private void receive(String frame) {
+    if (frame.isEmpty() || frame.charAt(0) != CHUNK_MARKER) {
+      dispatch(deserialize(frame));
+      return;
+    }
+    String[] header = frame.substring(1).split(":", 4);
+    if (header.length < 4) {
+      metrics.increment("collaboration.backplane.malformed");
+      return;
+    }
+    int index = parseChunkNumber(header[1]);
+    int count = parseChunkNumber(header[2]);
+    if (index < 0 || count < 1 || count > maxChunks || index >= count) {
+      metrics.increment("collaboration.backplane.malformed");
+      return;
+    }
+    PartialEvent partial = partials.computeIfAbsent(header[0], k -> new PartialEvent(count));
+    if (partial.parts.length != count) {
+      // Chunks of one event disagree on its size
+      partials.remove(header[0], partial);
+      metrics.increment("collaboration.backplane.malformed");
+      return;
+    }
+    if (partial.parts[index] == null) {
+      partial.parts[index] = header[3];
+      partial.received++;
+    }
+    if (partial.received == count) {
+      partials.remove(header[0]);
+      dispatch(deserialize(String.join("", partial.parts)));
+    }
+  }
+
+  private static int parseChunkNumber(String value) {
+    try {
+      return Integer.parseInt(value);
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  private void expirePartials() {
+    long cutoff = System.currentTimeMillis() - CHUNK_TIMEOUT_MILLIS;
+    for (Iterator<PartialEvent> it = partials.values().iterator(); it.hasNext(); ) {
+      if (it.next().createdAtMillis < cutoff) {
+        it.remove();
+        metrics.increment("collaboration.backplane.incomplete");
+      }
+    }
+  }
+
+  private Connection connect() throws SQLException {
+    return DriverManager.getConnection(url, username, password);
+  }
+
+  private static void close(Connection connection) {
+    if (connection != null) {
+      try {
+        connection.close();
+      } catch (SQLException ignored) {
+        // Connection is being discarded
+      }
+    }
+  }
+
+  private void pause() {
+    try {
+      Thread.sleep(RECONNECT_DELAY_MILLIS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      running = false;
+    }
+  }
+}
@@ -0,0 +1,281 @@
+package com.codesharing.platform.websocket;
+
+import com.codesharing.platform.service.CollaborationService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Component;
+
+/**
+ * Presence Broadcaster
+ * Coalesces presence, typing, cursor and metadata broadcasts per snippet
+ * Events only mark a room dirty; each tick sends at most one merged frame per room,
+ * so a burst of joins costs one presence frame instead of one per join
+ * Cursors keep only each user's latest position, so a room holds at most one
+ * pending cursor per user however fast clients send
+ * Metadata frames carry the live document's current title, description, language and tags,
+ * so a title typed keystroke by keystroke is sent once per tick
+ */
+@Slf4j
+@Component
+public class PresenceBroadcaster {
+
+  private final CollaborationService collaborationService;
+  private final SimpMessagingTemplate messagingTemplate;
+  private final SnippetLaneExecutor snippetLaneExecutor;
+  private final ThreadPoolTaskScheduler scheduler;
+
+  /**
+   * Flush interval; 0 or less broadcasts every event immediately
+   */
+  @Value("${app.collaboration.broadcast.tick-ms:100}")
+  private long tickMillis = 100;
+
+  /**
+   * Structure: snippetId -> presence events since the last flush
+   */
+  private final Map<String, PendingPresence> pendingPresence = new ConcurrentHashMap<>();
+
+  /**
+   * Snippets whose typing state changed since the last flush
+   */
+  private final Set<String> pendingTyping = ConcurrentHashMap.newKeySet();
+
+  /**
+   * Structure: snippetId -> (userId -> latest cursor since the last flush)
+   */
+  private final Map<String, Map<String, CollaborationController.CursorMessage>> pendingCursors =
+    new ConcurrentHashMap<>();
+
+  /**
+   * Structure: snippetId -> latest metadata update since the last flush
+   */
+  private final Map<String, CollaborationController.MetadataUpdateMessage> pendingMetadata =
+    new ConcurrentHashMap<>();
+
+  private ScheduledFuture<?> flushTask;
+
+  public PresenceBroadcaster(
+    CollaborationService collaborationService,
+    SimpMessagingTemplate messagingTemplate,
+    SnippetLaneExecutor snippetLaneExecutor,
+    @Qualifier("webSocketTaskScheduler") ThreadPoolTaskScheduler scheduler
+  ) {
+    this.collaborationService = collaborationService;
+    this.messagingTemplate = messagingTemplate;
+    this.snippetLaneExecutor = snippetLaneExecutor;
+    this.scheduler = scheduler;
+  }
+
+  /**
+   * Presence event waiting to be merged into the next frame
+   */
+  private static class PresenceEvent {
+    final String type;
+    final String userId;
+    final String username;
+
+    PresenceEvent(String type, String userId, String username) {
+      this.type = type;
+      this.userId = userId;
+      this.username = username;
+    }
+  }
+
+  private static class PendingPresence {
+    final List<PresenceEvent> events = new ArrayList<>();
+    String snippetTitle = "";
+  }
+
+  @PostConstruct
+  public void start() {
+    if (tickMillis > 0) {
+      flushTask = scheduler.scheduleAtFixedRate(this::flush, Duration.ofMillis(tickMillis));
+      log.info("[Presence] Coalescing presence/typing/cursor/metadata broadcasts every {} ms", tickMillis);
+    }
+  }
+
+  @PreDestroy
+  public void stop() {
+    if (flushTask != null) {
+      flushTask.cancel(false);
+    }
+    flush();
+  }
+
+  /**
+   * Record a presence change (user_joined / user_left) for the next flush
+   */
+  public void presenceChanged(String snippetId, String type, String userId, String username, String snippetTitle) {
+    pendingPresence.compute(snippetId, (id, pending) -> {
+      PendingPresence next = pending != null ? pending : new PendingPresence();
+      next.events.add(new PresenceEvent(type, userId, username != null ? username : ""));
+      if (snippetTitle != null && !snippetTitle.isEmpty()) {
+        next.snippetTitle = snippetTitle;
+      }
+      return next;
+    });
+    if ("user_left".equals(type)) {
+      // Clients drop the cursor of a departed user, don't bring it back
+      pendingCursors.computeIfPresent(snippetId, (id, cursors) -> {
+        cursors.remove(userId);
+        return cursors.isEmpty() ? null : cursors;
+      });
+    }
+    if (tickMillis <= 0) {
+      flushPresence(snippetId);
+    }
+  }
+
+  /**
+   * Record a typing change for the next flush
+   */
+  public void typingChanged(String snippetId) {
+    pendingTyping.add(snippetId);
+    if (tickMillis <= 0) {
+      flushTyping(snippetId);
+    }
+  }
+
+  /**
+   * Record a user's cursor/selection, replacing any position not yet flushed
+   */
+  public void cursorMoved(String snippetId, CollaborationController.CursorMessage cursor) {
+    pendingCursors.compute(snippetId, (id, cursors) -> {
+      Map<String, CollaborationController.CursorMessage> next = cursors != null ? cursors : new HashMap<>();
+      next.put(cursor.userId, cursor);
+      return next;
+    });
+    if (tickMillis <= 0) {
+      flushCursors(snippetId);
+    }
+  }
+
+  /**
+   * Record a metadata update (already applied to the live document) for the next flush
+   */
+  public void metadataChanged(String snippetId, CollaborationController.MetadataUpdateMessage metadata) {
+    pendingMetadata.put(snippetId, metadata);
+    if (tickMillis <= 0) {
+      flushMetadata(snippetId);
+    }
+  }
+
+  /**
+   * Send one merged frame for every dirty room
+   */
+  void flush() {
+    try {
+      for (String snippetId : pendingPresence.keySet()) {
+        flushPresence(snippetId);
+      }
+      for (String snippetId : pendingTyping) {
+        flushTyping(snippetId);
+      }
+      for (String snippetId : pendingCursors.keySet()) {
+        flushCursors(snippetId);
+      }
+      for (String snippetId : pendingMetadata.keySet()) {
+        flushMetadata(snippetId);
+      }
+    } catch (Exception e) {
+      log.error("[Presence] Broadcast flush failed: {}", e.getMessage(), e);
+    }
+  }
+
+  private void flushPresence(String snippetId) {
+    PendingPresence pending = pendingPresence.remove(snippetId);
+    if (pending == null || pending.events.isEmpty()) {
+      return;
+    }
+
+    // The latest event names the frame; the full lists carry everything merged into it
+    PresenceEvent last = pending.events.get(pending.events.size() - 1);
+    List<CollaborationService.ActiveUser> activeUsers = collaborationService.getActiveUsers(snippetId);
+    CollaborationController.PresenceMessage msg = new CollaborationController.PresenceMessage(
+      last.type, last.userId, last.username, activeUsers, pending.snippetTitle
+    );
+    CollaborationService.DocumentMetadata live = collaborationService.getDocumentMetadata(snippetId);
+    if (live != null) {
+      // Unsaved metadata edits, so joiners do not start from the stored title and language
+      msg.ownerTitle = live.title() != null ? live.title() : "";
+      msg.ownerLanguage = live.language() != null ? live.language() : "";
+    }
+    for (PresenceEvent event : pending.events) {
+      if ("user_joined".equals(event.type)) {
+        msg.joinedUserIds.add(event.userId);
+      } else {
+        msg.leftUserIds.add(event.userId);
+      }
+    }
+
+    messagingTemplate.convertAndSend("/topic/snippet/" + snippetId + "/presence", msg);
+    log.debug("[Presence] Flushed {} presence events for snippet {} ({} active users)",
+              pending.events.size(), snippetId, activeUsers.size());
+  }
+
+  private void flushTyping(String snippetId) {
+    if (!pendingTyping.remove(snippetId)) {
+      return;
+    }
+    List<Map<String, String>> typingUsers = collaborationService.getTypingUsersWithNames(snippetId);
+    messagingTemplate.convertAndSend(
+      "/topic/snippet/" + snippetId + "/typing",
+      new CollaborationController.TypingStatusMessage(typingUsers)
+    );
+  }
+
+  private void flushCursors(String snippetId) {
+    // Removed atomically with respect to cursorMoved, later moves start a new map
+    Map<String, CollaborationController.CursorMessage> cursors = pendingCursors.remove(snippetId);
+    if (cursors == null || cursors.isEmpty()) {
+      return;
+    }
+    messagingTemplate.convertAndSend(
+      "/topic/snippet/" + snippetId + "/cursor",
+      new CollaborationController.CursorStatusMessage(new ArrayList<>(cursors.values()))
+    );
+  }
+
+  private void flushMetadata(String snippetId) {
+    CollaborationController.MetadataUpdateMessage latest = pendingMetadata.remove(snippetId);
+    if (latest == null) {
+      return;
+    }
+    // Replay sequences are assigned on the room's lane, in order with code frames
+    snippetLaneExecutor.execute(snippetId, () -> broadcastMetadata(snippetId, latest));
+  }
+
+  private void broadcastMetadata(String snippetId, CollaborationController.MetadataUpdateMessage latest) {
+    CollaborationController.MetadataUpdateMessage msg = new CollaborationController.MetadataUpdateMessage();
+    msg.userId = latest.userId;
+    msg.timestamp = latest.timestamp;
+    CollaborationService.DocumentSnapshot document = collaborationService.getDocumentSnapshot(snippetId);
+    if (document != null) {
+      msg.title = document.title;
+      msg.description = document.description;
+      msg.language = document.language;
+      msg.tags = document.tags;
+    } else {
+      msg.title = latest.title;
+      msg.description = latest.description;
+      msg.language = latest.language;
+      msg.tags = latest.tags;
+    }
+    msg.epoch = collaborationService.getDocumentEpoch(snippetId);
+    msg.sequence = collaborationService.recordFrame(snippetId, "metadata", msg);
+    messagingTemplate.convertAndSend("/topic/snippet/" + snippetId + "/metadata", msg);
+  }
+}
@@ -0,0 +1,163 @@
+package com.codesharing.platform.websocket;
+
+import com.codesharing.platform.service.CollaborationMetrics;
+import com.codesharing.platform.service.CollaborationService;
+import com.codesharing.platform.service.ParticipantAuditWriter;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+/**
+ * Presence Reaper
+ * Removes participants whose connection is gone: immediately on STOMP disconnect,
+ * and periodically for users that stopped sending heartbeats (crashed tabs, lost networks)
+ * Also reclaims per-room state left behind by empty rooms, and live documents of rooms
+ * that moved to another backplane node
+ * Removals run on the room's lane so they never race with the room's inbound messages
+ */
+@Slf4j
+@Component
+public class PresenceReaper {
+
+  private final CollaborationService collaborationService;
+  private final PresenceBroadcaster presenceBroadcaster;
+  private final PresenceReplicator presenceReplicator;
+  private final ParticipantAuditWriter participantAuditWriter;
+  private final CollaborationMetrics metrics;
+  private final SnippetLaneExecutor snippetLanes;
+  private final ThreadPoolTaskScheduler scheduler;
+
+  /**
+   * How often the sweeper runs
+   */
+  @Value("${app.collaboration.reaper.interval-ms:30000}")
+  private long sweepIntervalMillis = 30000;
+
+  /**
+   * Users with no heartbeat or activity for this long are evicted
+   */
+  @Value("${app.collaboration.reaper.idle-ttl-ms:120000}")
+  private long idleTtlMillis = 120000;
+
+  /**
+   * Live documents of empty rooms are kept this long for quick rejoins
+   */
+  @Value("${app.collaboration.reaper.room-ttl-ms:300000}")
+  private long roomTtlMillis = 300000;
+
+  private ScheduledFuture<?> sweepTask;
+
+  public PresenceReaper(
+    CollaborationService collaborationService,
+    PresenceBroadcaster presenceBroadcaster,
+    PresenceReplicator presenceReplicator,
+    ParticipantAuditWriter participantAuditWriter,
+    CollaborationMetrics metrics,
+    SnippetLaneExecutor snippetLanes,
+    @Qualifier("webSocketTaskScheduler") ThreadPoolTaskScheduler scheduler
+  ) {
+    this.collaborationService = collaborationService;
+    this.presenceBroadcaster = presenceBroadcaster;
+    this.presenceReplicator = presenceReplicator;
+    this.participantAuditWriter = participantAuditWriter;
+    this.metrics = metrics;
+    this.snippetLanes = snippetLanes;
+    this.scheduler = scheduler;
+  }
+
+  @PostConstruct
+  public void start() {
+    metrics.gauge("collaboration.rooms.active", collaborationService::getActiveRoomCount);
+    metrics.gauge("collaboration.documents.live", collaborationService::getLiveDocumentCount);
+    if (sweepIntervalMillis > 0) {
+      sweepTask = scheduler.scheduleAtFixedRate(this::sweep, Duration.ofMillis(sweepIntervalMillis));
+      log.info("[Reaper] Sweeping idle users every {} ms (idle TTL {} ms, room TTL {} ms)",
+               sweepIntervalMillis, idleTtlMillis, roomTtlMillis);
+    }
+  }
+
+  @PreDestroy
+  public void stop() {
+    if (sweepTask != null) {
+      sweepTask.cancel(false);
+    }
+  }
+
+  /**
+   * Treat a closed WebSocket as a leave for every room the session had joined
+   */
+  @EventListener
+  public void handleSessionDisconnect(SessionDisconnectEvent event) {
+    String sessionId = event.getSessionId();
+    Map<String, String> bindings = collaborationService.releaseSession(sessionId);
+    bindings.forEach((snippetId, userId) -> snippetLanes.execute(snippetId, () -> {
+      CollaborationService.Departure departure = collaborationService.detachSession(sessionId, snippetId, userId);
+      if (departure != null) {
+        log.info("[Reaper] Session {} disconnected, {} left snippet {}", sessionId, userId, snippetId);
+        metrics.increment("collaboration.reaper.disconnect.users");
+        departed(departure);
+      }
+    }));
+  }
+
+  /**
+   * Evict idle users and reclaim abandoned room state
+   */
+  void sweep() {
+    try {
+      metrics.increment("collaboration.reaper.sweeps");
+      long cutoff = System.currentTimeMillis() - idleTtlMillis;
+      for (CollaborationService.Departure idle : collaborationService.findIdleUsers(cutoff)) {
+        snippetLanes.execute(idle.snippetId, () -> {
+          if (collaborationService.evictIfIdle(idle.snippetId, idle.userId, cutoff)) {
+            log.info("[Reaper] Evicted idle participant {} from snippet {}", idle.userId, idle.snippetId);
+            metrics.increment("collaboration.reaper.idle.users");
+            departed(idle);
+          }
+        });
+      }
+      for (String snippetId : collaborationService.findAbandonedRooms()) {
+        snippetLanes.execute(snippetId, () -> {
+          int reclaimed = collaborationService.removeAbandonedRoom(snippetId, roomTtlMillis);
+          if (!collaborationService.hasDocument(snippetId)) {
+            metrics.remove(SlowConsumerSessionDecorator.SNIPPET_EPISODES, snippetId);
+          }
+          if (reclaimed > 0) {
+            log.debug("[Reaper] Reclaimed {} entries of empty room {}", reclaimed, snippetId);
+            metrics.add("collaboration.reaper.rooms.entries", reclaimed);
+          }
+        });
+      }
+      for (String snippetId : collaborationService.getDocumentIds()) {
+        if (!presenceReplicator.ownsRoom(snippetId)) {
+          snippetLanes.execute(snippetId, () -> {
+            if (!presenceReplicator.ownsRoom(snippetId) && collaborationService.releaseDocument(snippetId)) {
+              log.info("[Reaper] Snippet {} is owned by another node, released its live document", snippetId);
+              metrics.increment("collaboration.reaper.documents.moved");
+            }
+          });
+        }
+      }
+    } catch (Exception e) {
+      log.error("[Reaper] Sweep failed: {}", e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Broadcast the departure and close the participant's admin record
+   */
+  private void departed(CollaborationService.Departure departure) {
+    presenceBroadcaster.presenceChanged(departure.snippetId, "user_left", departure.userId, departure.username, "");
+    presenceReplicator.localLeft(departure.snippetId, departure.userId);
+    participantAuditWriter.recordLeave(departure.snippetId, departure.userId);
+  }
+}
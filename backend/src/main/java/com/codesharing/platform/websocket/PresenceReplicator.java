@@ -0,0 +1,205 @@
+package com.codesharing.platform.websocket;
+
+import com.codesharing.platform.service.CollaborationMetrics;
+import com.codesharing.platform.service.CollaborationService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Component;
+
+/**
+ * Presence Replicator
+ * Mirrors room membership across backend nodes over the backplane, so every node
+ * reports the full participant list of a room regardless of where users connected
+ * Nodes announce themselves with heartbeats; users of a node that stops sending
+ * them are removed. A newly seen node is sent a heartbeat and this node's participants,
+ * so it learns about the cluster without waiting for the next heartbeat round.
+ * Rooms' live documents are spread over the live nodes by rendezvous hashing of the
+ * snippet id; a node takes rooms only once it has been up for a full heartbeat interval,
+ * so a starting node hears from its peers before it claims any.
+ */
+@Slf4j
+@Component
+public class PresenceReplicator {
+
+  private final CollaborationBackplane backplane;
+  private final CollaborationService collaborationService;
+  private final PresenceBroadcaster presenceBroadcaster;
+  private final SnippetLaneExecutor snippetLanes;
+  private final CollaborationMetrics metrics;
+  private final ThreadPoolTaskScheduler scheduler;
+
+  /**
+   * Node id -> time the node was last heard from
+   */
+  private final Map<String, Long> nodes = new ConcurrentHashMap<>();
+
+  /**
+   * Node id -> time the node started, as stamped on its events
+   */
+  private final Map<String, Long> nodeStarts = new ConcurrentHashMap<>();
+
+  @Value("${app.collaboration.backplane.heartbeat-ms:5000}")
+  private long heartbeatMillis = 5000;
+
+  /**
+   * Nodes not heard from for this long are considered gone
+   */
+  @Value("${app.collaboration.backplane.node-timeout-ms:15000}")
+  private long nodeTimeoutMillis = 15000;
+
+  private ScheduledFuture<?> heartbeatTask;
+
+  public PresenceReplicator(
+    CollaborationBackplane backplane,
+    CollaborationService collaborationService,
+    PresenceBroadcaster presenceBroadcaster,
+    SnippetLaneExecutor snippetLanes,
+    CollaborationMetrics metrics,
+    @Qualifier("webSocketTaskScheduler") ThreadPoolTaskScheduler scheduler
+  ) {
+    this.backplane = backplane;
+    this.collaborationService = collaborationService;
+    this.presenceBroadcaster = presenceBroadcaster;
+    this.snippetLanes = snippetLanes;
+    this.metrics = metrics;
+    this.scheduler = scheduler;
+  }
+
+  @PostConstruct
+  public void start() {
+    metrics.gauge("collaboration.backplane.nodes", () -> nodes.size() + 1);
+    backplane.subscribe(this::onEvent);
+    if (heartbeatMillis > 0) {
+      heartbeatTask = scheduler.scheduleAtFixedRate(this::heartbeat, Duration.ofMillis(heartbeatMillis));
+    }
+  }
+
+  @PreDestroy
+  public void stop() {
+    if (heartbeatTask != null) {
+      heartbeatTask.cancel(false);
+    }
+  }
+
+  /**
+   * Announce a user that joined a room on this node
+   */
+  public void localJoined(String snippetId, String userId, String username) {
+    backplane.publish(BackplaneEvent.presence(BackplaneEvent.Type.PRESENCE_JOIN, snippetId, userId, username));
+  }
+
+  /**
+   * Announce a user that left a room on this node
+   */
+  public void localLeft(String snippetId, String userId) {
+    backplane.publish(BackplaneEvent.presence(BackplaneEvent.Type.PRESENCE_LEAVE, snippetId, userId, null));
+  }
+
+  /**
+   * Id of the node that owns a room's live document, this node if it is alone
+   * Chosen among live nodes up for at least one heartbeat interval, so a node joining
+   * moves only the rooms it wins, and only after it has heard the cluster's heartbeats.
+   * When no node is that old (the whole cluster is starting) all live nodes are candidates.
+   */
+  public String getRoomOwner(String snippetId) {
+    long hash = mix(snippetId.hashCode());
+    long matureBefore = System.currentTimeMillis() - heartbeatMillis;
+    String selfId = backplane.getNodeId();
+    boolean selfMature = backplane.getStartedAt() <= matureBefore;
+    String owner = selfId;
+    long ownerScore = mix(hash ^ selfId.hashCode());
+    boolean ownerMature = selfMature;
+    for (Map.Entry<String, Long> node : nodeStarts.entrySet()) {
+      boolean mature = node.getValue() <= matureBefore;
+      long score = mix(hash ^ node.getKey().hashCode());
+      if (mature != ownerMature
+          ? mature
+          : score > ownerScore || (score == ownerScore && node.getKey().compareTo(owner) < 0)) {
+        owner = node.getKey();
+        ownerScore = score;
+        ownerMature = mature;
+      }
+    }
+    return owner;
+  }
+
+  /**
+   * Whether this node owns the room's live document
+   */
+  public boolean ownsRoom(String snippetId) {
+    return backplane.getNodeId().equals(getRoomOwner(snippetId));
+  }
+
+  /**
+   * 64-bit finalizer of MurmurHash3, spreads node and room hashes over the whole range
+   */
+  private static long mix(long value) {
+    value ^= value >>> 33;
+    value *= 0xff51afd7ed558ccdL;
+    value ^= value >>> 33;
+    value *= 0xc4ceb9fe1a85ec53L;
+    value ^= value >>> 33;
+    return value;
+  }
+
+  private void heartbeat() {
+    try {
+      backplane.publish(BackplaneEvent.heartbeat());
+      long cutoff = System.currentTimeMillis() - nodeTimeoutMillis;
+      nodes.forEach((nodeId, lastSeen) -> {
+        if (lastSeen < cutoff && nodes.remove(nodeId, lastSeen)) {
+          nodeStarts.remove(nodeId);
+          log.warn("[Backplane] Node {} timed out, removing its participants", nodeId);
+          metrics.increment("collaboration.backplane.nodes.lost");
+          removeNode(nodeId);
+        }
+      });
+    } catch (Exception e) {
+      log.error("[Backplane] Heartbeat failed: {}", e.getMessage(), e);
+    }
+  }
+
+  private void onEvent(BackplaneEvent event) {
+    nodeStarts.put(event.nodeId, event.nodeStartedAt);
+    if (nodes.put(event.nodeId, System.currentTimeMillis()) == null) {
+      log.info("[Backplane] Discovered node {}", event.nodeId);
+      backplane.publish(BackplaneEvent.heartbeat());
+      announceLocalParticipants();
+    }
+    switch (event.type) {
+      case PRESENCE_JOIN -> snippetLanes.execute(event.snippetId, () ->
+        collaborationService.joinRemote(event.snippetId, event.userId, event.username, event.nodeId));
+      case PRESENCE_LEAVE -> snippetLanes.execute(event.snippetId, () ->
+        collaborationService.leaveRemote(event.snippetId, event.userId, event.nodeId));
+      default -> { }
+    }
+  }
+
+  /**
+   * Bring a newly seen node up to date with the users connected here
+   */
+  private void announceLocalParticipants() {
+    for (CollaborationService.Departure participant : collaborationService.findParticipants(null)) {
+      localJoined(participant.snippetId, participant.userId, participant.username);
+    }
+  }
+
+  private void removeNode(String nodeId) {
+    for (CollaborationService.Departure participant : collaborationService.findParticipants(nodeId)) {
+      snippetLanes.execute(participant.snippetId, () -> {
+        if (collaborationService.leaveRemote(participant.snippetId, participant.userId, nodeId)) {
+          presenceBroadcaster.presenceChanged(participant.snippetId, "user_left",
+                                              participant.userId, participant.username, "");
+        }
+      });
+    }
+  }
+}
@@ -0,0 +1,209 @@
+package com.codesharing.platform.websocket;
+
+import com.codesharing.platform.service.CollaborationMetrics;
+import jakarta.annotation.PostConstruct;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.AbstractSubscribableChannel;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+
+/**
+ * Room Router
+ * Keeps each room's live document on one node, picked by the PresenceReplicator from the
+ * live nodes, so edits from users connected to different nodes are rebased onto one
+ * revision history, replayed from one sequence and saved by one autosaver
+ * Edit, metadata and sync frames sent to another node are forwarded to the owner as they are,
+ * and handled there as if the client were connected to it. The owner's broadcasts reach the
+ * other nodes through the BackplaneBridge; its replies to a forwarded session are sent back
+ * to the node the session is connected to. Presence, typing and cursors stay on the node
+ * the client is connected to. Nothing is forwarded on a single node.
+ */
+@Slf4j
+@Component
+public class RoomRouter implements ChannelInterceptor {
+
+  private static final String ROOM_PREFIX = "/app/snippet/";
+  private static final String QUEUE_PREFIX = "/queue/";
+
+  /**
+   * Frame types that read or change the live document
+   */
+  private static final Set<String> DOCUMENT_TYPES = Set.of("code", "ops", "metadata", "sync-state", "resume");
+
+  /**
+   * Most remote sessions remembered for routing replies; the least recently forwarded go first
+   */
+  private static final int MAX_REMOTE_SESSIONS = 10000;
+
+  private final CollaborationBackplane backplane;
+  private final PresenceReplicator presenceReplicator;
+  private final InboundRateLimiter inboundRateLimiter;
+  private final AbstractSubscribableChannel clientInboundChannel;
+  private final AbstractSubscribableChannel brokerChannel;
+  private final CollaborationMetrics metrics;
+
+  /**
+   * Structure: sessionId -> node the session is connected to, for sessions whose frames
+   * were forwarded to this node
+   */
+  private final Map<String, String> remoteSessions = Collections.synchronizedMap(
+    new LinkedHashMap<>(256, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+        return size() > MAX_REMOTE_SESSIONS;
+      }
+    }
+  );
+
+  public RoomRouter(
+    CollaborationBackplane backplane,
+    PresenceReplicator presenceReplicator,
+    InboundRateLimiter inboundRateLimiter,
+    @Qualifier("clientInboundChannel") AbstractSubscribableChannel clientInboundChannel,
+    @Qualifier("brokerChannel") AbstractSubscribableChannel brokerChannel,
+    CollaborationMetrics metrics
+  ) {
+    this.backplane = backplane;
+    this.presenceReplicator = presenceReplicator;
+    this.inboundRateLimiter = inboundRateLimiter;
+    this.clientInboundChannel = clientInboundChannel;
+    this.brokerChannel = brokerChannel;
+    this.metrics = metrics;
+  }
+
+  @PostConstruct
+  public void start() {
+    // Added after the rate limiter, so only admitted frames are forwarded
+    clientInboundChannel.addInterceptor(this);
+    if (backplane.forwardsBroadcasts()) {
+      // With a broker relay, replies to sessions of other nodes go through the broker instead
+      brokerChannel.addInterceptor(new ChannelInterceptor() {
+        @Override
+        public Message<?> preSend(Message<?> message, MessageChannel channel) {
+          return forwardReply(message);
+        }
+      });
+    }
+    backplane.subscribe(this::onEvent);
+  }
+
+  /**
+   * Whether this node owns the room's live document
+   */
+  public boolean isOwner(String snippetId) {
+    return presenceReplicator.ownsRoom(snippetId);
+  }
+
+  /**
+   * Forward a client's document frame to the owner of its room
+   */
+  @Override
+  public Message<?> preSend(Message<?> message, MessageChannel channel) {
+    SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+    String destination = accessor.getDestination();
+    String sessionId = accessor.getSessionId();
+    if (accessor.getMessageType() != SimpMessageType.MESSAGE
+        || destination == null || !destination.startsWith(ROOM_PREFIX)
+        || sessionId == null
+        || accessor.getHeader(BackplaneBridge.ORIGIN_HEADER) != null
+        || !(message.getPayload() instanceof byte[] body)) {
+      return message;
+    }
+    int typeStart = destination.lastIndexOf('/');
+    String snippetId = destination.substring(ROOM_PREFIX.length(), Math.max(typeStart, ROOM_PREFIX.length()));
+    if (!DOCUMENT_TYPES.contains(destination.substring(typeStart + 1))) {
+      return message;
+    }
+    String ownerId = presenceReplicator.getRoomOwner(snippetId);
+    if (backplane.getNodeId().equals(ownerId)) {
+      return message;
+    }
+
+    boolean resync = Boolean.TRUE.equals(accessor.getHeader(InboundRateLimiter.RESYNC_HEADER));
+    MimeType contentType = accessor.getContentType();
+    backplane.publish(BackplaneEvent.roomMessage(
+      ownerId, snippetId, sessionId, destination,
+      contentType != null ? contentType.toString() : null,
+      Base64.getEncoder().encodeToString(body), resync
+    ));
+    if (resync) {
+      // The owner answers the flagged frame with the snapshot
+      inboundRateLimiter.resyncSent(sessionId, snippetId);
+    }
+    metrics.increment("collaboration.backplane.room-messages.out");
+    log.debug("[Backplane] Forwarded {} from session {} to owner node", destination, sessionId);
+    return null;
+  }
+
+  /**
+   * Send a reply the owner made to a forwarded session back to the session's node
+   */
+  private Message<?> forwardReply(Message<?> message) {
+    SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+    String destination = accessor.getDestination();
+    String sessionId = accessor.getSessionId();
+    if (accessor.getMessageType() != SimpMessageType.MESSAGE
+        || destination == null || !destination.startsWith(QUEUE_PREFIX)
+        || sessionId == null
+        || accessor.getHeader(BackplaneBridge.ORIGIN_HEADER) != null
+        || !(message.getPayload() instanceof byte[] body)) {
+      return message;
+    }
+    String nodeId = remoteSessions.get(sessionId);
+    if (nodeId == null) {
+      return message;
+    }
+    MimeType contentType = accessor.getContentType();
+    backplane.publish(BackplaneEvent.sessionMessage(
+      nodeId, sessionId, destination,
+      contentType != null ? contentType.toString() : null,
+      Base64.getEncoder().encodeToString(body)
+    ));
+    metrics.increment("collaboration.backplane.session-messages.out");
+    // Passed on as well, so the sender does not see a failed send; no local session subscribes to it
+    return message;
+  }
+
+  private void onEvent(BackplaneEvent event) {
+    if ((event.type != BackplaneEvent.Type.ROOM_MESSAGE && event.type != BackplaneEvent.Type.SESSION_MESSAGE)
+        || !backplane.getNodeId().equals(event.targetNodeId)
+        || event.sessionId == null || event.destination == null || event.payload == null) {
+      return;
+    }
+    boolean room = event.type == BackplaneEvent.Type.ROOM_MESSAGE;
+    SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+    accessor.setDestination(event.destination);
+    accessor.setSessionId(event.sessionId);
+    accessor.setSessionAttributes(new HashMap<>());
+    if (event.contentType != null) {
+      accessor.setContentType(MimeType.valueOf(event.contentType));
+    }
+    accessor.setHeader(BackplaneBridge.ORIGIN_HEADER, event.nodeId);
+    if (Boolean.TRUE.equals(event.resync)) {
+      accessor.setHeader(InboundRateLimiter.RESYNC_HEADER, true);
+    }
+    Message<byte[]> message = MessageBuilder.createMessage(
+      Base64.getDecoder().decode(event.payload), accessor.getMessageHeaders());
+    if (room) {
+      remoteSessions.put(event.sessionId, event.nodeId);
+      clientInboundChannel.send(message);
+      metrics.increment("collaboration.backplane.room-messages.in");
+    } else {
+      brokerChannel.send(message);
+      metrics.increment("collaboration.backplane.session-messages.in");
+    }
+  }
+}
@@ -0,0 +1,81 @@
+package com.codesharing.platform.websocket;
+
+import com.codesharing.platform.service.CollaborationMetrics;
+import com.codesharing.platform.service.SnippetSearchIndex;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Search Index Replicator
+ * Keeps every node's SnippetSearchIndex in step with writes made on other nodes:
+ * snippet ids written or deleted here are announced over the backplane, and announced
+ * ids are re-read from MongoDB and reindexed, off the backplane's delivery thread
+ * Announcements of a snippet that arrive while its refresh is still queued are folded into it
+ */
+@Slf4j
+@Component
+public class SearchIndexReplicator {
+
+  private final CollaborationBackplane backplane;
+  private final SnippetSearchIndex snippetSearchIndex;
+  private final CollaborationMetrics metrics;
+
+  /**
+   * Snippets with a refresh queued and not yet started
+   */
+  private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+  private ExecutorService refresher;
+
+  public SearchIndexReplicator(
+    CollaborationBackplane backplane,
+    SnippetSearchIndex snippetSearchIndex,
+    CollaborationMetrics metrics
+  ) {
+    this.backplane = backplane;
+    this.snippetSearchIndex = snippetSearchIndex;
+    this.metrics = metrics;
+  }
+
+  @PostConstruct
+  public void start() {
+    refresher = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("search-index-refresh-"));
+    metrics.gauge("snippet-search.refresh.pending", pending::size);
+    snippetSearchIndex.setChangeListener(snippetId ->
+      backplane.publish(BackplaneEvent.searchIndexChanged(snippetId)));
+    backplane.subscribe(this::onEvent);
+  }
+
+  @PreDestroy
+  public void stop() {
+    snippetSearchIndex.setChangeListener(null);
+    refresher.shutdownNow();
+  }
+
+  private void onEvent(BackplaneEvent event) {
+    if (event.type != BackplaneEvent.Type.SEARCH_INDEX_CHANGED || event.snippetId == null
+        || !pending.add(event.snippetId)) {
+      return;
+    }
+    refresher.execute(() -> refresh(event.snippetId));
+  }
+
+  private void refresh(String snippetId) {
+    // Removed first, so a change announced while reading is refreshed again
+    pending.remove(snippetId);
+    try {
+      snippetSearchIndex.refresh(snippetId);
+      metrics.increment("snippet-search.refresh.remote");
+    } catch (Exception e) {
+      metrics.increment("snippet-search.refresh.failed");
+      log.warn("[Search] Could not refresh snippet {} changed on another node: {}", snippetId, e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,300 @@
+package com.codesharing.platform.websocket;
+
+import com.codesharing.platform.service.CollaborationMetrics;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+/**
+ * Slow Consumer Session Decorator
+ * Thread-safe sending with per-session send time and buffer size limits, like Spring's
+ * ConcurrentWebSocketSessionDecorator, plus a slow-consumer policy for when a
+ * client cannot keep up with the room:
+ *   DROP_STALE - buffered full-code and typing frames superseded by a newer frame for the
+ *                same destination are dropped, so the client catches up on the latest state;
+ *                the session is disconnected only if that does not bring the buffer under limit
+ *   DISCONNECT - the session is closed as soon as the buffer limit is exceeded
+ * A send blocked for longer than the time limit always disconnects the session.
+ */
+@Slf4j
+public class SlowConsumerSessionDecorator extends WebSocketSessionDecorator {
+
+  public enum Policy { DROP_STALE, DISCONNECT }
+
+  /**
+   * Keyed counter family of slow-consumer episodes per snippet; removed by the reaper with the room
+   */
+  public static final String SNIPPET_EPISODES = "collaboration.slow-consumers.snippet";
+
+  private static final String SNIPPET_TOPIC_PREFIX = "/topic/snippet/";
+  private static final String DESTINATION_HEADER = "\ndestination:";
+  // STOMP headers are at the start of the frame, no need to decode whole bodies
+  private static final int HEADER_SCAN_BYTES = 512;
+  // Destinations where each frame carries the complete state, so only the newest matters
+  private static final Set<String> SUPERSEDED_CHANNELS = Set.of("code", "typing");
+
+  private final int sendTimeLimit;
+  private final int bufferSizeLimit;
+  private final Policy policy;
+  private final CollaborationMetrics metrics;
+
+  private final Queue<Frame> buffer = new LinkedBlockingQueue<>();
+  private final AtomicInteger bufferSize = new AtomicInteger();
+  private final Lock flushLock = new ReentrantLock();
+  private final Lock closeLock = new ReentrantLock();
+
+  private volatile long sendStartTime;
+  private volatile boolean limitExceeded;
+  private volatile boolean closeInProgress;
+  // Set while the session is behind; cleared once the buffer drains
+  private volatile boolean slow;
+
+  public SlowConsumerSessionDecorator(WebSocketSession delegate, int sendTimeLimit, int bufferSizeLimit,
+                                      Policy policy, CollaborationMetrics metrics) {
+    super(delegate);
+    this.sendTimeLimit = sendTimeLimit;
+    this.bufferSizeLimit = bufferSizeLimit;
+    this.policy = policy;
+    this.metrics = metrics;
+  }
+
+  /**
+   * Buffered outbound frame; its STOMP destination is parsed only when needed
+   */
+  private static class Frame {
+    final WebSocketMessage<?> message;
+    private String destination;
+    private boolean parsed;
+
+    Frame(WebSocketMessage<?> message) {
+      this.message = message;
+    }
+
+    String destination() {
+      if (!parsed) {
+        destination = parseDestination(message);
+        parsed = true;
+      }
+      return destination;
+    }
+  }
+
+  public int getBufferSize() {
+    return bufferSize.get();
+  }
+
+  public long getTimeSinceSendStarted() {
+    long start = sendStartTime;
+    return start > 0 ? System.currentTimeMillis() - start : 0;
+  }
+
+  @Override
+  public void sendMessage(WebSocketMessage<?> message) throws IOException {
+    if (shouldNotSend()) {
+      return;
+    }
+    buffer.add(new Frame(message));
+    bufferSize.addAndGet(message.getPayloadLength());
+
+    do {
+      if (!tryFlushMessageBuffer()) {
+        checkSessionLimits();
+        break;
+      }
+    } while (!buffer.isEmpty() && !shouldNotSend());
+  }
+
+  private boolean shouldNotSend() {
+    return limitExceeded || closeInProgress;
+  }
+
+  private boolean tryFlushMessageBuffer() throws IOException {
+    if (!flushLock.tryLock()) {
+      return false;
+    }
+    try {
+      while (true) {
+        Frame frame = buffer.poll();
+        if (frame == null || shouldNotSend()) {
+          break;
+        }
+        bufferSize.addAndGet(-frame.message.getPayloadLength());
+        sendStartTime = System.currentTimeMillis();
+        getDelegate().sendMessage(frame.message);
+        sendStartTime = 0;
+      }
+      if (slow && buffer.isEmpty()) {
+        slow = false;
+        log.debug("[Outbound] Session {} caught up", getId());
+      }
+      return true;
+    } finally {
+      sendStartTime = 0;
+      flushLock.unlock();
+    }
+  }
+
+  private void checkSessionLimits() {
+    if (shouldNotSend() || !closeLock.tryLock()) {
+      return;
+    }
+    try {
+      if (getTimeSinceSendStarted() > sendTimeLimit) {
+        markSlow();
+        limitExceeded(String.format("Send time %d (ms) for session '%s' exceeded the allowed limit %d",
+                                    getTimeSinceSendStarted(), getId(), sendTimeLimit));
+      } else if (bufferSize.get() > bufferSizeLimit) {
+        markSlow();
+        if (policy == Policy.DROP_STALE) {
+          dropStaleFrames();
+        }
+        if (bufferSize.get() > bufferSizeLimit) {
+          limitExceeded(String.format("Buffer size %d bytes for session '%s' exceeds the allowed limit %d",
+                                      bufferSize.get(), getId(), bufferSizeLimit));
+        }
+      }
+    } finally {
+      closeLock.unlock();
+    }
+  }
+
+  /**
+   * Drop buffered frames that a newer frame for the same destination supersedes
+   */
+  private void dropStaleFrames() {
+    Map<String, Frame> newest = new HashMap<>();
+    for (Frame frame : buffer) {
+      if (isSuperseded(frame.destination())) {
+        newest.put(frame.destination(), frame);
+      }
+    }
+    int dropped = 0;
+    for (Frame frame : buffer) {
+      String destination = frame.destination();
+      // remove() fails if the flushing thread took the frame meanwhile
+      if (destination != null && newest.containsKey(destination) && newest.get(destination) != frame
+          && buffer.remove(frame)) {
+        bufferSize.addAndGet(-frame.message.getPayloadLength());
+        dropped++;
+      }
+    }
+    if (dropped > 0) {
+      metrics.add("collaboration.slow-consumers.dropped-frames", dropped);
+      log.debug("[Outbound] Dropped {} stale frames for slow session {}", dropped, getId());
+    }
+  }
+
+  /**
+   * Count a new slow-consumer episode, per snippet the session is receiving frames for
+   */
+  private void markSlow() {
+    if (slow) {
+      return;
+    }
+    slow = true;
+    metrics.increment("collaboration.slow-consumers.episodes");
+    Set<String> snippetIds = new HashSet<>();
+    for (Frame frame : buffer) {
+      String snippetId = snippetIdOf(frame.destination());
+      if (snippetId != null && snippetIds.add(snippetId)) {
+        metrics.increment(SNIPPET_EPISODES, snippetId);
+      }
+    }
+    log.info("[Outbound] Session {} is a slow consumer ({} bytes buffered, policy {})",
+             getId(), bufferSize.get(), policy);
+  }
+
+  private void limitExceeded(String reason) {
+    limitExceeded = true;
+    buffer.clear();
+    bufferSize.set(0);
+    metrics.increment("collaboration.slow-consumers.disconnected");
+    throw new SessionLimitExceededException(reason, CloseStatus.SESSION_NOT_RELIABLE);
+  }
+
+  @Override
+  public void close(CloseStatus status) throws IOException {
+    closeLock.lock();
+    try {
+      if (closeInProgress) {
+        return;
+      }
+      if (!CloseStatus.SESSION_NOT_RELIABLE.equals(status)) {
+        try {
+          checkSessionLimits();
+        } catch (SessionLimitExceededException ex) {
+          // Ignore
+        }
+        if (limitExceeded) {
+          status = CloseStatus.SESSION_NOT_RELIABLE;
+        }
+      }
+      closeInProgress = true;
+      super.close(status);
+    } finally {
+      closeLock.unlock();
+    }
+  }
+
+  private static boolean isSuperseded(String destination) {
+    if (destination == null || !destination.startsWith(SNIPPET_TOPIC_PREFIX)) {
+      return false;
+    }
+    return SUPERSEDED_CHANNELS.contains(destination.substring(destination.lastIndexOf('/') + 1));
+  }
+
+  private static String snippetIdOf(String destination) {
+    if (destination == null || !destination.startsWith(SNIPPET_TOPIC_PREFIX)) {
+      return null;
+    }
+    int start = SNIPPET_TOPIC_PREFIX.length();
+    int end = destination.indexOf('/', start);
+    return destination.substring(start, end >= 0 ? end : destination.length());
+  }
+
+  /**
+   * Destination header of a STOMP MESSAGE frame, null for other frames
+   */
+  private static String parseDestination(WebSocketMessage<?> message) {
+    String head;
+    if (message instanceof TextMessage text) {
+      String payload = text.getPayload();
+      head = payload.substring(0, Math.min(payload.length(), HEADER_SCAN_BYTES));
+    } else if (message instanceof BinaryMessage binary) {
+      ByteBuffer payload = binary.getPayload().duplicate();
+      byte[] bytes = new byte[Math.min(payload.remaining(), HEADER_SCAN_BYTES)];
+      payload.get(bytes);
+      head = new String(bytes, StandardCharsets.UTF_8);
+    } else {
+      return null;
+    }
+    if (!head.startsWith("MESSAGE")) {
+      return null;
+    }
+    int headersEnd = head.indexOf("\n\n");
+    int start = head.indexOf(DESTINATION_HEADER);
+    if (start < 0 || (headersEnd >= 0 && start > headersEnd)) {
+      return null;
+    }
+    start += DESTINATION_HEADER.length();
+    int end = head.indexOf('\n', start);
+    return end >= 0 ? head.substring(start, end) : null;
+  }
+}
@@ -0,0 +1,188 @@
+package com.codesharing.platform.websocket;
+
+import com.codesharing.platform.service.CollaborationMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.support.MessageHandlingRunnable;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Snippet Lane Executor
+ * Striped single-writer executor for STOMP inbound handling
+ * Every message for a snippet hashes to the same lane and lanes run their tasks
+ * one at a time in arrival order, so room state is only ever mutated by one thread
+ * at a time. Lanes share a fixed worker pool, so different rooms use all cores.
+ */
+@Slf4j
+@Component
+public class SnippetLaneExecutor {
+
+  private static final String SNIPPET_SEGMENT = "/snippet/";
+
+  /**
+   * Tasks a lane runs before yielding its worker to other lanes
+   */
+  private static final int MAX_BATCH = 64;
+
+  private final CollaborationMetrics metrics;
+  private final Lane[] lanes;
+  private final ExecutorService workers;
+  private final int workerCount;
+
+  public SnippetLaneExecutor(
+    CollaborationMetrics metrics,
+    @Value("${app.collaboration.lanes.count:64}") int laneCount,
+    @Value("${app.collaboration.lanes.threads:0}") int threads
+  ) {
+    this.metrics = metrics;
+    this.lanes = new Lane[Math.max(1, laneCount)];
+    for (int i = 0; i < lanes.length; i++) {
+      lanes[i] = new Lane();
+    }
+    this.workerCount = threads > 0 ? threads : Runtime.getRuntime().availableProcessors() * 2;
+    this.workers = Executors.newFixedThreadPool(workerCount, new CustomizableThreadFactory("snippet-lane-"));
+  }
+
+  @PostConstruct
+  public void registerMetrics() {
+    for (int i = 0; i < lanes.length; i++) {
+      Lane lane = lanes[i];
+      metrics.gauge("collaboration.lanes." + i + ".depth", lane.depth::get);
+    }
+    metrics.gauge("collaboration.lanes.max-depth", this::getMaxQueueDepth);
+    log.info("[Lanes] {} snippet lanes on {} worker threads", lanes.length, workerCount);
+  }
+
+  @PreDestroy
+  public void shutdown() throws InterruptedException {
+    workers.shutdown();
+    workers.awaitTermination(10, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Run a task in the lane owning the given snippet
+   */
+  public void execute(String snippetId, Runnable task) {
+    lanes[laneIndex(snippetId)].submit(task);
+  }
+
+  /**
+   * Route a channel task by its destination's snippet id (or session id if it has none)
+   */
+  public void execute(Runnable task) {
+    String key = null;
+    if (task instanceof MessageHandlingRunnable handlingTask) {
+      key = routingKey(handlingTask.getMessage());
+    }
+    if (key == null) {
+      workers.execute(task);
+      return;
+    }
+    lanes[laneIndex(key)].submit(task);
+  }
+
+  /**
+   * Largest number of queued tasks in any lane
+   */
+  public int getMaxQueueDepth() {
+    int max = 0;
+    for (Lane lane : lanes) {
+      max = Math.max(max, lane.depth.get());
+    }
+    return max;
+  }
+
+  /**
+   * Number of queued tasks in the lane a channel message would be routed to
+   *
+   * @return 0 for messages that bypass the lanes
+   */
+  public int getQueueDepth(Message<?> message) {
+    String key = routingKey(message);
+    return key != null ? lanes[laneIndex(key)].depth.get() : 0;
+  }
+
+  /**
+   * Adapter so the lanes can be registered as the clientInboundChannel executor
+   */
+  public ThreadPoolTaskExecutor asChannelExecutor() {
+    return new ThreadPoolTaskExecutor() {
+      @Override
+      public void execute(Runnable task) {
+        SnippetLaneExecutor.this.execute(task);
+      }
+    };
+  }
+
+  private int laneIndex(String key) {
+    int hash = key.hashCode();
+    return Math.floorMod(hash ^ (hash >>> 16), lanes.length);
+  }
+
+  private static String routingKey(Message<?> message) {
+    String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+    if (destination != null) {
+      int start = destination.indexOf(SNIPPET_SEGMENT);
+      if (start >= 0) {
+        start += SNIPPET_SEGMENT.length();
+        int end = destination.indexOf('/', start);
+        return destination.substring(start, end >= 0 ? end : destination.length());
+      }
+    }
+    return SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+  }
+
+  /**
+   * Serial task queue; at most one worker drains it at a time
+   */
+  private class Lane implements Runnable {
+    final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+    final AtomicInteger depth = new AtomicInteger();
+    final AtomicBoolean scheduled = new AtomicBoolean();
+
+    void submit(Runnable task) {
+      queue.offer(task);
+      depth.incrementAndGet();
+      schedule();
+    }
+
+    private void schedule() {
+      if (scheduled.compareAndSet(false, true)) {
+        workers.execute(this);
+      }
+    }
+
+    @Override
+    public void run() {
+      Runnable task;
+      int processed = 0;
+      while (processed < MAX_BATCH && (task = queue.poll()) != null) {
+        depth.decrementAndGet();
+        processed++;
+        try {
+          task.run();
+        } catch (Throwable e) {
+          log.error("[Lanes] Task failed: {}", e.getMessage(), e);
+        }
+      }
+      scheduled.set(false);
+      // Re-check after releasing: a submit may have raced with the flag reset
+      if (!queue.isEmpty()) {
+        schedule();
+      }
+    }
+  }
+}
@@ -0,0 +1,56 @@
+package com.codesharing.platform.websocket;
+
+import com.codesharing.platform.service.CollaborationMetrics;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.broker.AbstractBrokerMessageHandler;
+import org.springframework.messaging.simp.stomp.StompBrokerRelayMessageHandler;
+
+/**
+ * STOMP Relay Backplane
+ * Used with an external STOMP broker (RabbitMQ, ActiveMQ) relaying /topic and /queue
+ * The broker already delivers broadcasts to every node, so only presence events
+ * are exchanged, on a topic read through the relay's shared system connection
+ */
+@Slf4j
+public class StompRelayBackplane extends AbstractBackplane {
+
+  private final SimpMessagingTemplate brokerMessagingTemplate;
+  private final String destination;
+
+  public StompRelayBackplane(ObjectMapper objectMapper, CollaborationMetrics metrics,
+                             SimpMessagingTemplate brokerMessagingTemplate,
+                             AbstractBrokerMessageHandler brokerHandler, String destination) {
+    super(objectMapper, metrics);
+    if (!(brokerHandler instanceof StompBrokerRelayMessageHandler relay)) {
+      throw new IllegalStateException("The relay backplane requires the STOMP broker relay to be enabled");
+    }
+    this.brokerMessagingTemplate = brokerMessagingTemplate;
+    this.destination = destination;
+
+    // Must be registered before the relay starts and opens its system connection
+    Map<String, MessageHandler> subscriptions = new HashMap<>(relay.getSystemSubscriptions());
+    subscriptions.put(destination, message -> {
+      Object payload = message.getPayload();
+      String json = payload instanceof byte[] bytes ? new String(bytes, StandardCharsets.UTF_8) : payload.toString();
+      dispatch(deserialize(json));
+    });
+    relay.setSystemSubscriptions(subscriptions);
+    log.info("[Backplane] STOMP relay backplane on '{}' (node {})", destination, getNodeId());
+  }
+
+  @Override
+  protected void send(BackplaneEvent event) {
+    brokerMessagingTemplate.convertAndSend(destination, serialize(event));
+  }
+
+  @Override
+  public boolean forwardsBroadcasts() {
+    return false;
+  }
+}
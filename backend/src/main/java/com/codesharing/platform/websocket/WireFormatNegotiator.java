@@ -0,0 +1,250 @@
+package com.codesharing.platform.websocket;
+
+import com.codesharing.platform.service.CollaborationMetrics;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.converter.SmartMessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketHandlerDecoratorFactory;
+import org.springframework.web.socket.sockjs.transport.SockJsSession;
+
+/**
+ * Wire Format Negotiator
+ * Opt-in CBOR encoding of high-frequency collaboration frames (code, ops, typing, presence, cursor)
+ * A client asks for it with the STOMP CONNECT header "accept-wire-format: cbor".
+ * Matching broadcasts are then sent to that session as binary WebSocket frames with
+ * content-type application/octet-stream and the header "wire-format: cbor".
+ * Broadcasts made on this node carry their message object alongside the JSON body, and
+ * are serialized straight to CBOR from it, once however many CBOR subscribers they have
+ * and only if one of them receives it; broadcasts relayed from other backplane nodes
+ * have no object and go out as JSON, which clients tell apart by the missing header.
+ * Clients may also SEND with content-type application/cbor.
+ * JSON stays the default, and SockJS fallback transports (text only) always get JSON.
+ */
+@Slf4j
+@Component
+public class WireFormatNegotiator implements ChannelInterceptor, WebSocketHandlerDecoratorFactory {
+
+  public static final String ACCEPT_HEADER = "accept-wire-format";
+  public static final String FORMAT_HEADER = "wire-format";
+  public static final String CBOR = "cbor";
+  public static final MimeType APPLICATION_CBOR = MimeType.valueOf("application/cbor");
+
+  private static final String SNIPPET_TOPIC_PREFIX = "/topic/snippet/";
+  private static final Set<String> BINARY_CHANNELS = Set.of("code", "ops", "typing", "presence", "cursor");
+
+  private final ObjectMapper objectMapper;
+  private final ObjectMapper cborMapper;
+  private final CollaborationMetrics metrics;
+
+  /**
+   * Sessions on a transport that can carry binary frames (plain WebSocket, not SockJS)
+   */
+  private final Set<String> binarySessions = ConcurrentHashMap.newKeySet();
+
+  /**
+   * Sessions that negotiated CBOR
+   */
+  private final Set<String> cborSessions = ConcurrentHashMap.newKeySet();
+
+  /**
+   * Header holding a broadcast's CborBody; the broker copies it to every subscriber's message
+   */
+  private static final String CBOR_BODY_HEADER = "wireFormatCborBody";
+
+  /**
+   * CBOR encoding of a sent message object, made on first use and shared by all subscribers
+   * Sent objects are not changed after sending, so the encoding matches the JSON body
+   */
+  private final class CborBody {
+    private final Object payload;
+    private volatile byte[] cbor;
+
+    CborBody(Object payload) {
+      this.payload = payload;
+    }
+
+    byte[] get(int jsonLength) throws IOException {
+      byte[] encoded = cbor;
+      if (encoded == null) {
+        synchronized (this) {
+          encoded = cbor;
+          if (encoded == null) {
+            encoded = cborMapper.writeValueAsBytes(payload);
+            cbor = encoded;
+            metrics.increment("collaboration.wire.cbor.encoded");
+            metrics.add("collaboration.wire.cbor.json-bytes", jsonLength);
+            metrics.add("collaboration.wire.cbor.cbor-bytes", encoded.length);
+          }
+        }
+      }
+      return encoded;
+    }
+  }
+
+  public WireFormatNegotiator(ObjectMapper objectMapper, CollaborationMetrics metrics) {
+    this.objectMapper = objectMapper;
+    this.cborMapper = objectMapper.copyWith(new CBORFactory());
+    this.metrics = metrics;
+  }
+
+  /**
+   * Converter for inbound frames sent with content-type application/cbor
+   * Strict content type matching keeps it from being used for anything else
+   */
+  public MessageConverter cborMessageConverter() {
+    MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter(APPLICATION_CBOR);
+    converter.setObjectMapper(cborMapper);
+    converter.setStrictContentTypeMatch(true);
+    return converter;
+  }
+
+  /**
+   * Converter for messages sent through the messaging template: writes the JSON body,
+   * and while CBOR sessions are connected attaches the message object for encode()
+   * Strings and byte arrays are left to the default converters
+   */
+  public MessageConverter broadcastMessageConverter() {
+    MappingJackson2MessageConverter json = new MappingJackson2MessageConverter();
+    json.setObjectMapper(objectMapper);
+    return new SmartMessageConverter() {
+      @Override
+      public Object fromMessage(Message<?> message, Class<?> targetClass) {
+        // Outbound only; inbound frames go through the default converters
+        return null;
+      }
+
+      @Override
+      public Object fromMessage(Message<?> message, Class<?> targetClass, Object conversionHint) {
+        return null;
+      }
+
+      @Override
+      public Message<?> toMessage(Object payload, MessageHeaders headers) {
+        return toMessage(payload, headers, null);
+      }
+
+      @Override
+      public Message<?> toMessage(Object payload, MessageHeaders headers, Object conversionHint) {
+        if (payload instanceof String || payload instanceof byte[]) {
+          return null;
+        }
+        Message<?> message = json.toMessage(payload, headers, conversionHint);
+        if (message == null || cborSessions.isEmpty()) {
+          return message;
+        }
+        MessageHeaderAccessor accessor = MessageHeaderAccessor.getMutableAccessor(message);
+        accessor.setHeader(CBOR_BODY_HEADER, new CborBody(payload));
+        accessor.setLeaveMutable(true);
+        return MessageBuilder.createMessage(message.getPayload(), accessor.getMessageHeaders());
+      }
+    };
+  }
+
+  /**
+   * Track which WebSocket sessions can receive binary frames
+   */
+  @Override
+  public WebSocketHandler decorate(WebSocketHandler handler) {
+    return new WebSocketHandlerDecorator(handler) {
+      @Override
+      public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+        if (!(session instanceof SockJsSession)) {
+          binarySessions.add(session.getId());
+        }
+        super.afterConnectionEstablished(session);
+      }
+
+      @Override
+      public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+        binarySessions.remove(session.getId());
+        cborSessions.remove(session.getId());
+        super.afterConnectionClosed(session, closeStatus);
+      }
+    };
+  }
+
+  @Override
+  public Message<?> preSend(Message<?> message, MessageChannel channel) {
+    SimpMessageType type = SimpMessageHeaderAccessor.getMessageType(message.getHeaders());
+    if (type == SimpMessageType.CONNECT) {
+      negotiate(message);
+      return message;
+    }
+    if (type == SimpMessageType.MESSAGE && !cborSessions.isEmpty()) {
+      return encode(message);
+    }
+    return message;
+  }
+
+  private void negotiate(Message<?> message) {
+    SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+    String sessionId = accessor.getSessionId();
+    String requested = accessor.getFirstNativeHeader(ACCEPT_HEADER);
+    if (sessionId == null || requested == null || !CBOR.equalsIgnoreCase(requested.trim())) {
+      return;
+    }
+    if (binarySessions.contains(sessionId)) {
+      cborSessions.add(sessionId);
+      metrics.increment("collaboration.wire.cbor.sessions");
+      log.debug("[Wire] Session {} negotiated CBOR frames", sessionId);
+    } else {
+      log.debug("[Wire] Session {} asked for CBOR over a text-only transport, using JSON", sessionId);
+    }
+  }
+
+  private Message<?> encode(Message<?> message) {
+    SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+    if (!cborSessions.contains(accessor.getSessionId())
+        || !isBinaryChannel(accessor.getDestination())
+        || !(message.getPayload() instanceof byte[] json)
+        || accessor.getContentType() == null
+        || !MimeTypeUtils.APPLICATION_JSON.isCompatibleWith(accessor.getContentType())) {
+      return message;
+    }
+    if (!(accessor.getHeader(CBOR_BODY_HEADER) instanceof CborBody body)) {
+      // Relayed from another node, or sent before the first CBOR session connected
+      metrics.increment("collaboration.wire.cbor.json-fallback");
+      return message;
+    }
+    byte[] cbor;
+    try {
+      cbor = body.get(json.length);
+    } catch (IOException e) {
+      log.warn("[Wire] Could not encode frame for {}: {}", accessor.getDestination(), e.getMessage());
+      return message;
+    }
+    // Octet-stream is what makes the STOMP handler send a binary WebSocket frame
+    accessor.setContentType(MimeTypeUtils.APPLICATION_OCTET_STREAM);
+    accessor.setNativeHeader(FORMAT_HEADER, CBOR);
+    metrics.increment("collaboration.wire.cbor.frames");
+    return MessageBuilder.createMessage(cbor, accessor.getMessageHeaders());
+  }
+
+  private static boolean isBinaryChannel(String destination) {
+    if (destination == null || !destination.startsWith(SNIPPET_TOPIC_PREFIX)) {
+      return false;
+    }
+    return BINARY_CHANNELS.contains(destination.substring(destination.lastIndexOf('/') + 1));
+  }
+}
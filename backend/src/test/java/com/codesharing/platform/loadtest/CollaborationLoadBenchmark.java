@@ -0,0 +1,229 @@
+package com.codesharing.platform.loadtest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+import com.codesharing.platform.dto.SnippetDTO;
+import com.codesharing.platform.service.CollaborationMetrics;
+import com.codesharing.platform.service.SnippetHeaderCache;
+import com.codesharing.platform.service.SnippetService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.messaging.converter.ByteArrayMessageConverter;
+import org.springframework.messaging.converter.CompositeMessageConverter;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+
+/**
+ * Collaboration Load Benchmark
+ * Starts the application with in-process stand-ins (H2 for PostgreSQL, mocks for MongoDB),
+ * opens N STOMP clients spread over M snippets and drives join/code/typing/leave traffic,
+ * with clients rejoining during the run so presence broadcasts are part of the measured load.
+ * Reports throughput and end-to-end propagation latency of code changes, measured from
+ * CodeChangeMessage.timestamp to delivery at every other client in the room.
+ *
+ * Not part of the regular test run: mvn -Ploadtest test
+ * Settings (system properties):
+ *   loadtest.clients          - STOMP clients (default 200)
+ *   loadtest.snippets         - snippet rooms the clients are spread over (default 20)
+ *   loadtest.edit-interval-ms - time between code changes of one client (default 500)
+ *   loadtest.rejoin-interval-ms - time between leave/join of one client, for presence fan-out (default 5000)
+ *   loadtest.warmup-seconds   - traffic before measuring starts (default 5)
+ *   loadtest.duration-seconds - measured traffic (default 30)
+ *   loadtest.code-size        - bytes of code per full-text change (default 2048)
+ *   loadtest.output           - JSON results file (default target/loadtest/collaboration-load.json)
+ */
+@Slf4j
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("loadtest")
+class CollaborationLoadBenchmark {
+
+  private static final int CLIENTS = Integer.getInteger("loadtest.clients", 200);
+  private static final int SNIPPETS = Integer.getInteger("loadtest.snippets", 20);
+  private static final long EDIT_INTERVAL_MS = Long.getLong("loadtest.edit-interval-ms", 500);
+  private static final long REJOIN_INTERVAL_MS = Long.getLong("loadtest.rejoin-interval-ms", 5000);
+  private static final long WARMUP_SECONDS = Long.getLong("loadtest.warmup-seconds", 5);
+  private static final long DURATION_SECONDS = Long.getLong("loadtest.duration-seconds", 30);
+  private static final int CODE_SIZE = Integer.getInteger("loadtest.code-size", 2048);
+  private static final String OUTPUT = System.getProperty("loadtest.output", "target/loadtest/collaboration-load.json");
+
+  @LocalServerPort
+  private int port;
+
+  @Autowired
+  private CollaborationMetrics metrics;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @MockBean
+  private MongoTemplate mongoTemplate;
+
+  @MockBean
+  private SnippetService snippetService;
+
+  @MockBean
+  private SnippetHeaderCache snippetHeaderCache;
+
+  @BeforeEach
+  void standIns() {
+    when(snippetHeaderCache.get(anyString())).thenAnswer(invocation -> new SnippetHeaderCache.SnippetHeader(
+      invocation.getArgument(0), "Load test snippet", "loadtest-owner", "java"
+    ));
+    when(snippetService.getSnippetById(anyString())).thenAnswer(invocation -> {
+      SnippetDTO snippet = new SnippetDTO();
+      snippet.setId(invocation.getArgument(0));
+      snippet.setTitle("Load test snippet");
+      snippet.setCode("");
+      snippet.setLanguage("java");
+      snippet.setAuthorId("loadtest-owner");
+      return snippet;
+    });
+  }
+
+  @Test
+  void collaborationFanOut() throws Exception {
+    WebSocketStompClient stompClient = new WebSocketStompClient(new StandardWebSocketClient());
+    stompClient.setMessageConverter(new CompositeMessageConverter(List.of(
+      new ByteArrayMessageConverter(), new MappingJackson2MessageConverter()
+    )));
+    stompClient.setDefaultHeartbeat(new long[]{0, 0});
+    String url = "ws://localhost:" + port + "/api/ws/websocket";
+
+    LoadClient.Stats stats = new LoadClient.Stats();
+    String codeBase = "x".repeat(CODE_SIZE);
+    List<LoadClient> clients = new ArrayList<>();
+    for (int i = 0; i < CLIENTS; i++) {
+      LoadClient client = new LoadClient("load-user-" + i, "load-snippet-" + (i % SNIPPETS), codeBase, stats);
+      client.connect(stompClient, url);
+      client.join();
+      clients.add(client);
+    }
+    log.info("[LoadTest] {} clients connected across {} snippets", CLIENTS, SNIPPETS);
+
+    ScheduledExecutorService driver = Executors.newScheduledThreadPool(
+      Math.max(2, Runtime.getRuntime().availableProcessors())
+    );
+    try {
+      for (LoadClient client : clients) {
+        // Spread the clients' edits over the interval instead of firing them together
+        long offset = ThreadLocalRandom.current().nextLong(EDIT_INTERVAL_MS);
+        driver.scheduleAtFixedRate(() -> {
+          try {
+            client.edit();
+          } catch (Exception e) {
+            stats.errors.increment();
+          }
+        }, offset, EDIT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        if (REJOIN_INTERVAL_MS > 0) {
+          driver.scheduleAtFixedRate(() -> {
+            try {
+              client.rejoin();
+            } catch (Exception e) {
+              stats.errors.increment();
+            }
+          }, ThreadLocalRandom.current().nextLong(REJOIN_INTERVAL_MS), REJOIN_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        }
+      }
+
+      Thread.sleep(TimeUnit.SECONDS.toMillis(WARMUP_SECONDS));
+      Map<String, Object> metricsBefore = metrics.snapshot();
+      stats.measuring = true;
+      long start = System.nanoTime();
+      Thread.sleep(TimeUnit.SECONDS.toMillis(DURATION_SECONDS));
+      stats.measuring = false;
+      double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+      driver.shutdownNow();
+      for (LoadClient client : clients) {
+        client.leave();
+      }
+      for (LoadClient client : clients) {
+        client.disconnect();
+      }
+
+      Map<String, Object> results = results(stats, elapsedSeconds, metricsBefore);
+      Path output = Path.of(OUTPUT);
+      if (output.getParent() != null) {
+        Files.createDirectories(output.getParent());
+      }
+      objectMapper.writerWithDefaultPrettyPrinter().writeValue(output.toFile(), results);
+      log.info("[LoadTest] Results written to {}: {}", output.toAbsolutePath(), results.get("throughput"));
+      log.info("[LoadTest] Code propagation latency: {}", results.get("codeLatency"));
+    } finally {
+      driver.shutdownNow();
+      stompClient.stop();
+    }
+
+    assertThat(stats.codeReceived.sum()).as("code changes delivered to other clients").isPositive();
+    if (REJOIN_INTERVAL_MS > 0) {
+      assertThat(stats.presenceReceived.sum()).as("presence changes delivered to clients").isPositive();
+    }
+  }
+
+  private Map<String, Object> results(LoadClient.Stats stats, double elapsedSeconds, Map<String, Object> metricsBefore) {
+    Map<String, Object> config = new LinkedHashMap<>();
+    config.put("clients", CLIENTS);
+    config.put("snippets", SNIPPETS);
+    config.put("editIntervalMs", EDIT_INTERVAL_MS);
+    config.put("rejoinIntervalMs", REJOIN_INTERVAL_MS);
+    config.put("warmupSeconds", WARMUP_SECONDS);
+    config.put("durationSeconds", DURATION_SECONDS);
+    config.put("codeSize", CODE_SIZE);
+
+    Map<String, Object> throughput = new LinkedHashMap<>();
+    throughput.put("elapsedSeconds", elapsedSeconds);
+    throughput.put("codeSent", stats.codeSent.sum());
+    throughput.put("codeReceived", stats.codeReceived.sum());
+    throughput.put("codeSentPerSecond", stats.codeSent.sum() / elapsedSeconds);
+    throughput.put("codeDeliveredPerSecond", stats.codeReceived.sum() / elapsedSeconds);
+    throughput.put("typingSent", stats.typingSent.sum());
+    throughput.put("typingReceived", stats.typingReceived.sum());
+    throughput.put("rejoinsSent", stats.rejoinsSent.sum());
+    throughput.put("presenceReceived", stats.presenceReceived.sum());
+    throughput.put("errors", stats.errors.sum());
+
+    // Server-side counters accumulated during the measured window
+    Map<String, Object> serverMetrics = new LinkedHashMap<>();
+    metrics.snapshot().forEach((name, value) -> {
+      Object before = metricsBefore.get(name);
+      if (value instanceof Long after && before instanceof Long previous) {
+        serverMetrics.put(name, after - previous);
+      } else {
+        serverMetrics.put(name, value);
+      }
+    });
+
+    Map<String, Object> results = new LinkedHashMap<>();
+    results.put("benchmark", "collaboration-fan-out");
+    results.put("timestamp", Instant.now().toString());
+    results.put("javaVersion", System.getProperty("java.version"));
+    results.put("availableProcessors", Runtime.getRuntime().availableProcessors());
+    results.put("config", config);
+    results.put("throughput", throughput);
+    results.put("codeLatency", stats.codeLatency.summary());
+    results.put("serverMetrics", serverMetrics);
+    return results;
+  }
+}
@@ -0,0 +1,76 @@
+package com.codesharing.platform.loadtest;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency Histogram
+ * Fixed-size millisecond buckets, so recording costs no allocation however many samples arrive
+ * Samples above the last bucket are counted in it and reported as the maximum bucket value
+ */
+class LatencyHistogram {
+
+  private final AtomicLongArray buckets;
+  private final LongAdder count = new LongAdder();
+  private final LongAdder sum = new LongAdder();
+
+  LatencyHistogram(int maxMillis) {
+    this.buckets = new AtomicLongArray(maxMillis + 1);
+  }
+
+  void record(long millis) {
+    int bucket = (int) Math.max(0, Math.min(millis, buckets.length() - 1));
+    buckets.incrementAndGet(bucket);
+    count.increment();
+    sum.add(Math.max(0, millis));
+  }
+
+  long count() {
+    return count.sum();
+  }
+
+  /**
+   * Smallest latency (ms) that at least the given fraction of samples do not exceed
+   */
+  long percentile(double fraction) {
+    long total = count.sum();
+    if (total == 0) {
+      return 0;
+    }
+    long target = (long) Math.ceil(fraction * total);
+    long seen = 0;
+    for (int bucket = 0; bucket < buckets.length(); bucket++) {
+      seen += buckets.get(bucket);
+      if (seen >= target) {
+        return bucket;
+      }
+    }
+    return buckets.length() - 1;
+  }
+
+  long max() {
+    for (int bucket = buckets.length() - 1; bucket >= 0; bucket--) {
+      if (buckets.get(bucket) > 0) {
+        return bucket;
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Summary for the results file
+   */
+  Map<String, Object> summary() {
+    Map<String, Object> summary = new LinkedHashMap<>();
+    long total = count.sum();
+    summary.put("samples", total);
+    summary.put("meanMs", total > 0 ? (double) sum.sum() / total : 0.0);
+    summary.put("p50Ms", percentile(0.50));
+    summary.put("p99Ms", percentile(0.99));
+    summary.put("p999Ms", percentile(0.999));
+    summary.put("maxMs", max());
+    return summary;
+  }
+}
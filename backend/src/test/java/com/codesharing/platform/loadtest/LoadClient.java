@@ -0,0 +1,169 @@
+package com.codesharing.platform.loadtest;
+
+import com.codesharing.platform.websocket.CollaborationController;
+import java.lang.reflect.Type;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+
+/**
+ * Load Client
+ * One simulated collaborator: a STOMP session in one snippet room that joins, edits,
+ * toggles its typing indicator, rejoins now and then and leaves, recording propagation
+ * latency of other users' edits
+ */
+class LoadClient {
+
+  /**
+   * Counters shared by all clients of a run
+   */
+  static class Stats {
+    final LatencyHistogram codeLatency = new LatencyHistogram(60_000);
+    final LongAdder codeSent = new LongAdder();
+    final LongAdder codeReceived = new LongAdder();
+    final LongAdder typingSent = new LongAdder();
+    final LongAdder typingReceived = new LongAdder();
+    final LongAdder rejoinsSent = new LongAdder();
+    final LongAdder presenceReceived = new LongAdder();
+    final LongAdder errors = new LongAdder();
+    volatile boolean measuring;
+  }
+
+  private final String userId;
+  private final String snippetId;
+  private final String codeBase;
+  private final Stats stats;
+  private StompSession session;
+  private int edits;
+
+  LoadClient(String userId, String snippetId, String codeBase, Stats stats) {
+    this.userId = userId;
+    this.snippetId = snippetId;
+    this.codeBase = codeBase;
+    this.stats = stats;
+  }
+
+  void connect(WebSocketStompClient stompClient, String url) throws Exception {
+    session = stompClient.connectAsync(url, new StompSessionHandlerAdapter() {
+      @Override
+      public void handleException(StompSession s, StompCommand command,
+                                  StompHeaders headers, byte[] payload, Throwable exception) {
+        stats.errors.increment();
+      }
+
+      @Override
+      public void handleTransportError(StompSession s, Throwable exception) {
+        stats.errors.increment();
+      }
+    }).get(30, TimeUnit.SECONDS);
+
+    String topic = "/topic/snippet/" + snippetId;
+    session.subscribe(topic + "/code", new StompFrameHandler() {
+      @Override
+      public Type getPayloadType(StompHeaders headers) {
+        return CollaborationController.CodeChangeMessage.class;
+      }
+
+      @Override
+      public void handleFrame(StompHeaders headers, Object payload) {
+        CollaborationController.CodeChangeMessage change = (CollaborationController.CodeChangeMessage) payload;
+        if (!stats.measuring || userId.equals(change.userId)) {
+          return;
+        }
+        stats.codeReceived.increment();
+        stats.codeLatency.record(System.currentTimeMillis() - change.timestamp);
+      }
+    });
+    session.subscribe(topic + "/typing", countingHandler(stats.typingReceived));
+    session.subscribe(topic + "/presence", countingHandler(stats.presenceReceived));
+  }
+
+  void join() {
+    session.send("/app/snippet/" + snippetId + "/join", Map.of(
+      "userId", userId,
+      "username", userId,
+      "userAgent", "loadtest",
+      "browserName", "loadtest"
+    ));
+  }
+
+  /**
+   * One burst of editing: typing on, a full-text code change, typing off every few edits
+   */
+  void edit() {
+    if (edits % 5 == 0) {
+      sendTyping(true);
+    }
+    edits++;
+
+    CollaborationController.CodeChangeMessage change = new CollaborationController.CodeChangeMessage();
+    change.userId = userId;
+    change.username = userId;
+    change.language = "java";
+    change.code = codeBase + "\n// edit " + edits + " by " + userId;
+    change.timestamp = System.currentTimeMillis();
+    session.send("/app/snippet/" + snippetId + "/code", change);
+    if (stats.measuring) {
+      stats.codeSent.increment();
+    }
+
+    if (edits % 5 == 0) {
+      sendTyping(false);
+    }
+  }
+
+  /**
+   * Leave and join again, as a page reload does; every other client in the room gets the presence change
+   */
+  void rejoin() {
+    leave();
+    join();
+    if (stats.measuring) {
+      stats.rejoinsSent.increment();
+    }
+  }
+
+  void leave() {
+    if (session != null && session.isConnected()) {
+      session.send("/app/snippet/" + snippetId + "/leave", Map.of("userId", userId, "username", userId));
+    }
+  }
+
+  void disconnect() {
+    if (session != null && session.isConnected()) {
+      session.disconnect();
+    }
+  }
+
+  private void sendTyping(boolean typing) {
+    CollaborationController.TypingIndicatorMessage indicator = new CollaborationController.TypingIndicatorMessage();
+    indicator.userId = userId;
+    indicator.isTyping = typing;
+    session.send("/app/snippet/" + snippetId + "/typing", indicator);
+    if (stats.measuring) {
+      stats.typingSent.increment();
+    }
+  }
+
+  private StompFrameHandler countingHandler(LongAdder counter) {
+    return new StompFrameHandler() {
+      @Override
+      public Type getPayloadType(StompHeaders headers) {
+        return byte[].class;
+      }
+
+      @Override
+      public void handleFrame(StompHeaders headers, Object payload) {
+        if (stats.measuring) {
+          counter.increment();
+        }
+      }
+    };
+  }
+}
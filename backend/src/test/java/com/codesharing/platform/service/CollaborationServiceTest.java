@@ -0,0 +1,149 @@
+package com.codesharing.platform.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.codesharing.platform.dto.SnippetDTO;
+import com.codesharing.platform.service.TextOperation.Edit;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class CollaborationServiceTest {
+
+  private static final String SNIPPET_ID = "snippet-1";
+
+  private CollaborationService collaborationService;
+
+  @BeforeEach
+  void setUp() {
+    collaborationService = new CollaborationService(new ObjectMapper());
+    SnippetDTO snippet = new SnippetDTO();
+    snippet.setCode("hello world");
+    snippet.setLanguage("java");
+    collaborationService.seedDocument(SNIPPET_ID, snippet);
+  }
+
+  private String code() {
+    return collaborationService.getDocumentSnapshot(SNIPPET_ID).code;
+  }
+
+  @Test
+  void operationAtCurrentRevisionIsAppliedAsIs() {
+    CollaborationService.AppliedOperation applied =
+      collaborationService.applyOperation(SNIPPET_ID, "alice", 0, List.of(Edit.insert(5, ",")));
+
+    assertThat(applied).isNotNull();
+    assertThat(applied.revision).isEqualTo(1);
+    assertThat(code()).isEqualTo("hello, world");
+  }
+
+  @Test
+  void concurrentInsertsAtSameOffsetKeepFirstAppliedFirst() {
+    collaborationService.applyOperation(SNIPPET_ID, "alice", 0, List.of(Edit.insert(0, "A")));
+    collaborationService.applyOperation(SNIPPET_ID, "bob", 0, List.of(Edit.insert(0, "B")));
+
+    assertThat(code()).isEqualTo("ABhello world");
+  }
+
+  @Test
+  void staleOperationIsRebasedAcrossSeveralRevisions() {
+    collaborationService.applyOperation(SNIPPET_ID, "alice", 0, List.of(Edit.insert(0, ">> ")));
+    collaborationService.applyOperation(SNIPPET_ID, "alice", 1, List.of(Edit.insert(8, ",")));
+    collaborationService.applyOperation(SNIPPET_ID, "alice", 2, List.of(Edit.delete(0, 3)));
+    assertThat(code()).isEqualTo("hello, world");
+
+    // Bob still sees "hello world" and replaces "world" with "there"
+    CollaborationService.AppliedOperation applied = collaborationService.applyOperation(
+      SNIPPET_ID, "bob", 0, List.of(Edit.delete(6, 5), Edit.insert(6, "there"))
+    );
+
+    assertThat(applied).isNotNull();
+    assertThat(applied.revision).isEqualTo(4);
+    assertThat(code()).isEqualTo("hello, there");
+  }
+
+  @Test
+  void overlappingDeleteFromStaleRevisionRemovesOnlyWhatIsLeft() {
+    collaborationService.applyOperation(SNIPPET_ID, "alice", 0, List.of(Edit.delete(3, 5)));
+    collaborationService.applyOperation(SNIPPET_ID, "bob", 0, List.of(Edit.delete(5, 6)));
+
+    assertThat(code()).isEqualTo("hel");
+  }
+
+  @Test
+  void outOfRangeEditIsRejectedWithoutChangingTheDocument() {
+    assertThat(collaborationService.applyOperation(SNIPPET_ID, "alice", 0, List.of(Edit.insert(50, "x")))).isNull();
+    assertThat(collaborationService.applyOperation(SNIPPET_ID, "alice", 0, List.of(Edit.delete(8, 10)))).isNull();
+    assertThat(code()).isEqualTo("hello world");
+    assertThat(collaborationService.getDocumentSnapshot(SNIPPET_ID).revision).isZero();
+  }
+
+  @Test
+  void invalidOperationsAreRejected() {
+    assertThat(collaborationService.applyOperation(SNIPPET_ID, "alice", 0, List.of(new Edit()))).isNull();
+    assertThat(collaborationService.applyOperation(SNIPPET_ID, "alice", 0, List.of())).isNull();
+    assertThat(collaborationService.applyOperation(SNIPPET_ID, "alice", 0, null)).isNull();
+    assertThat(collaborationService.applyOperation("unknown", "alice", 0, List.of(Edit.insert(0, "x")))).isNull();
+  }
+
+  @Test
+  void revisionsOutsideTheHistoryWindowMustResync() {
+    ReflectionTestUtils.setField(collaborationService, "operationHistorySize", 2);
+    for (int revision = 0; revision < 3; revision++) {
+      collaborationService.applyOperation(SNIPPET_ID, "alice", revision, List.of(Edit.insert(0, "x")));
+    }
+
+    // Ahead of the server, and older than the two revisions kept
+    assertThat(collaborationService.applyOperation(SNIPPET_ID, "bob", 4, List.of(Edit.insert(0, "y")))).isNull();
+    assertThat(collaborationService.applyOperation(SNIPPET_ID, "bob", 0, List.of(Edit.insert(0, "y")))).isNull();
+    assertThat(collaborationService.applyOperation(SNIPPET_ID, "bob", 1, List.of(Edit.insert(0, "y")))).isNotNull();
+  }
+
+  @Test
+  void fullTextReplaceIsRebasedOverLikeAnOperation() {
+    assertThat(collaborationService.replaceDocument(SNIPPET_ID, "alice", "hello brave world", null)).isEqualTo(1);
+
+    // Bob's edit was made before the full-text replace and is rebased over it
+    CollaborationService.AppliedOperation applied =
+      collaborationService.applyOperation(SNIPPET_ID, "bob", 0, List.of(Edit.insert(11, "!")));
+
+    assertThat(applied).isNotNull();
+    assertThat(applied.revision).isEqualTo(2);
+    assertThat(code()).isEqualTo("hello brave world!");
+  }
+
+  @Test
+  void unchangedFullTextReplaceKeepsTheRevision() {
+    collaborationService.applyOperation(SNIPPET_ID, "alice", 0, List.of(Edit.insert(0, "x")));
+
+    assertThat(collaborationService.replaceDocument(SNIPPET_ID, "bob", "xhello world", null)).isEqualTo(1);
+    assertThat(collaborationService.applyOperation(SNIPPET_ID, "bob", 0, List.of(Edit.insert(0, "y")))).isNotNull();
+  }
+
+  @Test
+  void metadataEditsAreVisibleBeforeTheyAreSaved() {
+    collaborationService.updateDocumentMetadata(SNIPPET_ID, "Renamed", null, "python", null);
+
+    assertThat(collaborationService.getDocumentMetadata(SNIPPET_ID))
+      .isEqualTo(new CollaborationService.DocumentMetadata("Renamed", "python"));
+    assertThat(collaborationService.getDocumentMetadata("unknown")).isNull();
+  }
+
+  @Test
+  void userStaysPresentWhileAnotherTabIsOpen() {
+    collaborationService.joinSession(SNIPPET_ID, "alice", "Alice");
+    collaborationService.bindSession("tab-a", SNIPPET_ID, "alice");
+    long joinedAt = collaborationService.getActiveUsers(SNIPPET_ID).get(0).joinedAt();
+    collaborationService.joinSession(SNIPPET_ID, "alice", "Alice");
+    collaborationService.bindSession("tab-b", SNIPPET_ID, "alice");
+
+    assertThat(collaborationService.detachSession("tab-b", SNIPPET_ID, "alice")).isNull();
+    assertThat(collaborationService.isUserInSession(SNIPPET_ID, "alice")).isTrue();
+    assertThat(collaborationService.getActiveUsers(SNIPPET_ID).get(0).joinedAt()).isEqualTo(joinedAt);
+
+    assertThat(collaborationService.detachSession("tab-a", SNIPPET_ID, "alice")).isNotNull();
+    assertThat(collaborationService.isUserInSession(SNIPPET_ID, "alice")).isFalse();
+  }
+}
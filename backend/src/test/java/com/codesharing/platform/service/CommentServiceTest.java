@@ -0,0 +1,55 @@
+package com.codesharing.platform.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.codesharing.platform.dto.CommentDTO;
+import com.codesharing.platform.entity.Comment;
+import com.codesharing.platform.entity.User;
+import com.codesharing.platform.repository.UserRepository;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+class CommentServiceTest {
+
+  private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+  private final UserRepository userRepository = mock(UserRepository.class);
+  private final CommentService commentService = new CommentService(
+    mongoTemplate,
+    new AuthorCache(userRepository, new CollaborationMetrics(), 100, 60000)
+  );
+
+  private static Comment comment(String id, String authorId) {
+    return Comment.builder().id(id).snippetId("snippet-1").authorId(authorId).content(id).build();
+  }
+
+  @Test
+  void commentsCarryTheirAuthorsUsernamesLoadedInOneBatch() {
+    when(mongoTemplate.find(any(Query.class), eq(Comment.class)))
+      .thenReturn(List.of(comment("c1", "alice"), comment("c2", "ghost"), comment("c3", "alice")));
+    when(userRepository.findAllById(anyIterable()))
+      .thenReturn(List.of(User.builder().id("alice").username("Alice").build()));
+
+    List<CommentDTO> comments = commentService.getCommentsBySnippetId("snippet-1");
+
+    assertThat(comments).extracting(CommentDTO::getAuthorUsername)
+      .containsExactly("Alice", AuthorCache.ANONYMOUS, "Alice");
+    verify(userRepository, times(1)).findAllById(anyIterable());
+  }
+
+  @Test
+  void addedCommentCarriesItsAuthorsUsername() {
+    when(userRepository.findAllById(anyIterable()))
+      .thenReturn(List.of(User.builder().id("alice").username("Alice").build()));
+
+    assertThat(commentService.addComment("snippet-1", "alice", "Looks good").getAuthorUsername()).isEqualTo("Alice");
+  }
+}
@@ -0,0 +1,86 @@
+package com.codesharing.platform.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.codesharing.platform.entity.SnippetOperation;
+import com.codesharing.platform.entity.SnippetSnapshot;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.ToLongFunction;
+import java.util.stream.LongStream;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+class OperationLogTest {
+
+  private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+  private final List<Query> snapshotQueries = new ArrayList<>();
+  private OperationLog operationLog;
+
+  /**
+   * A compacted log: the snapshot at 20 is the oldest kept, the operation at 25 was dropped
+   * and replaced by a snapshot, and a periodic snapshot shares seq 30 with its operation
+   */
+  @BeforeEach
+  void setUp() {
+    List<SnippetOperation> operations = LongStream.rangeClosed(21, 30)
+      .filter(seq -> seq != 25)
+      .mapToObj(seq -> SnippetOperation.builder().snippetId("s").seq(seq).userId("alice").build())
+      .toList();
+    List<SnippetSnapshot> snapshots = LongStream.of(20, 25, 30)
+      .mapToObj(seq -> SnippetSnapshot.builder().snippetId("s").seq(seq).userId("alice").code("code").build())
+      .toList();
+    when(mongoTemplate.find(any(Query.class), eq(SnippetOperation.class)))
+      .thenAnswer(call -> find(call.getArgument(0), operations, SnippetOperation::getSeq));
+    when(mongoTemplate.find(any(Query.class), eq(SnippetSnapshot.class)))
+      .thenAnswer(call -> {
+        snapshotQueries.add(call.getArgument(0));
+        return find(call.getArgument(0), snapshots, SnippetSnapshot::getSeq);
+      });
+    operationLog = new OperationLog(mock(CollaborationService.class), mongoTemplate, new CollaborationMetrics(), 10);
+  }
+
+  /**
+   * Applies the seq lower bound, the newest-first order and the limit of a query
+   */
+  private static <T> List<T> find(Query query, List<T> rows, ToLongFunction<T> seq) {
+    Object bound = query.getQueryObject().get("seq");
+    long from = bound instanceof Document range ? ((Number) range.get("$gte")).longValue() : Long.MIN_VALUE;
+    return rows.stream()
+      .filter(row -> seq.applyAsLong(row) >= from)
+      .sorted(Comparator.comparingLong(seq).reversed())
+      .limit(query.getLimit())
+      .toList();
+  }
+
+  private List<String> history(int limit) {
+    return operationLog.getHistory("s", limit).stream().map(entry -> entry.seq + " " + entry.type).toList();
+  }
+
+  @Test
+  void historyListsOperationsAndSnapshotsWithoutGaps() {
+    assertThat(history(8)).containsExactly(
+      "30 operation", "29 operation", "28 operation", "27 operation", "26 operation",
+      "25 snapshot", "24 operation", "23 operation");
+    assertThat(history(20)).containsExactly(
+      "30 operation", "29 operation", "28 operation", "27 operation", "26 operation",
+      "25 snapshot", "24 operation", "23 operation", "22 operation", "21 operation", "20 snapshot");
+  }
+
+  @Test
+  void snapshotsAreReadOnlyWithinTheReturnedOperations() {
+    assertThat(history(4)).containsExactly("30 operation", "29 operation", "28 operation", "27 operation");
+
+    Query snapshotQuery = snapshotQueries.get(0);
+    assertThat(snapshotQuery.getQueryObject().get("seq")).isEqualTo(new Document("$gte", 27L));
+    assertThat(snapshotQuery.getFieldsObject()).doesNotContainKey("code");
+  }
+}
@@ -0,0 +1,84 @@
+package com.codesharing.platform.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.params.provider.Arguments.arguments;
+
+import java.util.stream.Stream;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+class SnippetRegexSearchTest {
+
+  static Stream<Arguments> patterns() {
+    return Stream.of(
+      // Plain literals, shorter than a trigram ones give nothing to narrow with
+      arguments("getUser\\w*\\(", "getUser"),
+      arguments("abc", "abc"),
+      arguments("ab", null),
+      arguments("^main$", "main"),
+      arguments("a.bcd", "bcd"),
+
+      // Optional quantifiers drop the character, required ones keep it but end the run
+      arguments("abcd?", "abc"),
+      arguments("abcd*", "abc"),
+      arguments("abcd{0,3}", "abc"),
+      arguments("abcd{0,}", "abc"),
+      arguments("abcd{0}", "abc"),
+      arguments("abcd{2}", "abcd"),
+      arguments("abcd{1,}", "abcd"),
+      arguments("abcd+", "abcd"),
+      arguments("abcx?defg", "defg"),
+      arguments("xy?zw", null),
+
+      // Lazy quantifiers require what their greedy form does
+      arguments("abcd*?", "abc"),
+      arguments("abcd??", "abc"),
+      arguments("abcd{0,3}?", "abc"),
+      arguments("abcd+?", "abcd"),
+      arguments("abcd{2}?", "abcd"),
+
+      // Groups and classes are skipped whole, with their quantifiers
+      arguments("foo(bar)?bazz", "bazz"),
+      arguments("(abcdef)+", null),
+      arguments("(?:abcdef)", null),
+      arguments("ab[cd]ef", null),
+      arguments("[a-z]+Service", "Service"),
+      arguments("[]abc]def", "def"),
+      arguments("[[:alpha:]]*name", "name"),
+      arguments("abcd[|]", "abcd"),
+
+      // Escapes: punctuation is literal, classes, assertions, codes and quoting are not
+      arguments("foo\\.bar", "foo.bar"),
+      arguments("a\\(bc\\)", "a(bc)"),
+      arguments("abc\\|def", "abc|def"),
+      arguments("\\bword\\b", "word"),
+      arguments("\\d+abc", "abc"),
+      arguments("\\x41bcd", "bcd"),
+      arguments("\\x{41}bcd", "bcd"),
+      arguments("\\pLabc", "abc"),
+      arguments("\\p{Greek}abc", "abc"),
+      arguments("\\Qa.b|c\\Eabcd", "abcd"),
+      arguments("\\Qabcdef\\E", null),
+
+      // Inline flags are groups; case does not matter to the index
+      arguments("(?i)select", "select"),
+      arguments("(?i:Select)From", "From"),
+      arguments("(?s)a.bcd", "bcd"),
+
+      // Top-level alternation has no required literal, nested alternation is skipped
+      arguments("foo|barbaz", null),
+      arguments("abcdef|", null),
+      arguments("(foo|bar)bazz", "bazz"),
+      arguments("foo(bar|baz)quxx", "quxx"),
+      arguments("a(b(c|d)e)fghi", "fghi"),
+      arguments("(a|b)|cdef", null)
+    );
+  }
+
+  @ParameterizedTest(name = "{0} -> {1}")
+  @MethodSource("patterns")
+  void requiredLiteral(String regex, String expected) {
+    assertThat(SnippetRegexSearch.requiredLiteral(regex)).isEqualTo(expected);
+  }
+}
@@ -0,0 +1,79 @@
+package com.codesharing.platform.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.codesharing.platform.entity.CodeSnippet;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class SnippetSearchIndexTest {
+
+  private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+  private SnippetSearchIndex index;
+
+  @BeforeEach
+  void setUp() {
+    index = new SnippetSearchIndex(mongoTemplate, new CollaborationMetrics());
+    ReflectionTestUtils.setField(index, "ready", true);
+  }
+
+  private void index(String id, String code) {
+    index.index(CodeSnippet.builder().id(id).title("").code(code).build());
+  }
+
+  @Test
+  void candidatesContainEveryTrigramOfTheQuery() {
+    index("a", "int abcd = 1;");
+    index("b", "abc");
+    index("c", "xbcd");
+
+    assertThat(index.candidates("ABCD", 10)).containsExactly("a");
+  }
+
+  @Test
+  void documentSkippedByAnotherTrigramIsNotACandidate() {
+    // "abc" is the rarest trigram and leads; "bcd" skips from the first snippet straight to the next
+    index("first", "abc");
+    index("second", "bcd");
+    index("third", "bcd");
+
+    assertThat(index.candidates("abcd", 10)).isEmpty();
+  }
+
+  @Test
+  void updatedSnippetIsFoundOnlyByItsNewText() {
+    index("a", "old text");
+    index("a", "new text");
+
+    assertThat(index.candidates("old", 10)).isEmpty();
+    assertThat(index.candidates("new", 10)).containsExactly("a");
+  }
+
+  @Test
+  void refreshIndexesWhatAnotherNodeStored() {
+    index("a", "old text");
+    List<String> changed = new ArrayList<>();
+    index.setChangeListener(changed::add);
+
+    when(mongoTemplate.findOne(any(Query.class), eq(CodeSnippet.class)))
+      .thenReturn(CodeSnippet.builder().id("a").title("").code("new text").build());
+    index.refresh("a");
+    assertThat(index.candidates("new", 10)).containsExactly("a");
+
+    when(mongoTemplate.findOne(any(Query.class), eq(CodeSnippet.class))).thenReturn(null);
+    index.refresh("a");
+    assertThat(index.candidates("new", 10)).isEmpty();
+
+    // Changes read from another node are not announced again
+    assertThat(changed).isEmpty();
+  }
+}
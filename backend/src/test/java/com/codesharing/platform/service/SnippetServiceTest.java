@@ -0,0 +1,71 @@
+package com.codesharing.platform.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.codesharing.platform.dto.SnippetConnection;
+import com.codesharing.platform.entity.CodeSnippet;
+import com.codesharing.platform.repository.TinyUrlRepository;
+import com.codesharing.platform.repository.UserRepository;
+import java.time.LocalDateTime;
+import java.util.List;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+class SnippetServiceTest {
+
+  private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+  private final SnippetService snippetService = new SnippetService(
+    mongoTemplate,
+    mock(UserRepository.class),
+    mock(TinyUrlRepository.class),
+    mock(SnippetHeaderCache.class),
+    mock(SnippetSearchIndex.class),
+    mock(SnippetRegexSearch.class),
+    mock(AuthorCache.class)
+  );
+
+  private static CodeSnippet snippet(String id, LocalDateTime createdAt) {
+    return CodeSnippet.builder().id(id).title(id).code("").createdAt(createdAt).build();
+  }
+
+  private Document nextPageFilter(String after) {
+    ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+    snippetService.getSnippetsPage(null, 2, after);
+    verify(mongoTemplate, atLeastOnce()).find(query.capture(), eq(CodeSnippet.class));
+    return query.getValue().getQueryObject();
+  }
+
+  @Test
+  void cursorOfASnippetWithoutCreatedAtContinuesAmongThoseSnippets() {
+    when(mongoTemplate.find(any(Query.class), eq(CodeSnippet.class)))
+      .thenReturn(List.of(snippet("b", LocalDateTime.of(2024, 1, 1, 12, 0)), snippet("a", null), snippet("0", null)));
+
+    SnippetConnection page = snippetService.getSnippetsPage(null, 2, null);
+    assertThat(page.getPageInfo().isHasNextPage()).isTrue();
+
+    Document filter = nextPageFilter(page.getPageInfo().getEndCursor());
+    assertThat(filter.toJson()).contains("\"createdAt\": null").contains("\"_id\": {\"$lt\": \"a\"}");
+  }
+
+  @Test
+  void cursorOfADatedSnippetAlsoContinuesIntoSnippetsWithoutCreatedAt() {
+    when(mongoTemplate.find(any(Query.class), eq(CodeSnippet.class)))
+      .thenReturn(List.of(snippet("c", LocalDateTime.of(2024, 1, 2, 12, 0)), snippet("b", LocalDateTime.of(2024, 1, 1, 12, 0))));
+
+    SnippetConnection page = snippetService.getSnippetsPage(null, 2, null);
+
+    Document filter = nextPageFilter(page.getPageInfo().getEndCursor());
+    List<Document> alternatives = filter.getList("$and", Document.class).get(0).getList("$or", Document.class);
+    assertThat(alternatives).hasSize(3);
+    assertThat(alternatives.get(2)).isEqualTo(new Document("createdAt", null));
+  }
+}
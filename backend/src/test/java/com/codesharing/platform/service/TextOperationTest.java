@@ -0,0 +1,135 @@
+package com.codesharing.platform.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.codesharing.platform.service.TextOperation.Edit;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class TextOperationTest {
+
+  /**
+   * Apply both sides in both orders and check they converge on the expected text
+   */
+  private static void assertConverges(String document, List<Edit> incoming, List<Edit> applied, String expected) {
+    String serverSide = TextOperation.apply(TextOperation.apply(document, applied), TextOperation.transform(incoming, applied));
+    String clientSide = TextOperation.apply(TextOperation.apply(document, incoming), TextOperation.transform(applied, incoming));
+    assertThat(serverSide).isEqualTo(expected);
+    assertThat(clientSide).isEqualTo(expected);
+  }
+
+  @Test
+  void applyInsertsAndDeletesInOrder() {
+    String result = TextOperation.apply("hello world", List.of(
+      Edit.delete(5, 6),
+      Edit.insert(5, ", there")
+    ));
+
+    assertThat(result).isEqualTo("hello, there");
+  }
+
+  @Test
+  void diffCoversOnlyTheChangedRange() {
+    List<Edit> edits = TextOperation.diff("hello world", "hello there world");
+
+    assertThat(edits).singleElement().satisfies(edit -> {
+      assertThat(edit.type).isEqualTo(TextOperation.INSERT);
+      assertThat(edit.position).isEqualTo(6);
+      assertThat(edit.text).isEqualTo("there ");
+    });
+    assertThat(TextOperation.apply("hello world", TextOperation.diff("hello world", "help, world")))
+      .isEqualTo("help, world");
+    assertThat(TextOperation.diff("same", "same")).isEmpty();
+  }
+
+  @Test
+  void concurrentInsertsAtSameOffsetPutAppliedTextFirst() {
+    List<Edit> rebased = TextOperation.transform(List.of(Edit.insert(2, "X")), List.of(Edit.insert(2, "Y")));
+
+    assertThat(rebased).singleElement().satisfies(edit -> {
+      assertThat(edit.type).isEqualTo(TextOperation.INSERT);
+      assertThat(edit.position).isEqualTo(3);
+      assertThat(edit.text).isEqualTo("X");
+    });
+    assertThat(TextOperation.apply("abYcd", rebased)).isEqualTo("abYXcd");
+  }
+
+  @Test
+  void insertsAtDifferentOffsetsShiftOnlyLaterOnes() {
+    assertConverges("abcd", List.of(Edit.insert(3, "X")), List.of(Edit.insert(1, "YY")), "aYYbcXd");
+    assertConverges("abcd", List.of(Edit.insert(1, "X")), List.of(Edit.insert(3, "YY")), "aXbcYYd");
+  }
+
+  @Test
+  void overlappingDeletesRemoveTheUnionOnce() {
+    List<Edit> rebased = TextOperation.transform(List.of(Edit.delete(4, 3)), List.of(Edit.delete(2, 3)));
+
+    assertThat(rebased).singleElement().satisfies(edit -> {
+      assertThat(edit.type).isEqualTo(TextOperation.DELETE);
+      assertThat(edit.position).isEqualTo(2);
+      assertThat(edit.length).isEqualTo(2);
+    });
+    assertConverges("abcdefgh", List.of(Edit.delete(4, 3)), List.of(Edit.delete(2, 3)), "abh");
+  }
+
+  @Test
+  void deleteInsideAppliedDeleteBecomesNoOp() {
+    List<Edit> rebased = TextOperation.transform(List.of(Edit.delete(2, 2)), List.of(Edit.delete(1, 5)));
+
+    assertThat(rebased).isEmpty();
+    assertConverges("abcdefgh", List.of(Edit.delete(2, 2)), List.of(Edit.delete(1, 5)), "agh");
+  }
+
+  @Test
+  void insertInsideDeletedRangeIsKept() {
+    List<Edit> rebased = TextOperation.transform(List.of(Edit.delete(2, 4)), List.of(Edit.insert(4, "XY")));
+
+    // The delete is split around the inserted text
+    assertThat(rebased).hasSize(2);
+    assertThat(TextOperation.apply("abcdXYefgh", rebased)).isEqualTo("abXYgh");
+    assertConverges("abcdefgh", List.of(Edit.delete(2, 4)), List.of(Edit.insert(4, "XY")), "abXYgh");
+  }
+
+  @Test
+  void insertIntoRangeDeletedMeanwhileLandsAtDeleteStart() {
+    List<Edit> rebased = TextOperation.transform(List.of(Edit.insert(4, "Z")), List.of(Edit.delete(2, 4)));
+
+    assertThat(rebased).singleElement().satisfies(edit -> assertThat(edit.position).isEqualTo(2));
+    assertThat(TextOperation.apply("abgh", rebased)).isEqualTo("abZgh");
+  }
+
+  @Test
+  void multiEditListsAreRebasedEditByEdit() {
+    List<Edit> incoming = List.of(Edit.insert(0, ">"), Edit.delete(4, 2));
+    List<Edit> applied = List.of(Edit.delete(0, 1), Edit.insert(3, "!!"));
+
+    // "!!" landed inside the deleted "de" and survives it
+    assertConverges("abcdefg", incoming, applied, ">bc!!fg");
+  }
+
+  @Test
+  void applyRejectsEditsOutOfRange() {
+    assertThatThrownBy(() -> TextOperation.apply("abc", List.of(Edit.insert(4, "x"))))
+      .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> TextOperation.apply("abc", List.of(Edit.delete(2, 2))))
+      .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  void malformedEditsAreRejected() {
+    Edit unknown = new Edit();
+    unknown.type = "replace";
+
+    assertThatThrownBy(() -> TextOperation.apply("abc", List.of(Edit.insert(-1, "x"))))
+      .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> TextOperation.apply("abc", List.of(Edit.insert(0, ""))))
+      .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> TextOperation.apply("abc", List.of(Edit.delete(0, 0))))
+      .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> TextOperation.transform(List.of(unknown), List.of(Edit.insert(0, "x"))))
+      .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> TextOperation.transform(List.of(new Edit()), List.of()))
+      .isInstanceOf(IllegalArgumentException.class);
+  }
+}
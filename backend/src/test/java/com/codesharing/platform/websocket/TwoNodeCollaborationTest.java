@@ -0,0 +1,294 @@
+package com.codesharing.platform.websocket;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.codesharing.platform.dto.SnippetDTO;
+import com.codesharing.platform.service.CollaborationMetrics;
+import com.codesharing.platform.service.CollaborationService;
+import com.codesharing.platform.service.ParticipantAuditWriter;
+import com.codesharing.platform.service.SnippetHeaderCache;
+import com.codesharing.platform.service.SnippetService;
+import com.codesharing.platform.service.TextOperation.Edit;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.annotation.support.SimpAnnotationMethodMessageHandler;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.simp.user.DefaultUserDestinationResolver;
+import org.springframework.messaging.simp.user.UserDestinationMessageHandler;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.messaging.DefaultSimpUserRegistry;
+
+/**
+ * Two backend nodes in one JVM, joined by an in-process backplane cluster
+ * Each node has its own broker, channels and services; clients are simulated by
+ * sending STOMP frames into a node's inbound channel and reading its outbound channel
+ */
+class TwoNodeCollaborationTest {
+
+  private static final String SNIPPET_ID = "snippet-1";
+  private static final Duration TIMEOUT = Duration.ofSeconds(10);
+  private static final long HEARTBEAT_MILLIS = 50;
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final String cluster = "two-nodes-" + System.nanoTime();
+
+  private Node first;
+  private Node second;
+  private Node owner;
+  private Node other;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    first = new Node();
+    Thread.sleep(5);
+    second = new Node();
+    // Both nodes agree on the room's owner once they have heard from each other
+    await().atMost(TIMEOUT).until(() -> first.knowsPeer() && second.knowsPeer()
+      && first.presenceReplicator.getRoomOwner(SNIPPET_ID).equals(second.presenceReplicator.getRoomOwner(SNIPPET_ID)));
+    owner = first.backplane.getNodeId().equals(first.presenceReplicator.getRoomOwner(SNIPPET_ID)) ? first : second;
+    other = owner == first ? second : first;
+
+    owner.connect("owner-session");
+    other.connect("other-session");
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    first.close();
+    second.close();
+  }
+
+  @Test
+  void editsFromBothNodesShareOneDocument() {
+    assertThat(owner.roomRouter.isOwner(SNIPPET_ID)).isTrue();
+    assertThat(other.roomRouter.isOwner(SNIPPET_ID)).isFalse();
+
+    other.send("other-session", "ops", operation(0, Edit.insert(5, " world")));
+    Map<?, ?> firstOp = other.awaitFrame("other-session", "/topic/snippet/" + SNIPPET_ID + "/ops", 1);
+    assertThat(((Number) firstOp.get("revision")).longValue()).isEqualTo(1);
+    owner.awaitFrame("owner-session", "/topic/snippet/" + SNIPPET_ID + "/ops", 1);
+
+    // Made against revision 0 on the owner, so it is rebased over the forwarded edit
+    owner.send("owner-session", "ops", operation(0, Edit.insert(0, ">> ")));
+    Map<?, ?> secondOp = other.awaitFrame("other-session", "/topic/snippet/" + SNIPPET_ID + "/ops", 2);
+    assertThat(((Number) secondOp.get("revision")).longValue()).isEqualTo(2);
+
+    // Made against revision 1 on the other node, rebased over the owner's edit
+    other.send("other-session", "ops", operation(1, Edit.delete(5, 6)));
+    owner.awaitFrame("owner-session", "/topic/snippet/" + SNIPPET_ID + "/ops", 3);
+
+    CollaborationService.DocumentSnapshot document = owner.collaborationService.getDocumentSnapshot(SNIPPET_ID);
+    assertThat(document.code).isEqualTo(">> hello");
+    assertThat(document.revision).isEqualTo(3);
+    assertThat(other.collaborationService.hasDocument(SNIPPET_ID)).isFalse();
+  }
+
+  @Test
+  void roomsAreSpreadOverBothNodes() throws Exception {
+    // Past the warm-up, so both nodes are candidates
+    Thread.sleep(HEARTBEAT_MILLIS * 2);
+    Map<String, Integer> owned = new HashMap<>();
+    for (int i = 0; i < 100; i++) {
+      String snippetId = "snippet-" + i;
+      String roomOwner = first.presenceReplicator.getRoomOwner(snippetId);
+      assertThat(second.presenceReplicator.getRoomOwner(snippetId)).isEqualTo(roomOwner);
+      owned.merge(roomOwner, 1, Integer::sum);
+    }
+    assertThat(owned).containsOnlyKeys(first.backplane.getNodeId(), second.backplane.getNodeId());
+  }
+
+  @Test
+  void syncRequestsOnTheOtherNodeAreAnsweredFromTheOwnersDocument() {
+    other.send("other-session", "ops", operation(0, Edit.insert(5, " world")));
+    other.awaitFrame("other-session", "/topic/snippet/" + SNIPPET_ID + "/ops", 1);
+
+    other.send("other-session", "sync-state", Map.of("userId", "bob", "username", "Bob"));
+    Map<?, ?> snapshot = other.awaitFrame("other-session", "/queue/snippet/" + SNIPPET_ID + "/sync", 1);
+
+    CollaborationService.DocumentSnapshot document = owner.collaborationService.getDocumentSnapshot(SNIPPET_ID);
+    assertThat(snapshot.get("type")).isEqualTo("state-sync");
+    assertThat(snapshot.get("code")).isEqualTo("hello world");
+    assertThat(((Number) snapshot.get("revision")).longValue()).isEqualTo(1);
+    assertThat(snapshot.get("epoch")).isEqualTo(document.epoch);
+    assertThat(owner.framesFor("other-session")).isEmpty();
+  }
+
+  @Test
+  void rejectedOperationFromTheOtherNodeIsAnsweredWithASnapshot() {
+    other.send("other-session", "ops", operation(99, Edit.insert(0, "x")));
+
+    Map<?, ?> snapshot = other.awaitFrame("other-session", "/queue/snippet/" + SNIPPET_ID + "/sync", 1);
+    assertThat(snapshot.get("type")).isEqualTo("snapshot");
+    assertThat(snapshot.get("code")).isEqualTo("hello");
+  }
+
+  private static CollaborationController.CodeOperationMessage operation(long baseRevision, Edit edit) {
+    CollaborationController.CodeOperationMessage operation = new CollaborationController.CodeOperationMessage();
+    operation.userId = "user-" + baseRevision;
+    operation.username = "User " + baseRevision;
+    operation.baseRevision = baseRevision;
+    operation.operations = List.of(edit);
+    return operation;
+  }
+
+  /**
+   * One backend node: the services and message channels Spring would wire for it
+   */
+  private class Node implements AutoCloseable {
+
+    final CollaborationMetrics metrics = new CollaborationMetrics();
+    final InProcessBackplane backplane = new InProcessBackplane(objectMapper, metrics, cluster);
+    final CollaborationService collaborationService = new CollaborationService(objectMapper);
+    final SnippetLaneExecutor lanes = new SnippetLaneExecutor(metrics, 8, 2);
+    final ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+    final ExecutorSubscribableChannel clientInbound = new ExecutorSubscribableChannel(lanes.asChannelExecutor());
+    final ExecutorSubscribableChannel clientOutbound = new ExecutorSubscribableChannel();
+    final ExecutorSubscribableChannel brokerChannel = new ExecutorSubscribableChannel();
+    final SimpMessagingTemplate messagingTemplate = new SimpMessagingTemplate(brokerChannel);
+    final InboundRateLimiter inboundRateLimiter = new InboundRateLimiter(
+      lanes, metrics, 20, 40, 20, 40, 50, 100, 10, 20, 30, 60);
+    final PresenceBroadcaster presenceBroadcaster = mock(PresenceBroadcaster.class);
+    final PresenceReplicator presenceReplicator;
+    final RoomRouter roomRouter;
+    final List<Message<?>> frames = new CopyOnWriteArrayList<>();
+    private final AtomicInteger subscriptions = new AtomicInteger();
+    private final GenericApplicationContext context = new GenericApplicationContext();
+
+    Node() throws Exception {
+      scheduler.initialize();
+      messagingTemplate.setMessageConverter(new MappingJackson2MessageConverter());
+      presenceReplicator = new PresenceReplicator(
+        backplane, collaborationService, presenceBroadcaster, lanes, metrics, scheduler);
+      ReflectionTestUtils.setField(presenceReplicator, "heartbeatMillis", HEARTBEAT_MILLIS);
+      roomRouter = new RoomRouter(
+        backplane, presenceReplicator, inboundRateLimiter, clientInbound, brokerChannel, metrics);
+
+      SnippetService snippetService = mock(SnippetService.class);
+      SnippetDTO snippet = new SnippetDTO();
+      snippet.setCode("hello");
+      snippet.setLanguage("java");
+      when(snippetService.getSnippetById(anyString())).thenReturn(snippet);
+      CollaborationController controller = new CollaborationController(
+        collaborationService, snippetService, mock(SnippetHeaderCache.class), mock(ParticipantAuditWriter.class),
+        messagingTemplate, presenceBroadcaster, presenceReplicator, metrics, inboundRateLimiter, roomRouter);
+
+      // Same order as the application: rate limiter first, then the router
+      clientInbound.addInterceptor(inboundRateLimiter);
+      new BackplaneBridge(backplane, brokerChannel, metrics).start();
+      roomRouter.start();
+      presenceReplicator.start();
+
+      context.registerBean(CollaborationController.class, () -> controller);
+      context.refresh();
+      SimpAnnotationMethodMessageHandler handler =
+        new SimpAnnotationMethodMessageHandler(clientInbound, clientOutbound, messagingTemplate);
+      handler.setDestinationPrefixes(List.of("/app"));
+      handler.setMessageConverter(new MappingJackson2MessageConverter());
+      handler.setApplicationContext(context);
+      handler.afterPropertiesSet();
+      handler.start();
+      new SimpleBrokerMessageHandler(clientInbound, clientOutbound, brokerChannel, List.of("/topic", "/queue")).start();
+      new UserDestinationMessageHandler(
+        clientInbound, brokerChannel, new DefaultUserDestinationResolver(new DefaultSimpUserRegistry())).start();
+      clientOutbound.subscribe(frames::add);
+    }
+
+    boolean knowsPeer() {
+      return ((Number) metrics.snapshot().get("collaboration.backplane.nodes")).intValue() > 1;
+    }
+
+    void connect(String sessionId) {
+      clientInbound.send(frame(SimpMessageType.CONNECT, sessionId, null, new byte[0]));
+      subscribe(sessionId, "/topic/snippet/" + SNIPPET_ID + "/ops");
+      subscribe(sessionId, "/user/queue/snippet/" + SNIPPET_ID + "/sync");
+      // Subscriptions go through the snippet's lane; wait until the broker has them
+      await().atMost(TIMEOUT).until(() -> lanes.getMaxQueueDepth() == 0);
+    }
+
+    void subscribe(String sessionId, String destination) {
+      SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+      accessor.setSessionId(sessionId);
+      accessor.setSessionAttributes(new HashMap<>());
+      accessor.setSubscriptionId("sub-" + subscriptions.incrementAndGet());
+      accessor.setDestination(destination);
+      clientInbound.send(MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()));
+    }
+
+    void send(String sessionId, String type, Object payload) {
+      try {
+        String destination = "/app/snippet/" + SNIPPET_ID + "/" + type;
+        clientInbound.send(frame(SimpMessageType.MESSAGE, sessionId, destination, objectMapper.writeValueAsBytes(payload)));
+      } catch (Exception e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    private Message<byte[]> frame(SimpMessageType type, String sessionId, String destination, byte[] body) {
+      SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(type);
+      accessor.setSessionId(sessionId);
+      accessor.setSessionAttributes(new HashMap<>());
+      accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+      if (destination != null) {
+        accessor.setDestination(destination);
+      }
+      return MessageBuilder.createMessage(body, accessor.getMessageHeaders());
+    }
+
+    List<Message<?>> framesFor(String sessionId) {
+      return frames.stream()
+        .filter(frame -> SimpMessageHeaderAccessor.getMessageType(frame.getHeaders()) == SimpMessageType.MESSAGE)
+        .filter(frame -> sessionId.equals(SimpMessageHeaderAccessor.getSessionId(frame.getHeaders())))
+        .toList();
+    }
+
+    /**
+     * Wait for the session's count-th frame whose destination starts with the prefix
+     */
+    Map<?, ?> awaitFrame(String sessionId, String destinationPrefix, int count) {
+      List<Message<?>> matching = await().atMost(TIMEOUT).until(
+        () -> framesFor(sessionId).stream()
+          .filter(frame -> Optional.ofNullable(SimpMessageHeaderAccessor.getDestination(frame.getHeaders()))
+            .orElse("").startsWith(destinationPrefix))
+          .toList(),
+        list -> list.size() >= count
+      );
+      try {
+        return objectMapper.readValue((byte[]) matching.get(count - 1).getPayload(), Map.class);
+      } catch (Exception e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    @Override
+    public void close() throws Exception {
+      presenceReplicator.stop();
+      backplane.close();
+      scheduler.shutdown();
+      lanes.shutdown();
+      context.close();
+    }
+  }
+}
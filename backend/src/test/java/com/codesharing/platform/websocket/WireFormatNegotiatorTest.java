@@ -0,0 +1,123 @@
+package com.codesharing.platform.websocket;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.codesharing.platform.service.CollaborationMetrics;
+import com.codesharing.platform.service.TextOperation.Edit;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+
+class WireFormatNegotiatorTest {
+
+  private static final String DESTINATION = "/topic/snippet/snippet-1/ops";
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final CollaborationMetrics metrics = new CollaborationMetrics();
+  private WireFormatNegotiator negotiator;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    negotiator = new WireFormatNegotiator(objectMapper, metrics);
+    connect("cbor-session", "cbor");
+    connect("json-session", null);
+  }
+
+  private void connect(String sessionId, String wireFormat) throws Exception {
+    WebSocketSession session = mock(WebSocketSession.class);
+    when(session.getId()).thenReturn(sessionId);
+    negotiator.decorate(mock(WebSocketHandler.class)).afterConnectionEstablished(session);
+    SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.CONNECT);
+    accessor.setSessionId(sessionId);
+    if (wireFormat != null) {
+      accessor.setNativeHeader(WireFormatNegotiator.ACCEPT_HEADER, wireFormat);
+    }
+    negotiator.preSend(MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()), null);
+  }
+
+  private static CollaborationController.CodeOperationMessage operation() {
+    CollaborationController.CodeOperationMessage operation = new CollaborationController.CodeOperationMessage();
+    operation.userId = "alice";
+    operation.username = "Alice";
+    operation.baseRevision = 6;
+    operation.revision = 7;
+    operation.operations = List.of(Edit.insert(12, "return x;"));
+    return operation;
+  }
+
+  /**
+   * What the messaging template sends to the broker
+   */
+  private Message<?> broadcast(Object payload) {
+    SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+    accessor.setLeaveMutable(true);
+    return negotiator.broadcastMessageConverter().toMessage(payload, accessor.getMessageHeaders());
+  }
+
+  /**
+   * The copy of a broadcast the broker hands to one subscriber, after the outbound interceptor
+   */
+  private Message<?> deliver(Message<?> broadcast, String sessionId) {
+    SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+    accessor.setSessionId(sessionId);
+    accessor.setDestination(DESTINATION);
+    accessor.copyHeadersIfAbsent(broadcast.getHeaders());
+    return negotiator.preSend(MessageBuilder.createMessage(broadcast.getPayload(), accessor.getMessageHeaders()), null);
+  }
+
+  @Test
+  void cborSessionGetsTheSentObjectEncodedAsCbor() throws Exception {
+    Message<?> broadcast = broadcast(operation());
+
+    Message<?> delivered = deliver(broadcast, "cbor-session");
+
+    SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(delivered);
+    assertThat(accessor.getFirstNativeHeader(WireFormatNegotiator.FORMAT_HEADER)).isEqualTo(WireFormatNegotiator.CBOR);
+    assertThat(accessor.getContentType()).isEqualTo(MimeTypeUtils.APPLICATION_OCTET_STREAM);
+    ObjectMapper cborMapper = new ObjectMapper(new CBORFactory());
+    assertThat(cborMapper.readTree((byte[]) delivered.getPayload()))
+      .isEqualTo(objectMapper.readTree((byte[]) broadcast.getPayload()));
+  }
+
+  @Test
+  void broadcastIsEncodedOnceForAllCborSubscribers() {
+    Message<?> broadcast = broadcast(operation());
+
+    Object first = deliver(broadcast, "cbor-session").getPayload();
+    Object second = deliver(broadcast, "cbor-session").getPayload();
+
+    assertThat(second).isSameAs(first);
+    assertThat(metrics.get("collaboration.wire.cbor.encoded")).isEqualTo(1);
+  }
+
+  @Test
+  void jsonSessionAndRelayedBroadcastsStayJson() throws Exception {
+    Message<?> broadcast = broadcast(operation());
+    assertThat(deliver(broadcast, "json-session").getPayload()).isSameAs(broadcast.getPayload());
+
+    // Relayed from another node: only the JSON body is known
+    SimpMessageHeaderAccessor relayed = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+    relayed.setContentType(MimeTypeUtils.APPLICATION_JSON);
+    byte[] json = objectMapper.writeValueAsBytes(operation());
+    Message<?> delivered = deliver(MessageBuilder.createMessage(json, relayed.getMessageHeaders()), "cbor-session");
+    assertThat(delivered.getPayload()).isSameAs(json);
+    assertThat(SimpMessageHeaderAccessor.wrap(delivered).getFirstNativeHeader(WireFormatNegotiator.FORMAT_HEADER)).isNull();
+  }
+
+  @Test
+  void stringsAndBytesAreLeftToTheDefaultConverters() {
+    assertThat(broadcast("text")).isNull();
+    assertThat(broadcast(new byte[] {1})).isNull();
+  }
+}
@@ -4,7 +4,7 @@ import * as Stomp from 'stompjs'
 export interface UserPresence {
   userId: string
   username: string
-  joinedAt: string
+  joinedAt: number  // epoch millis
   isTyping: boolean
   owner?: boolean
 }
@@ -55,6 +55,8 @@ export class WebSocketService {
   private reconnectAttempts = 0
   private maxReconnectAttempts = 5
   private reconnectDelay = 1000
+  private heartbeatTimers: Map<string, ReturnType<typeof setInterval>> = new Map()
+  private heartbeatInterval = 30000
 
   /**
    * Connect to WebSocket server
@@ -136,6 +138,9 @@ export class WebSocketService {
    * Disconnect from WebSocket server
    */
   disconnect(): void {
+    this.heartbeatTimers.forEach((timer) => clearInterval(timer))
+    this.heartbeatTimers.clear()
+
     if (this.stompClient && this.isConnected) {
       // Unsubscribe from all subscriptions
       this.subscriptions.forEach((subscription) => {
@@ -157,6 +162,7 @@ export class WebSocketService {
   joinSnippet(snippetId: string, userId: string, username: string): Promise<void> {
     return this.ensureConnected().then(() => {
       this.stompClient!.send(`/app/snippet/${snippetId}/join`, {}, JSON.stringify({ userId, username }))
+      this.startHeartbeat(snippetId, userId)
     })
   }
 
@@ -164,11 +170,34 @@ export class WebSocketService {
    * Leave a snippet session
    */
   leaveSnippet(snippetId: string, userId: string): Promise<void> {
+    this.stopHeartbeat(snippetId)
     return this.ensureConnected().then(() => {
       this.stompClient!.send(`/app/snippet/${snippetId}/leave`, {}, JSON.stringify({ userId }))
     })
   }
 
+  /**
+   * Periodically tell the server this user is still present
+   * Users without heartbeats or activity are evicted as idle
+   */
+  private startHeartbeat(snippetId: string, userId: string): void {
+    this.stopHeartbeat(snippetId)
+    const timer = setInterval(() => {
+      if (this.isConnected && this.stompClient?.connected) {
+        this.stompClient.send(`/app/snippet/${snippetId}/heartbeat`, {}, JSON.stringify({ userId }))
+      }
+    }, this.heartbeatInterval)
+    this.heartbeatTimers.set(snippetId, timer)
+  }
+
+  private stopHeartbeat(snippetId: string): void {
+    const timer = this.heartbeatTimers.get(snippetId)
+    if (timer) {
+      clearInterval(timer)
+      this.heartbeatTimers.delete(snippetId)
+    }
+  }
+
   /**
    * Send code change
    */
@@ -381,19 +410,23 @@ export class WebSocketService {
     snippetId: string,
     callback: WebSocketCallback<any>
   ): void {
-    const topic = `/topic/snippet/${snippetId}/sync`
-    this.unsubscribeFromTopic(topic)
+    // Replies to this session arrive on its private queue; the topic only carries
+    // sync requests the server could not route to the owner directly
+    const topics = [`/user/queue/snippet/${snippetId}/sync`, `/topic/snippet/${snippetId}/sync`]
+    topics.forEach((topic) => this.unsubscribeFromTopic(topic))
 
     this.ensureConnected().then(() => {
-      const subscription = this.stompClient!.subscribe(topic, (message) => {
-        try {
-          const data = JSON.parse(message.body)
-          callback(data)
-        } catch (error) {
-          console.error('Error parsing state sync message:', error)
-        }
+      topics.forEach((topic) => {
+        const subscription = this.stompClient!.subscribe(topic, (message) => {
+          try {
+            const data = JSON.parse(message.body)
+            callback(data)
+          } catch (error) {
+            console.error('Error parsing state sync message:', error)
+          }
+        })
+        this.subscriptions.set(topic, subscription)
       })
-      this.subscriptions.set(topic, subscription)
     })
   }
 